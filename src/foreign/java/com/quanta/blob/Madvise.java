@@ -0,0 +1,88 @@
+package com.quanta.blob;
+
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code madvise(2)} on ranges of mapped buffers, called through the foreign linker.
+ * <p>
+ * The linker is a restricted API: without {@code --enable-native-access} for the module
+ * holding this class, or on a platform without {@code madvise}, it cannot be created and
+ * {@link MemoryBlob} falls back to what it can do without it. Built from {@code src/foreign}
+ * and loaded by {@link NativeAdvice#load()}, only where the {@code jdk.incubator.foreign}
+ * module exists.
+ * </p>
+ */
+final class Madvise implements NativeAdvice {
+
+    // the same values on Linux, macOS and the BSDs
+    private static final int MADV_NORMAL     = 0;
+    private static final int MADV_RANDOM     = 1;
+    private static final int MADV_SEQUENTIAL = 2;
+    private static final int MADV_WILLNEED   = 3;
+    private static final int MADV_DONTNEED   = 4;
+
+    private static final MethodHandle MADVISE;
+    private static final long PAGE;
+
+    static {
+        MethodHandle madvise = null;
+        long page = 4096;
+
+        try {
+            CLinker linker = CLinker.getInstance();
+            MemoryAddress symbol = CLinker.systemLookup().lookup("madvise").orElse(null);
+            MemoryAddress pagesize = CLinker.systemLookup().lookup("getpagesize").orElse(null);
+
+            if (symbol != null && pagesize != null) {
+                madvise = linker.downcallHandle(symbol,
+                        MethodType.methodType(int.class, MemoryAddress.class, long.class, int.class),
+                        FunctionDescriptor.of(CLinker.C_INT, CLinker.C_POINTER, CLinker.C_LONG, CLinker.C_INT));
+                page = (int) linker.downcallHandle(pagesize,
+                        MethodType.methodType(int.class),
+                        FunctionDescriptor.of(CLinker.C_INT)).invokeExact();
+            }
+        } catch (Throwable e) {
+            // no native access granted, advice stays a hint the blob handles itself
+            madvise = null;
+        }
+
+        MADVISE = madvise;
+        PAGE    = page;
+    }
+
+    Madvise() {
+        if (MADVISE == null)
+            throw new UnsupportedOperationException("madvise cannot be linked");
+    }
+
+    private static int flag(Advice advice) {
+        return switch (advice) {
+            case NORMAL     -> MADV_NORMAL;
+            case SEQUENTIAL -> MADV_SEQUENTIAL;
+            case RANDOM     -> MADV_RANDOM;
+            case WILL_NEED  -> MADV_WILLNEED;
+            case DONT_NEED  -> MADV_DONTNEED;
+        };
+    }
+
+    @Override
+    public boolean advise(ByteBuffer buffer, int offset, int len, Advice advice) {
+        try {
+            // madvise takes whole pages, mappings start on a page
+            long start = MemorySegment.ofByteBuffer(buffer).address().toRawLongValue() + offset;
+            long first = start & -PAGE;
+            long length = start + len - first;
+
+            return (int) MADVISE.invokeExact(MemoryAddress.ofLong(first), length, flag(advice)) == 0;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.quanta.blob;
+
+import jdk.incubator.foreign.MemoryHandles;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * {@link MemoryBlob} that maps its segments as {@link MemorySegment}s of one shared
+ * {@link ResourceScope} and reads and writes them through memory access var handles.
+ * <p>
+ * Growth and the file format are inherited, so both backends can open the same dataset. Each
+ * segment is mapped with {@link MemorySegment#mapFile}, and closing the blob closes the scope,
+ * which unmaps every segment, retired tail mappings included, there and then rather than
+ * through the buffer cleaner. Accesses after that fail with an {@link IllegalStateException}
+ * instead of touching unmapped memory.
+ * </p>
+ * <p>
+ * Every access is checked against the blob length and the bounds of its segment, so a damaged
+ * position read from a file raises an {@link IOException} like the other backends. The var
+ * handles are unaligned and big-endian, the layout {@link MemoryBlob} writes.
+ * </p>
+ * <p>
+ * The foreign memory API incubates in JDK 17: the JVM has to run with
+ * {@code --add-modules jdk.incubator.foreign}, see {@link StorageType#SEGMENT}.
+ * </p>
+ */
+public class SegmentBlob extends MemoryBlob {
+
+    private static final VarHandle INT    = MemoryHandles.varHandle(int.class, 1, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG   = MemoryHandles.varHandle(long.class, 1, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle BYTE   = MemoryHandles.varHandle(byte.class, 1, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle DOUBLE = MemoryHandles.varHandle(double.class, 1, ByteOrder.BIG_ENDIAN);
+
+    // both filled by map(), which runs inside the super constructor, so no initializers here
+    private ResourceScope scope;
+    private MemorySegment[] mapped;
+
+    public SegmentBlob(String file, Region... regions) throws IOException {
+        super(file, regions);
+    }
+
+    public SegmentBlob(String file, int segmentShift, long expectedSize, Region... regions) throws IOException {
+        super(file, segmentShift, expectedSize, regions);
+    }
+
+    public SegmentBlob(String file, int segmentShift, long expectedSize, boolean readOnly, Region... regions) throws IOException {
+        super(file, segmentShift, expectedSize, readOnly, regions);
+    }
+
+    @Override
+    protected MappedByteBuffer map(int index, long start, long len) throws IOException {
+        if (scope == null)
+            scope = ResourceScope.newSharedScope();
+
+        if (mapped == null)
+            mapped = new MemorySegment[Math.max(4, index + 1)];
+        else if (index >= mapped.length)
+            mapped = Arrays.copyOf(mapped, Math.max(index + 1, mapped.length * 2));
+
+        FileChannel.MapMode mode = read_only ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        MemorySegment segment = MemorySegment.mapFile(Paths.get(fileName), start, len, mode, scope);
+
+        mapped[index] = segment;
+        // the buffer view serves the inherited bulk paths, it is unmapped along with the scope
+        return (MappedByteBuffer) segment.asByteBuffer();
+    }
+
+    @Override
+    protected void unmap(ByteBuffer segment) {
+        // the scope unmaps every segment at once, see close()
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+
+        if (scope != null && scope.isAlive())
+            scope.close();
+    }
+
+    @Override
+    protected void force(int index) {
+        mapped[index].force();
+    }
+
+    @Override
+    protected void load(long pos, int len) {
+        at(pos).asSlice(pos & segment_mask, len).load();
+    }
+
+    @Override
+    public void checksum(long pos, int len, Checksum checksum) throws IOException {
+        check(pos, len);
+
+        // buffers of shared segments have no address for the checksum intrinsics, go through a copy
+        byte[] buffer = new byte[Math.min(len, 64 * 1024)];
+        for (int done = 0; done < len; ) {
+            int n = Math.min(buffer.length, len - done);
+            getBytes(pos + done, buffer, 0, n);
+            checksum.update(buffer, 0, n);
+            done += n;
+        }
+    }
+
+    @Override
+    protected void check(long pos, int v) throws IOException {
+        super.check(pos, v);
+
+        if (offset(pos) + (long) v > segmentSize())
+            throw new IOException("Requested range straddles a segment boundary at " + pos + ", length " + v);
+    }
+
+    private MemorySegment at(long pos) {
+        return mapped[(int) (pos >>> segment_shift)];
+    }
+
+    @Override
+    public void putInt(long pos, int v) throws IOException {
+        check(pos, 4);
+        INT.set(at(pos), pos & segment_mask, v);
+    }
+
+    @Override
+    public int getInt(long pos) throws IOException {
+        check(pos, 4);
+        return (int) INT.get(at(pos), pos & segment_mask);
+    }
+
+    @Override
+    public void putLong(long pos, long v) throws IOException {
+        check(pos, 8);
+        LONG.set(at(pos), pos & segment_mask, v);
+    }
+
+    @Override
+    public long getLong(long pos) throws IOException {
+        check(pos, 8);
+        return (long) LONG.get(at(pos), pos & segment_mask);
+    }
+
+    @Override
+    public void putByte(long pos, byte b) throws IOException {
+        check(pos, 1);
+        BYTE.set(at(pos), pos & segment_mask, b);
+    }
+
+    @Override
+    public byte getByte(long pos) throws IOException {
+        check(pos, 1);
+        return (byte) BYTE.get(at(pos), pos & segment_mask);
+    }
+
+    @Override
+    public void putBytes(long pos, byte[] v) throws IOException {
+        putBytes(pos, v, 0, v.length);
+    }
+
+    @Override
+    public void putBytes(long pos, byte[] src, int off, int len) throws IOException {
+        check(pos, len);
+        at(pos).asSlice(pos & segment_mask, len).copyFrom(MemorySegment.ofArray(src).asSlice(off, len));
+    }
+
+    @Override
+    public byte[] getBytes(long pos, int width) throws IOException {
+        byte[] v = new byte[width];
+        getBytes(pos, v, 0, width);
+        return v;
+    }
+
+    @Override
+    public void getBytes(long pos, byte[] dst, int off, int len) throws IOException {
+        check(pos, len);
+        MemorySegment.ofArray(dst).asSlice(off, len).copyFrom(at(pos).asSlice(pos & segment_mask, len));
+    }
+
+    @Override
+    public void getInts(long pos, int[] dst, int off, int count) throws IOException {
+        check(pos, count * 4);
+        MemorySegment s = at(pos);
+        long o = pos & segment_mask;
+        for (int i = 0; i < count; i++, o += 4) {
+            dst[off + i] = (int) INT.get(s, o);
+        }
+    }
+
+    @Override
+    public void getLongs(long pos, long[] dst, int off, int count) throws IOException {
+        check(pos, count * 8);
+        MemorySegment s = at(pos);
+        long o = pos & segment_mask;
+        for (int i = 0; i < count; i++, o += 8) {
+            dst[off + i] = (long) LONG.get(s, o);
+        }
+    }
+
+    @Override
+    public void getDoubles(long pos, double[] dst, int off, int count) throws IOException {
+        check(pos, count * 8);
+        MemorySegment s = at(pos);
+        long o = pos & segment_mask;
+        for (int i = 0; i < count; i++, o += 8) {
+            dst[off + i] = (double) DOUBLE.get(s, o);
+        }
+    }
+
+    @Override
+    public void fill(long pos, int len, byte b) throws IOException {
+        check(pos, len);
+        at(pos).asSlice(pos & segment_mask, len).fill(b);
+    }
+
+    @Override
+    public void move(long from, long to, int len) throws IOException {
+        check(from, len);
+        check(to, len);
+        // copyFrom is a memmove, overlapping ranges are safe
+        at(to).asSlice(to & segment_mask, len).copyFrom(at(from).asSlice(from & segment_mask, len));
+    }
+}
@@ -0,0 +1,19 @@
+package com.quanta;
+
+/**
+ * A block whose contents no longer match its checksum, reported by {@link Quanta#verify(int)}.
+ *
+ * @param column   name of the column
+ * @param file     path of the column file
+ * @param region   index of the region in the column file
+ * @param block    index of the block in the region
+ * @param position byte offset of the block in the file
+ * @param length   bytes of the block, including its trailer
+ */
+public record DamagedBlock(String column, String file, int region, int block, long position, int length) {
+
+    @Override
+    public String toString() {
+        return column + ": region " + region + ", block " + block + " at " + position + " (" + length + " bytes) in " + file;
+    }
+}
@@ -0,0 +1,361 @@
+package com.quanta;
+
+import com.quanta.util.Tuple;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the rows added to a {@link Quanta} since its last checkpoint.
+ * <p>
+ * {@link Quanta#add(Tuple)} appends each row here before touching any column. Rows are buffered
+ * and written in groups, then forced according to the {@link SyncPolicy}: one fsync covers every
+ * row of the group instead of an msync per column. When the columns are checkpointed and forced
+ * the log is cut back to its header, which records the row count the columns hold.
+ * </p>
+ * <p>
+ * On open the columns are trimmed to that row count and every logged row is replayed, so all
+ * columns come back with the same rows whatever the crash interrupted.
+ * </p>
+ * <p>
+ * File layout: header {@code [int magic][int version][long base rows]}, then records
+ * {@code [int length][int crc32c][long row][int columns][values...]}. A torn or corrupt record
+ * ends the log, it and everything after it are discarded.
+ * </p>
+ */
+public class IngestLog implements Closeable {
+
+    private static final int MAGIC   = 0x514C4F47; // QLOG
+    private static final int VERSION = 1;
+    private static final int HEADER  = 16;
+
+    private static final byte NULL = 0, INT = 1, LONG = 2, DOUBLE = 3, STRING = 4, BOOLEAN = 5, TIMESTAMP = 6,
+                              DATE = 7, DATETIME = 8;
+
+    public final String fileName;
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final int syncRows;
+
+    private ByteBuffer pending;
+    private int  pending_rows;
+    private long base;
+    private long end;
+
+    private final CRC32C crc;
+    private final ScheduledExecutorService scheduler;
+    private volatile IOException failure;
+
+    private final Lock lock;
+
+    /**
+     * @param file       log file
+     * @param policy     when appended rows are forced to disk
+     * @param syncMillis longest time a row stays unwritten, ignored for {@link SyncPolicy#ALWAYS}
+     * @param syncRows   most rows written together, ignored for {@link SyncPolicy#ALWAYS}
+     */
+    public IngestLog(String file, SyncPolicy policy, int syncMillis, int syncRows) throws IOException {
+        this.fileName = file;
+        this.channel  = FileChannel.open(Paths.get(file), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.policy   = policy;
+        this.syncRows = policy == SyncPolicy.ALWAYS ? 1 : Math.max(1, syncRows);
+        this.pending  = ByteBuffer.allocate(64 * 1024);
+        this.crc      = new CRC32C();
+        this.lock     = new ReentrantLock();
+
+        if (channel.size() < HEADER) {
+            writeHeader(0);
+        } else {
+            ByteBuffer h = ByteBuffer.allocate(HEADER);
+            read(h, 0);
+            if (h.getInt(0) != MAGIC || h.getInt(4) != VERSION)
+                throw new IOException("Not an ingest log: " + file);
+            base = h.getLong(8);
+        }
+        end = channel.size();
+
+        if (policy != SyncPolicy.ALWAYS && syncMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "quanta-log-sync");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Row count the columns held at the last checkpoint, the first logged row follows it.
+     */
+    public long base() {
+        return base;
+    }
+
+    /**
+     * Logs {@code row} as row number {@code index}.
+     *
+     * @param index   row number
+     * @param columns column names, in schema order
+     * @param row     the row, holding a value for every column
+     */
+    public void append(long index, Collection<String> columns, Tuple row) throws IOException {
+        if (failure != null)
+            throw failure;
+
+        lock.lock();
+
+        try {
+            int start = pending.position();
+            ensure(20);
+            pending.position(start + 8);
+            pending.putLong(index);
+            pending.putInt(columns.size());
+
+            for (String c : columns) {
+                if (!row.has(c)) {
+                    pending.position(start);
+                    throw new IllegalArgumentException("Column '" + c + "' not found in row");
+                }
+                put(row.get(c));
+            }
+
+            int length = pending.position() - start - 8;
+            crc.reset();
+            crc.update(pending.array(), start + 8, length);
+            pending.putInt(start, length);
+            pending.putInt(start + 4, (int) crc.getValue());
+
+            if (++pending_rows >= syncRows)
+                write(policy != SyncPolicy.OS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the buffered rows and forces them according to the policy.
+     */
+    private void sync() {
+        try {
+            lock.lock();
+            try {
+                if (pending_rows > 0)
+                    write(policy != SyncPolicy.OS);
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            // reported to the next append
+            failure = e;
+        }
+    }
+
+    private void write(boolean force) throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            end += channel.write(pending, end);
+        }
+        pending.clear();
+        pending_rows = 0;
+
+        if (force)
+            channel.force(false);
+    }
+
+    /**
+     * Discards the logged rows once the columns hold {@code rows} rows durably.
+     */
+    public void checkpoint(long rows) throws IOException {
+        lock.lock();
+
+        try {
+            pending.clear();
+            pending_rows = 0;
+
+            writeHeader(rows);
+            channel.truncate(HEADER);
+            channel.force(false);
+            end = HEADER;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads back every intact record in order, then drops a torn tail left by a crash.
+     *
+     * @param columns column names, in schema order
+     * @param rows    receives each row with its row number
+     */
+    public void replay(List<String> columns, ObjLongConsumer<Tuple> rows) throws IOException {
+        lock.lock();
+
+        try {
+            long pos = HEADER;
+            long size = channel.size();
+            ByteBuffer head = ByteBuffer.allocate(8);
+            ByteBuffer body = ByteBuffer.allocate(1024);
+
+            while (pos + 8 <= size) {
+                head.clear();
+                read(head, pos);
+                int length = head.getInt(0);
+                int check  = head.getInt(4);
+
+                if (length < 12 || pos + 8 + length > size)
+                    break;
+
+                if (body.capacity() < length)
+                    body = ByteBuffer.allocate(Math.max(length, body.capacity() * 2));
+                body.clear().limit(length);
+                read(body, pos + 8);
+
+                crc.reset();
+                crc.update(body.array(), 0, length);
+                if ((int) crc.getValue() != check)
+                    break;
+
+                body.flip();
+                long index = body.getLong();
+                int count  = body.getInt();
+                if (count != columns.size())
+                    throw new IOException("Ingest log " + fileName + " has " + count + " columns, dataset has " + columns.size());
+
+                Tuple row = new Tuple();
+                for (String c : columns) {
+                    row.set(c, get(body));
+                }
+                rows.accept(row, index);
+
+                pos += 8 + length;
+            }
+
+            if (pos < size)
+                channel.truncate(pos);
+            end = pos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+
+        lock.lock();
+
+        try {
+            if (!channel.isOpen())
+                return;
+            if (pending_rows > 0)
+                write(true);
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeHeader(long rows) throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(HEADER);
+        h.putInt(MAGIC).putInt(VERSION).putLong(rows).flip();
+        while (h.hasRemaining()) {
+            channel.write(h, h.position());
+        }
+        base = rows;
+    }
+
+    private void read(ByteBuffer bb, long pos) throws IOException {
+        int start = bb.position();
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, pos + bb.position() - start) < 0)
+                throw new IOException("Unexpected end of ingest log " + fileName);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer bb = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            bb.put(pending);
+            pending = bb;
+        }
+    }
+
+    private void put(Object v) {
+        if (v == null) {
+            ensure(1);
+            pending.put(NULL);
+        } else if (v instanceof Integer i) {
+            ensure(5);
+            pending.put(INT).putInt(i);
+        } else if (v instanceof Long l) {
+            ensure(9);
+            pending.put(LONG).putLong(l);
+        } else if (v instanceof Double d) {
+            ensure(9);
+            pending.put(DOUBLE).putDouble(d);
+        } else if (v instanceof Boolean b) {
+            ensure(2);
+            pending.put(BOOLEAN).put((byte) (b ? 1 : 0));
+        } else if (v instanceof Timestamp t) {
+            ensure(13);
+            pending.put(TIMESTAMP).putLong(t.getTime()).putInt(t.getNanos());
+        } else if (v instanceof LocalDate d) {
+            ensure(9);
+            pending.put(DATE).putLong(d.toEpochDay());
+        } else if (v instanceof LocalDateTime t) {
+            ensure(13);
+            pending.put(DATETIME).putLong(t.toEpochSecond(ZoneOffset.UTC)).putInt(t.getNano());
+        } else {
+            byte[] b = String.valueOf(v).getBytes(StandardCharsets.UTF_8);
+            ensure(5 + b.length);
+            pending.put(STRING).putInt(b.length).put(b);
+        }
+    }
+
+    private static Object get(ByteBuffer bb) throws IOException {
+        byte type = bb.get();
+        switch (type) {
+            case NULL:    return null;
+            case INT:     return bb.getInt();
+            case LONG:    return bb.getLong();
+            case DOUBLE:  return bb.getDouble();
+            case BOOLEAN: return bb.get() != 0;
+            case TIMESTAMP: {
+                Timestamp t = new Timestamp(bb.getLong());
+                t.setNanos(bb.getInt());
+                return t;
+            }
+            case DATE:     return LocalDate.ofEpochDay(bb.getLong());
+            case DATETIME: return LocalDateTime.ofEpochSecond(bb.getLong(), bb.getInt(), ZoneOffset.UTC);
+            case STRING: {
+                byte[] b = new byte[bb.getInt()];
+                bb.get(b);
+                return new String(b, StandardCharsets.UTF_8);
+            }
+            default:
+                throw new IOException("Unknown value type in ingest log: " + type);
+        }
+    }
+}
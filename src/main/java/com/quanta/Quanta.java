@@ -1,5 +1,6 @@
 package com.quanta;
 
+import com.quanta.blob.Region;
 import com.quanta.column.IndexedColumn;
 import com.quanta.column.Column;
 import com.quanta.util.JSONWriter;
@@ -8,8 +9,15 @@ import com.quanta.util.Tuple;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Core class representing an in-memory database for high-performance analytical queries.
@@ -41,14 +49,32 @@ import java.util.Map;
  */
 public class Quanta implements Closeable {
 
+    /** Name of the ingest log file in {@link #base_dir}. */
+    public static final String LOG_FILE = "_ingest.log";
+
+    /** Bytes of blocks one {@link #verify(int)} task checks. */
+    private static final long VERIFY_BYTES = 32 * 1024 * 1024;
+
     /** The name of the Quanta dataset. */
     public final String name;
 
     /** The base directory where data is stored. */
     public final String base_dir;
 
-    /** The total number of records in the dataset. */
-    private int size;
+    /**
+     * The total number of records in the dataset. Raised only once every column holds the new
+     * row, so readers never see a row some column is missing.
+     */
+    private volatile int size;
+
+    /** Rows between checkpoints in write-behind mode, 0 when every append writes its headers. */
+    private int checkpoint;
+
+    /** Log of the rows added since the last checkpoint, null when disabled. */
+    private IngestLog log;
+
+    /** True when the column files are opened read-only, next to a writer process. */
+    private boolean readOnly;
 
     /** A map of column names to their respective {@link Column} instances. */
     private final Map<String, Column<?>> columns;
@@ -77,6 +103,16 @@ public class Quanta implements Closeable {
         return new Query(this);
     }
 
+    /**
+     * Freezes the current row count. Queries made from the snapshot see the same rows however
+     * many are added or rebuilt in the meantime.
+     *
+     * @return A {@link Snapshot} of the rows added so far.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this, size);
+    }
+
     /**
      * Returns the number of records in the dataset.
      *
@@ -86,6 +122,143 @@ public class Quanta implements Closeable {
         return size;
     }
 
+    /**
+     * Sets the number of rows between checkpoints.
+     * <p>💡 This method should not be used directly; use {@link QuantaBuilder#checkpoint(int)} instead.</p>
+     *
+     * @param rows Rows between checkpoints, 0 to disable.
+     */
+    public void checkpoint(int rows) {
+        this.checkpoint = rows;
+    }
+
+    /**
+     * Puts an ingest log in front of {@link #add(Tuple)}.
+     * <p>💡 This method should not be used directly; use {@link QuantaBuilder#ingestLog(SyncPolicy, int, int)} instead.</p>
+     *
+     * @param log The ingest log.
+     */
+    public void ingestLog(IngestLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Marks the dataset read-only: rows cannot be added and nothing is written to the files.
+     * <p>💡 This method should not be used directly; use {@link QuantaBuilder#readOnly()} instead.</p>
+     *
+     * @param readOnly True for a read-only dataset.
+     */
+    public void readOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Picks up the rows the writer process committed since the last call, for a read-only
+     * dataset. Rows become visible once every column has them.
+     *
+     * @return {@code true} if new rows or index data became visible.
+     * @throws IOException If a column file cannot be remapped or read.
+     */
+    public boolean refresh() throws IOException {
+        boolean changed = false;
+        int rows = Integer.MAX_VALUE;
+
+        for (Column<?> c : columns.values()) {
+            changed |= c.refresh();
+            rows = Math.min(rows, c.size());
+        }
+
+        if (!columns.isEmpty())
+            size = rows;
+
+        return changed;
+    }
+
+    /**
+     * Writes the headers of every column, making all rows added so far durable across a restart.
+     * <p>
+     * Called automatically every {@code checkpoint} rows, after {@link #rebuild()} and on close.
+     * With an ingest log the columns are also forced to disk and the log is emptied.
+     * </p>
+     *
+     * @throws IOException If an error occurs while writing the headers.
+     */
+    public void commit() throws IOException {
+        if (readOnly)
+            return;
+
+        for (Column<?> c : columns.values()) {
+            c.commit();
+        }
+
+        if (log != null) {
+            for (Column<?> c : columns.values()) {
+                c.force();
+            }
+            log.checkpoint(size);
+        }
+    }
+
+    /**
+     * Trims every column to the row count they all hold, after a shutdown that skipped
+     * {@link #close()}. Rows added after the last checkpoint are dropped, unless an ingest log
+     * holds them: then the columns are trimmed to the log's checkpoint and the logged rows
+     * replayed. The indexes are rebuilt afterwards. Does nothing when the columns already agree
+     * and the log is empty.
+     *
+     * @throws IOException If an error occurs while trimming the columns or reading the log.
+     */
+    public void recover() throws IOException {
+        if (columns.isEmpty())
+            return;
+
+        if (readOnly) {
+            refresh();
+            return;
+        }
+
+        int rows = Integer.MAX_VALUE;
+        boolean dirty = false;
+
+        for (Column<?> c : columns.values()) {
+            rows = Math.min(rows, c.size());
+        }
+
+        if (log != null) {
+            if (log.base() > rows)
+                throw new IOException("Ingest log starts at row " + log.base() + " but the columns hold " + rows + " rows");
+            rows = (int) log.base();
+        }
+
+        for (Column<?> c : columns.values()) {
+            dirty |= c.size() != rows || c.needsRecovery();
+        }
+
+        if (dirty) {
+            for (Column<?> c : columns.values()) {
+                c.recover(rows);
+            }
+            size = rows;
+        }
+
+        int before = size;
+
+        if (log != null) {
+            log.replay(new ArrayList<>(columns.keySet()), (row, index) -> {
+                // rows before the checkpoint are left over from an interrupted truncate
+                if (index == size)
+                    insert(row);
+            });
+        }
+
+        if (dirty || size != before)
+            rebuild();
+    }
+
     /**
      * Rebuilds all indexed columns to optimize query performance.
      * <p>
@@ -95,6 +268,8 @@ public class Quanta implements Closeable {
      * @throws IOException If an error occurs during index rebuilding.
      */
     public void rebuild() throws IOException {
+        checkWritable();
+
         for (Column<?> c : columns.values()) {
             if (c instanceof IndexedColumn) {
                 try {
@@ -104,6 +279,144 @@ public class Quanta implements Closeable {
                 }
             }
         }
+
+        commit();
+    }
+
+    /**
+     * Loads the column files into memory so the first queries after opening do not pay for page
+     * faults. Regions are loaded in parallel and in priority order: the bitmap and row regions of
+     * indexed columns first, then dictionaries, then plain values such as metrics.
+     *
+     * @param threads  Number of loading threads.
+     * @param listener Receives the progress, may be null.
+     * @throws IOException If a column file cannot be read.
+     */
+    public void warmUp(int threads, WarmUpListener listener) throws IOException {
+        List<Region> regions = new ArrayList<>();
+        long total = 0;
+
+        for (int tier = 0; tier < 3; tier++) {
+            for (Column<?> c : columns.values()) {
+                regions.addAll(c.warmRegions(tier));
+            }
+        }
+
+        for (Region r : regions) {
+            total += r.liveBytes();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "quanta-warm-up");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            AtomicLong loaded = new AtomicLong();
+            List<Future<?>> tasks = new ArrayList<>();
+            long all = total;
+
+            // the queue is FIFO, so regions start loading in priority order
+            for (Region r : regions) {
+                tasks.add(pool.submit(() -> {
+                    long done = loaded.addAndGet(r.warm());
+                    if (listener != null)
+                        listener.progress(Math.min(done, all), all);
+                    return null;
+                }));
+            }
+
+            for (Future<?> f : tasks) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Warm-up interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks every sealed block of every column against its CRC32C and reports the damaged ones,
+     * for a scrub after a crash, a copy or on a schedule. Blocks are read in parallel, in runs of
+     * about {@value #VERIFY_BYTES} bytes per region, so the pass runs at the bandwidth of the disk.
+     * <p>
+     * Blocks that are not sealed are not covered: the last block of each region, which is still
+     * being filled, and blocks of files written before checksums existed. {@link #compact()}
+     * seals every full block. Do not run it concurrently with {@code add} or {@link #rebuild()}.
+     * </p>
+     *
+     * @param threads Number of reading threads.
+     * @return the damaged blocks, empty when every checksum matches
+     * @throws IOException If a column file cannot be read.
+     */
+    public List<DamagedBlock> verify(int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "quanta-verify");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<List<DamagedBlock>>> tasks = new ArrayList<>();
+
+            for (Column<?> c : columns.values()) {
+                Region[] regions = c.regions();
+
+                for (int i = 0; i < regions.length; i++) {
+                    Region r = regions[i];
+                    int region = i;
+                    int count = r.blockCount();
+                    int run = (int) Math.max(1, VERIFY_BYTES / r.blockBytes());
+
+                    for (int from = 0; from < count; from += run) {
+                        int start = from, end = Math.min(count, from + run);
+
+                        tasks.add(pool.submit(() -> {
+                            List<DamagedBlock> damaged = new ArrayList<>();
+                            for (int b = start; b < end; b++) {
+                                if (!r.verify(b))
+                                    damaged.add(new DamagedBlock(c.name, c.file(), region, b, r.position(b), r.blockBytes()));
+                            }
+                            return damaged;
+                        }));
+                    }
+                }
+            }
+
+            List<DamagedBlock> damaged = new ArrayList<>();
+            for (Future<List<DamagedBlock>> f : tasks) {
+                damaged.addAll(f.get());
+            }
+            return damaged;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Verify interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Rewrites every column file into a dense layout, reclaiming the space left by index
+     * rebuilds and recovery. Run it offline, after ingest and {@link #rebuild()}, with no
+     * queries in flight.
+     *
+     * @throws IOException If an error occurs while copying or replacing a column file.
+     */
+    public void compact() throws IOException {
+        checkWritable();
+        commit();
+
+        for (Column<?> c : columns.values()) {
+            c.compact();
+        }
     }
 
     /**
@@ -113,9 +426,15 @@ public class Quanta implements Closeable {
      */
     @Override
     public void close() throws IOException {
+        if (log != null)
+            commit();
+
         for (Column<?> c : columns.values()) {
             c.close();
         }
+
+        if (log != null)
+            log.close();
     }
 
     /**
@@ -164,6 +483,33 @@ public class Quanta implements Closeable {
      * @throws RuntimeException If data insertion fails.
      */
     public void add(Tuple row) {
+        checkWritable();
+
+        if (log != null) {
+            try {
+                log.append(size, columns.keySet(), row);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        insert(row);
+
+        if (checkpoint > 0 && size % checkpoint == 0) {
+            try {
+                commit();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("Dataset " + name + " is opened read-only");
+    }
+
+    private void insert(Tuple row) {
         Exception ex = null;
 
         try {
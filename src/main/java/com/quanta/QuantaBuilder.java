@@ -1,5 +1,8 @@
 package com.quanta;
 
+import com.quanta.blob.BlobFactory;
+import com.quanta.blob.PagePool;
+import com.quanta.blob.StorageType;
 import com.quanta.column.*;
 import com.quanta.data.*;
 import com.quanta.util.Utils;
@@ -33,10 +36,14 @@ public class QuantaBuilder {
      * Internal enum defining the different indexing strategies available.
      */
     private enum IndexType {
-        UNIQUE_VALUES, INDEXED, NO_INDEX
+        UNIQUE_VALUES, INDEXED, RUN_LENGTH, NO_INDEX
     }
 
     private Quanta quanta;
+    private final BlobFactory blobs = new BlobFactory();
+    private boolean ingestLog;
+    private int warmUpThreads;
+    private WarmUpListener warmUpListener;
 
     /**
      * Constructs a new {@code QuantaBuilder} instance with the specified name and storage location.
@@ -63,6 +70,154 @@ public class QuantaBuilder {
         this.quanta = new Quanta(name, location);
     }
 
+    /**
+     * Sets the number of rows the dataset is expected to hold.
+     * <p>
+     * New column files are created close to their final size instead of starting small and
+     * growing during ingestion. Only columns added after this call are affected.
+     * </p>
+     *
+     * @param rows The expected number of rows.
+     * @return The updated {@code QuantaBuilder} instance.
+     */
+    public QuantaBuilder expectedRows(long rows) {
+        blobs.expectedRows(rows);
+        return this;
+    }
+
+    /**
+     * Selects how column files are accessed, see {@link StorageType}.
+     * {@link StorageType#ANONYMOUS} keeps the columns off-heap without creating any files.
+     * Only columns added after this call are affected.
+     *
+     * @param storage The storage type.
+     * @return The updated {@code QuantaBuilder} instance.
+     */
+    public QuantaBuilder storage(StorageType storage) {
+        blobs.storage(storage);
+        return this;
+    }
+
+    /**
+     * Enables write-behind headers: column headers are written at checkpoints instead of on every
+     * appended value, which takes several stores off the ingest path.
+     * <p>
+     * A checkpoint is taken every {@code rows} rows, on {@link Quanta#rebuild()} and on close.
+     * After a crash the dataset reopens at its last checkpoint. Only columns added after this
+     * call are affected.
+     * </p>
+     *
+     * @param rows Rows between checkpoints, 0 to write headers on every append.
+     * @return The updated {@code QuantaBuilder} instance.
+     */
+    public QuantaBuilder checkpoint(int rows) {
+        blobs.checkpointRows(rows);
+        quanta.checkpoint(rows);
+        return this;
+    }
+
+    /**
+     * Puts an append-only ingest log in front of {@link Quanta#add(com.quanta.util.Tuple)}.
+     * <p>
+     * Every row is logged before it reaches the columns and the log is forced to disk according
+     * to {@code policy}, once per group of rows rather than once per column. After a crash the
+     * dataset reopens at its last checkpoint and the logged rows are replayed, so all columns
+     * come back with the same row count. The log is emptied at every checkpoint, see
+     * {@link #checkpoint(int)}.
+     * </p>
+     *
+     * @param policy     When logged rows are forced to disk.
+     * @param syncMillis Longest time a row stays unwritten in group mode, 0 for no timer.
+     * @param syncRows   Rows written and forced together in group mode.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If the log cannot be opened.
+     */
+    public QuantaBuilder ingestLog(SyncPolicy policy, int syncMillis, int syncRows) throws IOException {
+        if (blobs.readOnly())
+            throw new IllegalStateException("A read-only dataset cannot have an ingest log");
+
+        ingestLog = true;
+        quanta.ingestLog(new IngestLog(quanta.base_dir + "/" + Quanta.LOG_FILE, policy, syncMillis, syncRows));
+        return this;
+    }
+
+    /**
+     * Opens the dataset read-only next to the process that writes it, to serve queries from
+     * several JVMs over the same files. Files are mapped read-only and never written; call
+     * {@link Quanta#refresh()} to see rows committed by the writer since opening, the writer
+     * commits every {@link #checkpoint(int)} rows, after a rebuild and on close. The writer builds
+     * each index next to the one in use and may reuse the space of the one before, so refresh
+     * at least once between two rebuilds of the writer, or indexed filters can miss rows.
+     * <p>Must be called before any column is added. Requires mapped or segment storage.</p>
+     *
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IllegalStateException If an ingest log is configured.
+     */
+    public QuantaBuilder readOnly() {
+        if (ingestLog)
+            throw new IllegalStateException("A read-only dataset cannot have an ingest log");
+
+        blobs.readOnly(true);
+        quanta.readOnly(true);
+        return this;
+    }
+
+    /**
+     * Loads every column into memory when {@link #getQuanta()} opens the dataset, so queries
+     * run at full speed right after a restart instead of faulting pages in for minutes.
+     * Index bitmaps and row ids are loaded first, then dictionaries, then metrics.
+     *
+     * @param threads  Number of loading threads, e.g. the number of cores.
+     * @param listener Receives the progress, may be null.
+     * @return The updated {@code QuantaBuilder} instance.
+     */
+    public QuantaBuilder warmUp(int threads, WarmUpListener listener) {
+        this.warmUpThreads  = threads;
+        this.warmUpListener = listener;
+        return this;
+    }
+
+    /**
+     * Stores fixed width data in contiguous extents of {@code rows} rows instead of the default
+     * 500 row blocks. Rows are then located with a shift and a mask and scans read long runs of
+     * contiguous memory, at the cost of allocating a full extent per column region up front.
+     * Only new column files added after this call are affected; existing files keep their layout.
+     *
+     * @param rows Rows per extent, a power of two between 64 and 16M, e.g. 65536.
+     * @return The updated {@code QuantaBuilder} instance.
+     */
+    public QuantaBuilder extentRows(int rows) {
+        if (rows <= 0 || Integer.bitCount(rows) != 1)
+            throw new IllegalArgumentException("Extent rows must be a power of two: " + rows);
+        blobs.extentShift(Integer.numberOfTrailingZeros(rows));
+        return this;
+    }
+
+    /**
+     * Compresses sealed blocks when {@link Quanta#compact()} rewrites the columns: dictionary
+     * strings in 4 MB blocks and full extents of metric columns, see {@link #extentRows(int)}.
+     * Packed blocks take a fraction of the disk and page cache; reads decompress them into a
+     * small per-region cache. Rows appended later are stored raw until the next compaction.
+     *
+     * @return The updated {@code QuantaBuilder} instance.
+     */
+    public QuantaBuilder compression() {
+        blobs.compression(true);
+        return this;
+    }
+
+    /**
+     * Caps the memory used by {@link StorageType#PAGED} columns. All paged columns of the
+     * dataset share one pool of this size, 256 MB by default.
+     *
+     * @param bytes The pool size in bytes.
+     * @return The updated {@code QuantaBuilder} instance.
+     */
+    public QuantaBuilder pagePool(long bytes) {
+        blobs.pagePool(new PagePool(bytes));
+        return this;
+    }
+
     /**
      * Adds a dictionary-encoded column for storing string values efficiently.
      *
@@ -102,6 +257,20 @@ public class QuantaBuilder {
         return addColumn(name, new FixedStringAdapter(maxWidth), IndexType.NO_INDEX, 0);
     }
 
+    /**
+     * Adds a non indexed string column stored as runs of equal consecutive values, for rows
+     * ingested sorted or clustered by this column. Equality filters are supported and mark each
+     * matching run at once.
+     *
+     * @param name        The column name.
+     * @param maxWidth    The maximum possible width of the string in this column.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If an error occurs while adding the column.
+     */
+    public QuantaBuilder addNoIndexRunLengthStringColumn(String name, int maxWidth) throws IOException {
+        return addColumn(name, new RunLengthAdapter<>(new FixedStringAdapter(maxWidth)), IndexType.NO_INDEX, 0);
+    }
+
     /**
      * Adds a primary key integer column where each int value is going to be unique.
      *
@@ -110,7 +279,7 @@ public class QuantaBuilder {
      * @throws IOException If an error occurs while adding the column.
      */
     public QuantaBuilder addIntPrimaryKey(String name) throws IOException {
-        return addColumn(name, new IntAdapter(), IndexType.UNIQUE_VALUES, IndexCardinality.LARGE.getMaxDistinct());
+        return addColumn(name, new IntAdapter(true), IndexType.UNIQUE_VALUES, IndexCardinality.LARGE.getMaxDistinct());
     }
 
     /**
@@ -121,7 +290,7 @@ public class QuantaBuilder {
      * @throws IOException If an error occurs while adding the column.
      */
     public QuantaBuilder addLongPrimaryKey(String name) throws IOException {
-        return addColumn(name, new LongAdapter(), IndexType.UNIQUE_VALUES, IndexCardinality.LARGE.getMaxDistinct());
+        return addColumn(name, new LongAdapter(true), IndexType.UNIQUE_VALUES, IndexCardinality.LARGE.getMaxDistinct());
     }
 
     /**
@@ -136,6 +305,36 @@ public class QuantaBuilder {
         return addColumn(name, new IntAdapter(), IndexType.INDEXED, cardinality.getMaxDistinct());
     }
 
+    /**
+     * Adds an indexed integer column whose row ids are stored as runs of equal consecutive
+     * values, e.g. a year or month for rows ingested in time order. The column has no bitmap,
+     * filters mark each matching run at once.
+     *
+     * @param name        The column name.
+     * @param cardinality The expected number of distinct values for indexing.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If an error occurs while adding the column.
+     */
+    public QuantaBuilder addRunLengthIntColumn(String name, IndexCardinality cardinality) throws IOException {
+        return addColumn(name, new IntAdapter(), IndexType.RUN_LENGTH, cardinality.getMaxDistinct());
+    }
+
+    /**
+     * Adds an indexed string column whose row ids are stored as runs of equal consecutive values,
+     * see {@link #addRunLengthIntColumn(String, IndexCardinality)}.
+     *
+     * @param name        The column name.
+     * @param maxWidth    The maximum possible width of the string in this column.
+     * @param cardinality The expected number of distinct values for indexing.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If an error occurs while adding the column.
+     */
+    public QuantaBuilder addRunLengthStringColumn(String name, int maxWidth, IndexCardinality cardinality) throws IOException {
+        DataAdapter da = cardinality == IndexCardinality.TINY ? new Dictionary(maxWidth) : new FixedStringAdapter(maxWidth);
+
+        return addColumn(name, da, IndexType.RUN_LENGTH, cardinality.getMaxDistinct());
+    }
+
     /**
      * Adds a timestamp column with unique indexing.
      *
@@ -147,7 +346,7 @@ public class QuantaBuilder {
      * @throws IOException If an error occurs while adding the column.
      */
     public QuantaBuilder addUniqueDatesColumn(String name, String format) throws IOException {
-        return addColumn(name, new TimestampAdapter(format), IndexType.UNIQUE_VALUES, IndexCardinality.LARGE.getMaxDistinct());
+        return addColumn(name, new TimestampAdapter(format, true), IndexType.UNIQUE_VALUES, IndexCardinality.LARGE.getMaxDistinct());
     }
 
     /**
@@ -162,7 +361,7 @@ public class QuantaBuilder {
      * @throws IOException If an error occurs while adding the column.
      */
     public QuantaBuilder addTimestampColumn(String name, String format, IndexCardinality cardinality) throws IOException {
-        return addColumn(name, new TimestampAdapter(format), IndexType.INDEXED, cardinality.getMaxDistinct());
+        return addColumn(name, new TimestampAdapter(format, true), IndexType.INDEXED, cardinality.getMaxDistinct());
     }
 
     public QuantaBuilder addTimestampColumn(String name, IndexCardinality cardinality) throws IOException {
@@ -170,7 +369,37 @@ public class QuantaBuilder {
     }
 
     /**
-     * Adds a boolean column.
+     * Adds an indexed column of {@link java.time.LocalDate} values, stored in 2 bytes a row, see
+     * {@link DateAdapter}.
+     *
+     * @param name        The column name.
+     * @param format      The {@link java.time.format.DateTimeFormatter} pattern of the dates.
+     * @param cardinality The expected number of distinct values for indexing.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If an error occurs while adding the column.
+     */
+    public QuantaBuilder addDateColumn(String name, String format, IndexCardinality cardinality) throws IOException {
+        return addColumn(name, new DateAdapter(format), IndexType.INDEXED, cardinality.getMaxDistinct());
+    }
+
+    /**
+     * Adds an indexed column of {@link java.time.LocalDateTime} values, stored in the width of
+     * {@code precision}, see {@link DateTimeAdapter}.
+     *
+     * @param name        The column name.
+     * @param format      The {@link java.time.format.DateTimeFormatter} pattern of the values.
+     * @param precision   The unit the values are stored in.
+     * @param cardinality The expected number of distinct values for indexing.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If an error occurs while adding the column.
+     */
+    public QuantaBuilder addDateTimeColumn(String name, String format, TimePrecision precision, IndexCardinality cardinality) throws IOException {
+        return addColumn(name, new DateTimeAdapter(format, precision), IndexType.INDEXED, cardinality.getMaxDistinct());
+    }
+
+    /**
+     * Adds a boolean column, indexed like any other column. New columns are better added with
+     * {@link #addFlagColumn(String)}, which stores a bit per row.
      *
      * @param name The column name.
      * @return The updated {@code QuantaBuilder} instance.
@@ -181,7 +410,24 @@ public class QuantaBuilder {
     }
 
     /**
-     * Adds a floating-point fact column (e.g., prices, metrics).
+     * Adds a boolean column storing a bit per row, the bits serving as its index (e.g.,
+     * is_deleted, is_bot). Its file is not compatible with one written by
+     * {@link #addBooleanColumn(String)}.
+     *
+     * @param name The column name.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If an error occurs while adding the column.
+     */
+    public QuantaBuilder addFlagColumn(String name) throws IOException {
+        String file  = quanta.base_dir + "/" + name;
+        quanta.addColumn(name, new BooleanColumn(name, file, blobs));
+
+        return this;
+    }
+
+    /**
+     * Adds a floating-point fact column (e.g., prices, metrics). New files store each value XORed
+     * with the one before, see {@link DoubleAdapter#DoubleAdapter(boolean)}.
      *
      * @param name The column name.
      * @return The updated {@code QuantaBuilder} instance.
@@ -189,7 +435,24 @@ public class QuantaBuilder {
      */
     public QuantaBuilder addMetric(String name) throws IOException {
         String file  = quanta.base_dir + "/" + name;
-        quanta.addColumn(name, new MetricColumn(name, file, new DoubleAdapter()));
+        quanta.addColumn(name, new MetricColumn<>(name, file, new DoubleAdapter(true), blobs));
+
+        return this;
+    }
+
+    /**
+     * Adds a fixed-point decimal fact column (e.g., amounts of money), stored as longs scaled by
+     * 10^scale and summed exactly, see {@link Query#sumExact(String)}.
+     *
+     * @param name      The column name.
+     * @param precision The number of digits of a value, at most {@value DecimalAdapter#MAX_PRECISION}.
+     * @param scale     The number of digits after the decimal point.
+     * @return The updated {@code QuantaBuilder} instance.
+     * @throws IOException If an error occurs while adding the column.
+     */
+    public QuantaBuilder addDecimalMetric(String name, int precision, int scale) throws IOException {
+        String file  = quanta.base_dir + "/" + name;
+        quanta.addColumn(name, new MetricColumn<>(name, file, new DecimalAdapter(precision, scale), blobs));
 
         return this;
     }
@@ -203,7 +466,7 @@ public class QuantaBuilder {
      */
     public QuantaBuilder addIntMetric(String name) throws IOException {
         String file  = quanta.base_dir + "/" + name;
-        quanta.addColumn(name, new MetricColumn(name, file, new IntAdapter()));
+        quanta.addColumn(name, new MetricColumn<>(name, file, new IntAdapter(true), blobs));
 
         return this;
     }
@@ -214,6 +477,13 @@ public class QuantaBuilder {
      * @return The constructed {@link Quanta} instance.
      */
     public Quanta getQuanta() {
+        try {
+            quanta.recover();
+            if (warmUpThreads > 0)
+                quanta.warmUp(warmUpThreads, warmUpListener);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
         return quanta;
     }
 
@@ -233,9 +503,10 @@ public class QuantaBuilder {
         String file  = quanta.base_dir + "/" + name;
 
         switch (indexType) {
-            case INDEXED -> col = new IndexedColumn(name, file, da, maxUnique);
-            case UNIQUE_VALUES -> col = new AllUniqueValuesIndexColumn(name, file, da);
-            case NO_INDEX -> col = new NoIndexColumn(name, file, da);
+            case INDEXED -> col = new IndexedColumn(name, file, da, maxUnique, blobs);
+            case RUN_LENGTH -> col = new IndexedColumn(name, file, da, maxUnique, true, blobs);
+            case UNIQUE_VALUES -> col = new AllUniqueValuesIndexColumn(name, file, da, blobs);
+            case NO_INDEX -> col = new NoIndexColumn(name, file, da, blobs);
             default -> throw new IllegalArgumentException("No Index type provided");
         }
         quanta.addColumn(name, col);
@@ -1,11 +1,14 @@
 package com.quanta;
 
 import com.quanta.column.Column;
+import com.quanta.column.MetricColumn;
 import com.quanta.util.ByteBitSet;
 import com.quanta.util.JSONWriter;
 import com.quanta.util.Tuple;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
 import java.util.*;
 
 /**
@@ -32,6 +35,7 @@ import java.util.*;
 public class Query implements Iterable<Tuple> {
 
     private final Quanta quanta;
+    private final int rows;
     private final ByteBitSet result;
     private boolean is_first;
     private final List<Column> selected;
@@ -42,8 +46,20 @@ public class Query implements Iterable<Tuple> {
      * @param quanta The {@link Quanta} instance on which the query is executed.
      */
     public Query(Quanta quanta) {
+        this(quanta, quanta.size());
+    }
+
+    /**
+     * Constructs a new {@code Query} that only sees the first {@code rows} rows of the dataset.
+     * Rows added while it runs are left out of every filter, see {@link Snapshot}.
+     *
+     * @param quanta The {@link Quanta} instance on which the query is executed.
+     * @param rows   The number of rows visible to the query.
+     */
+    public Query(Quanta quanta, int rows) {
         this.quanta = quanta;
-        this.result = new ByteBitSet(quanta.size());
+        this.rows = rows;
+        this.result = new ByteBitSet(rows);
         this.is_first = true;
         this.selected = new ArrayList<>();
     }
@@ -83,14 +99,7 @@ public class Query implements Iterable<Tuple> {
         Column c = quanta.getColumn(column);
         ByteBitSet ans = c.filter(operator, value);
 
-        if (is_first) {
-            result.replace(ans);
-            is_first = false;
-        } else {
-            result.and(ans);
-        }
-
-        return this;
+        return combine(ans);
     }
 
     /**
@@ -105,14 +114,7 @@ public class Query implements Iterable<Tuple> {
         Column col = quanta.getColumn(column);
         ByteBitSet ans = col.eq(Arrays.asList(values));
 
-        if (is_first) {
-            result.replace(ans);
-            is_first = false;
-        } else {
-            result.and(ans);
-        }
-
-        return this;
+        return combine(ans);
     }
 
     /**
@@ -127,14 +129,7 @@ public class Query implements Iterable<Tuple> {
         Column col = quanta.getColumn(column);
         ByteBitSet ans = col.not(Arrays.asList(values));
 
-        if (is_first) {
-            result.replace(ans);
-            is_first = false;
-        } else {
-            result.and(ans);
-        }
-
-        return this;
+        return combine(ans);
     }
 
     /**
@@ -149,14 +144,7 @@ public class Query implements Iterable<Tuple> {
         Column col = quanta.getColumn(column);
         ByteBitSet ans = col.gt(value);
 
-        if (is_first) {
-            result.replace(ans);
-            is_first = false;
-        } else {
-            result.and(ans);
-        }
-
-        return this;
+        return combine(ans);
     }
 
     /**
@@ -171,6 +159,17 @@ public class Query implements Iterable<Tuple> {
         Column col = quanta.getColumn(column);
         ByteBitSet ans = col.lt(value);
 
+        return combine(ans);
+    }
+
+    /**
+     * Cuts a filter result to the rows visible to this query and combines it with the
+     * previous ones.
+     */
+    private Query combine(ByteBitSet ans) {
+        // columns may hold rows added after the query started, and not() sets the padding bits
+        ans.limit(rows);
+
         if (is_first) {
             result.replace(ans);
             is_first = false;
@@ -181,6 +180,58 @@ public class Query implements Iterable<Tuple> {
         return this;
     }
 
+    /**
+     * Returns the number of rows visible to this query.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the sum of a metric column over the filtered rows, read a run of rows at a time
+     * rather than a tuple per row.
+     *
+     * @param column The metric column to sum.
+     * @throws IOException If an error occurs while reading the column.
+     */
+    public double sum(String column) throws IOException {
+        return metric(column).sum(result, rows);
+    }
+
+    /**
+     * Returns the exact sum of a metric column over the filtered rows. Int and decimal columns
+     * are added up as longs, so totals of amounts do not drift.
+     *
+     * @param column The metric column to sum.
+     * @throws IOException If an error occurs while reading the column.
+     */
+    public BigDecimal sumExact(String column) throws IOException {
+        return metric(column).total(result, rows);
+    }
+
+    /**
+     * Returns the average of a metric column over the filtered rows, from its exact sum and to
+     * 16 digits, or null when no row matches.
+     *
+     * @param column The metric column to average.
+     * @throws IOException If an error occurs while reading the column.
+     */
+    public BigDecimal avgExact(String column) throws IOException {
+        int count = result.cardinality();
+        if (count == 0)
+            return null;
+
+        return sumExact(column).divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+    }
+
+    private MetricColumn<?> metric(String column) {
+        Column<?> c = quanta.getColumn(column);
+        if (!(c instanceof MetricColumn<?> metric))
+            throw new IllegalArgumentException("Not a metric column: " + column);
+
+        return metric;
+    }
+
     /**
      * Returns an iterator over the filtered rows.
      *
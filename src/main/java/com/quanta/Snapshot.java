@@ -0,0 +1,59 @@
+package com.quanta;
+
+import com.quanta.util.Tuple;
+
+import java.io.IOException;
+
+/**
+ * The rows of a {@link Quanta} dataset at one point in time.
+ * <p>
+ * Rows are only ever appended, so a row count is enough to pin a consistent view: every
+ * {@link Query} made here is cut to the first {@link #size()} rows, while ingestion and
+ * {@link Quanta#rebuild()} carry on. Indexes rebuilt after the snapshot still answer for its
+ * rows, see {@link com.quanta.column.IndexedColumn#rebuild()}.
+ * </p>
+ *
+ * <p>Usage Example:</p>
+ * <pre>
+ * Snapshot s = quanta.snapshot();
+ * for (Tuple row : s.newQuery().and("category", "Electronics")) {
+ *     // rows added after the snapshot never show up here
+ * }
+ * </pre>
+ */
+public class Snapshot {
+
+    private final Quanta quanta;
+    private final int rows;
+
+    Snapshot(Quanta quanta, int rows) {
+        this.quanta = quanta;
+        this.rows = rows;
+    }
+
+    /**
+     * Returns the number of rows visible in this snapshot.
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Creates a {@link Query} over the rows of this snapshot.
+     */
+    public Query newQuery() {
+        return new Query(quanta, rows);
+    }
+
+    /**
+     * Retrieves a row of this snapshot by index.
+     *
+     * @param index The row index, below {@link #size()}.
+     * @throws IndexOutOfBoundsException If the row was added after the snapshot.
+     */
+    public Tuple get(int index) throws IOException {
+        if (index < 0 || index >= rows)
+            throw new IndexOutOfBoundsException("Row " + index + " is not in a snapshot of " + rows + " rows");
+        return quanta.get(index);
+    }
+}
@@ -0,0 +1,34 @@
+package com.quanta;
+
+/**
+ * Enum selecting when the ingest log is forced to disk.
+ * <p>
+ * Rows are appended to the log before they reach the columns, so every row acknowledged by a
+ * sync survives a crash and is replayed when the dataset is opened again.
+ * </p>
+ *
+ * <p>Usage Example:</p>
+ * <pre>
+ * Quanta quanta = new QuantaBuilder("Dataset", "/data")
+ *     .ingestLog(SyncPolicy.GROUP, 50, 10_000)
+ *     .addIntColumn("year", IndexCardinality.TINY)
+ *     .getQuanta();
+ * </pre>
+ */
+public enum SyncPolicy {
+
+    /** Fsync after every row. Nothing acknowledged is ever lost, at the cost of one fsync per row. */
+    ALWAYS,
+
+    /**
+     * Group commit: one fsync for all rows added in the last interval, or as soon as the row
+     * limit is reached. A crash loses at most one interval of rows.
+     */
+    GROUP,
+
+    /**
+     * Rows are written to the log at the same points as {@link #GROUP} but never forced, the
+     * operating system decides when they reach the disk. Survives a process crash, not a power loss.
+     */
+    OS
+}
@@ -0,0 +1,25 @@
+package com.quanta;
+
+/**
+ * Receives the progress of {@link Quanta#warmUp(int, WarmUpListener)}.
+ * <p>
+ * Called from the warm-up threads each time a region has been loaded, possibly concurrently.
+ * </p>
+ *
+ * <p>Usage Example:</p>
+ * <pre>
+ * Quanta quanta = new QuantaBuilder("Dataset", "/data")
+ *     .addIntColumn("year", IndexCardinality.TINY)
+ *     .warmUp(4, (loaded, total) -&gt; System.out.println(loaded * 100 / total + "%"))
+ *     .getQuanta();
+ * </pre>
+ */
+@FunctionalInterface
+public interface WarmUpListener {
+
+    /**
+     * @param loaded bytes loaded so far
+     * @param total  bytes to load
+     */
+    void progress(long loaded, long total);
+}
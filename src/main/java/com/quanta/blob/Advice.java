@@ -0,0 +1,29 @@
+package com.quanta.blob;
+
+/**
+ * Enum describing how a {@link Region} is going to be read, see {@link Region#advise(Advice)}.
+ * <p>
+ * Advice is a hint: each {@link Blob} acts on what it can control and ignores the rest.
+ * {@link PagedBlob} reads ahead on {@link #SEQUENTIAL} pages, loads {@link #WILL_NEED} pages
+ * into its pool and evicts {@link #DONT_NEED} pages. {@link MemoryBlob} passes every hint to
+ * {@code madvise} when the JVM grants native access, see {@link NativeAdvice}; otherwise it only
+ * loads {@link #WILL_NEED} ranges and the kernel's default read-ahead applies.
+ * </p>
+ */
+public enum Advice {
+
+    /** No particular pattern, the default. */
+    NORMAL,
+
+    /** Read in increasing order, e.g. full column scans. Pages are read ahead. */
+    SEQUENTIAL,
+
+    /** Read at scattered positions, e.g. row fetches. Nothing is read ahead. */
+    RANDOM,
+
+    /** Needed soon: loaded right away. Applies once, to the blocks allocated at the time. */
+    WILL_NEED,
+
+    /** Not needed for a while: memory may be reclaimed. Applies once, like {@link #WILL_NEED}. */
+    DONT_NEED
+}
@@ -0,0 +1,93 @@
+package com.quanta.blob;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap {@link Blob} with no backing file.
+ * <p>
+ * Segments are direct buffers, so the data lives outside the Java heap and adds nothing to GC
+ * work, but it never touches the page cache or the disk: there is no msync, no dirty page
+ * write-back and nothing left behind after {@link #close()}. Meant for ephemeral datasets such
+ * as intermediate query results or tests; the contents are lost when the blob is closed.
+ * </p>
+ * <p>
+ * Growth follows {@link BufferBlob}: full segments are never touched, the tail segment is
+ * replaced by a larger copy. Replaced tails are retired until close, as in {@link MemoryBlob},
+ * so a concurrent reader never sees freed memory; they add up to less than one segment.
+ * </p>
+ */
+public class AnonymousBlob extends BufferBlob {
+
+    private final List<ByteBuffer> retired;
+    private boolean closed;
+
+    public AnonymousBlob(Region... regions) throws IOException {
+        this(DEFAULT_SEGMENT_SHIFT, 0, regions);
+    }
+
+    /**
+     * @param segmentShift log2 of the segment size
+     * @param expectedSize expected final size in bytes, used as the initial capacity; 0 when unknown
+     * @param regions      regions stored in this blob, in header order
+     */
+    public AnonymousBlob(int segmentShift, long expectedSize, Region... regions) throws IOException {
+        super(segmentShift, regions);
+
+        this.retired = new ArrayList<>();
+
+        grow(initialLength(expectedSize));
+        init(true);
+    }
+
+    @Override
+    protected void grow(long length) throws IOException {
+        int count = (int) ((length + segment_mask) >>> segment_shift);
+
+        for (int i = Math.max(segment_count - 1, 0); i < count; i++) {
+            long start = (long) i << segment_shift;
+            int  len   = (int) Math.min(length - start, segmentSize());
+
+            ByteBuffer old = i < segments.length ? segments[i] : null;
+            if (old != null) {
+                if (old.capacity() == len)
+                    continue;
+                retired.add(old);
+            }
+
+            ByteBuffer segment = ByteBuffer.allocateDirect(len);
+            if (old != null)
+                segment.put(0, old, 0, old.capacity());
+
+            setSegment(i, segment);
+        }
+
+        segment_count = count;
+        this.length   = length;
+    }
+
+    @Override
+    public void advise(long pos, long len, Advice advice) {
+        // always resident, nothing to load or release
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+
+        for (int i = 0; i < segment_count; i++) {
+            free(segments[i]);
+            segments[i] = null;
+        }
+        segment_count = 0;
+
+        for (ByteBuffer bb : retired) {
+            free(bb);
+        }
+        retired.clear();
+    }
+}
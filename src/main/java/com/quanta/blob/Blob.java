@@ -2,30 +2,166 @@ package com.quanta.blob;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
 
 public interface Blob extends Closeable {
 
-    int alloc(int bytes) throws IOException;
+    long alloc(int bytes) throws IOException;
 
-    void putInt(int pos, int v) throws IOException;
+    void putInt(long pos, int v) throws IOException;
 
-    int getInt(int pos) throws IOException;
+    int getInt(long pos) throws IOException;
 
-    void putLong(int pos, long v) throws IOException;
+    void putLong(long pos, long v) throws IOException;
 
-    long getLong(int pos) throws IOException;
+    long getLong(long pos) throws IOException;
 
-    void putByte(int pos, byte b) throws IOException;
+    void putByte(long pos, byte b) throws IOException;
 
-    byte getByte(int pos) throws IOException;
+    byte getByte(long pos) throws IOException;
 
-    void putBoolean(int pos, boolean b) throws IOException;
+    void putBoolean(long pos, boolean b) throws IOException;
 
-    boolean getBoolean(int pos) throws IOException;
+    boolean getBoolean(long pos) throws IOException;
 
-    void putBytes(int pos, byte[] v) throws IOException;
+    void putBytes(long pos, byte[] v) throws IOException;
 
-    byte[] getBytes(int pos, int width) throws IOException;
+    byte[] getBytes(long pos, int width) throws IOException;
 
-    void copy(int pos, int to, int width) throws IOException;
+    /**
+     * Switches write-behind mode. When on, the allocation pointer and the region headers are
+     * kept in memory and only written by {@link #commit()}, so appends do not store a header
+     * per value. A crash then loses everything after the last commit.
+     */
+    void writeBehind(boolean on);
+
+    /**
+     * Writes the allocation pointer and every region header, a checkpoint in write-behind mode.
+     */
+    void commit() throws IOException;
+
+    /**
+     * True when the previous session did not close this blob, data written after its last
+     * commit may be partially present.
+     */
+    boolean needsRecovery();
+
+    /**
+     * Forces everything written so far to the storage device.
+     */
+    void force() throws IOException;
+
+    /**
+     * Copies {@code width} bytes within the blob. The ranges may overlap.
+     */
+    default void copy(long pos, long to, int width) throws IOException {
+        move(pos, to, width);
+    }
+
+    // bulk operations, implementations override these with single range accesses
+
+    /**
+     * Reads {@code len} bytes into {@code dst} starting at {@code off}, without allocating.
+     */
+    default void getBytes(long pos, byte[] dst, int off, int len) throws IOException {
+        for (int i = 0; i < len; i++) {
+            dst[off + i] = getByte(pos + i);
+        }
+    }
+
+    /**
+     * Picks up what the writer committed since the last call, for blobs opened read-only by
+     * another process than the writer.
+     *
+     * @return true when new headers were read
+     */
+    default boolean refresh() throws IOException {
+        return false;
+    }
+
+    /**
+     * Hints how {@code len} bytes at {@code pos} are going to be read. By default only
+     * {@link Advice#WILL_NEED} has an effect, the range is {@link #touch(long, long) touched}.
+     */
+    default void advise(long pos, long len, Advice advice) throws IOException {
+        if (advice == Advice.WILL_NEED)
+            touch(pos, len);
+    }
+
+    /**
+     * Brings {@code len} bytes at {@code pos} into memory ahead of use by reading one byte per
+     * 4 KB page.
+     */
+    default void touch(long pos, long len) throws IOException {
+        for (long p = pos, end = pos + len; p < end; p += 4096) {
+            getByte(p);
+        }
+    }
+
+    /**
+     * Adds the {@code len} bytes at {@code pos} to {@code checksum}.
+     */
+    default void checksum(long pos, int len, Checksum checksum) throws IOException {
+        byte[] buffer = new byte[Math.min(len, 64 * 1024)];
+
+        for (int done = 0; done < len; ) {
+            int n = Math.min(buffer.length, len - done);
+            getBytes(pos + done, buffer, 0, n);
+            checksum.update(buffer, 0, n);
+            done += n;
+        }
+    }
+
+    /**
+     * Writes {@code len} bytes of {@code src} starting at {@code off}.
+     */
+    default void putBytes(long pos, byte[] src, int off, int len) throws IOException {
+        for (int i = 0; i < len; i++) {
+            putByte(pos + i, src[off + i]);
+        }
+    }
+
+    /**
+     * Reads {@code dst.remaining()} bytes into {@code dst} and advances its position.
+     */
+    default void getBytes(long pos, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            dst.put(getByte(pos++));
+        }
+    }
+
+    default void getInts(long pos, int[] dst, int off, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            dst[off + i] = getInt(pos + 4L * i);
+        }
+    }
+
+    default void getLongs(long pos, long[] dst, int off, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            dst[off + i] = getLong(pos + 8L * i);
+        }
+    }
+
+    default void getDoubles(long pos, double[] dst, int off, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            dst[off + i] = Double.longBitsToDouble(getLong(pos + 8L * i));
+        }
+    }
+
+    /**
+     * Sets {@code len} bytes starting at {@code pos} to {@code b}.
+     */
+    default void fill(long pos, int len, byte b) throws IOException {
+        for (int i = 0; i < len; i++) {
+            putByte(pos + i, b);
+        }
+    }
+
+    /**
+     * Moves {@code len} bytes from {@code from} to {@code to} in place. The ranges may overlap.
+     */
+    default void move(long from, long to, int len) throws IOException {
+        putBytes(to, getBytes(from, len));
+    }
 }
@@ -0,0 +1,191 @@
+package com.quanta.blob;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Opens the {@link Blob} behind each column file.
+ * <p>
+ * One factory is shared by all columns of a dataset and carries the storage settings chosen
+ * on {@code QuantaBuilder}, so columns never construct a blob implementation directly.
+ * </p>
+ */
+public class BlobFactory {
+
+    /** Default page pool size for {@link StorageType#PAGED}: 256 MB. */
+    public static final long DEFAULT_POOL_SIZE = 256L * 1024 * 1024;
+
+    private StorageType storage = StorageType.MAPPED;
+    private long expectedRows;
+    private int checkpointRows;
+    private int extentShift;
+    private PagePool pool;
+    private boolean readOnly;
+    private boolean compression;
+
+    /**
+     * Selects the blob implementation used for columns opened after this call.
+     *
+     * @param storage the storage type
+     * @return this factory
+     */
+    public BlobFactory storage(StorageType storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    public StorageType storage() {
+        return storage;
+    }
+
+    /**
+     * Sets the number of rows the dataset is expected to hold. Columns use it to size a new
+     * file up front instead of growing it from the minimum.
+     *
+     * @param rows expected row count, 0 when unknown
+     * @return this factory
+     */
+    public BlobFactory expectedRows(long rows) {
+        this.expectedRows = rows;
+        return this;
+    }
+
+    public long expectedRows() {
+        return expectedRows;
+    }
+
+    /**
+     * Opens blobs in write-behind mode, with headers written only when the dataset commits a
+     * checkpoint, every {@code rows} rows and on rebuild and close.
+     *
+     * @param rows rows between checkpoints, 0 to write headers on every append
+     * @return this factory
+     */
+    public BlobFactory checkpointRows(int rows) {
+        this.checkpointRows = rows;
+        return this;
+    }
+
+    public int checkpointRows() {
+        return checkpointRows;
+    }
+
+    /**
+     * Stores fixed width columns in contiguous extents of {@code 2^shift} rows instead of
+     * 500 row blocks, see {@link FixedRegion#extents(int)}. Only new files are affected.
+     *
+     * @param shift log2 of the rows per extent, 0 for 500 row blocks
+     * @return this factory
+     */
+    public BlobFactory extentShift(int shift) {
+        this.extentShift = shift;
+        return this;
+    }
+
+    public int extentShift() {
+        return extentShift;
+    }
+
+    /**
+     * Opens existing files read-only, see {@link MemoryBlob}. Only {@link StorageType#MAPPED}
+     * and {@link StorageType#SEGMENT} support it.
+     *
+     * @param readOnly true to never write to the files
+     * @return this factory
+     */
+    public BlobFactory readOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        return this;
+    }
+
+    public boolean readOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Compresses the sealed blocks of dictionary strings and metric extents when a column is
+     * compacted, see {@link Region#compression(boolean)}. Files are readable either way.
+     *
+     * @param compression true to pack blocks on compaction
+     * @return this factory
+     */
+    public BlobFactory compression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public boolean compression() {
+        return compression;
+    }
+
+    /**
+     * Sets the pool shared by all {@link StorageType#PAGED} columns. The pool can also be
+     * shared between datasets to cap their combined memory use.
+     *
+     * @param pool the page pool
+     * @return this factory
+     */
+    public BlobFactory pagePool(PagePool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public PagePool pagePool() {
+        if (pool == null)
+            pool = new PagePool(DEFAULT_POOL_SIZE);
+        return pool;
+    }
+
+    /**
+     * Opens or creates the blob for a column file.
+     *
+     * @param file         the column file, unused for {@link StorageType#ANONYMOUS}
+     * @param expectedSize expected size of the file in bytes, 0 when unknown
+     * @param regions      regions stored in the blob, in header order
+     * @return the opened blob
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public Blob open(String file, long expectedSize, Region... regions) throws IOException {
+        for (Region r : regions) {
+            // regions reopened after compaction keep the layout read from their file
+            if (r instanceof FixedRegion f && f.blob == null && extentShift != 0)
+                f.extents(extentShift);
+        }
+
+        if (readOnly && storage != StorageType.MAPPED && storage != StorageType.SEGMENT)
+            throw new UnsupportedOperationException("Read-only mode is not supported by " + storage + " storage");
+        Blob blob = switch (storage) {
+            case MAPPED -> new MemoryBlob(file, BufferBlob.DEFAULT_SEGMENT_SHIFT, expectedSize, readOnly, regions);
+            case SEGMENT -> segmentBlob(file, expectedSize, regions);
+            case ANONYMOUS -> new AnonymousBlob(BufferBlob.DEFAULT_SEGMENT_SHIFT, expectedSize, regions);
+            case PAGED -> new PagedBlob(file, pagePool(), regions);
+        };
+
+        blob.writeBehind(checkpointRows > 0);
+
+        return blob;
+    }
+
+    /**
+     * Opens a {@code SegmentBlob}, built from {@code src/foreign} only on the JDKs with the
+     * incubating foreign memory API, so it is looked up by name.
+     */
+    private Blob segmentBlob(String file, long expectedSize, Region[] regions) throws IOException {
+        if (ModuleLayer.boot().findModule("jdk.incubator.foreign").isEmpty())
+            throw new UnsupportedOperationException("SEGMENT storage needs Java 17 or 18 and the JVM option --add-modules jdk.incubator.foreign");
+
+        try {
+            return (Blob) Class.forName("com.quanta.blob.SegmentBlob")
+                    .getConstructor(String.class, int.class, long.class, boolean.class, Region[].class)
+                    .newInstance(file, BufferBlob.DEFAULT_SEGMENT_SHIFT, expectedSize, readOnly, regions);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            if (e.getCause() instanceof RuntimeException r)
+                throw r;
+            throw new IOException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("SEGMENT storage was not built, it needs a Java 17 or 18 build", e);
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package com.quanta.blob;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Checksum;
+
+/**
+ * {@link Blob} over a chain of fixed-size {@link ByteBuffer} segments.
+ * <p>
+ * Every position is a 64-bit offset. The upper bits select the segment and the lower
+ * {@code segment_shift} bits are the offset inside it, so a blob is not limited by the
+ * 2 GB reach of one buffer. {@link #alloc(int)} never hands out a range that straddles two
+ * segments, which keeps every get/put a single buffer access.
+ * </p>
+ * <p>
+ * The blob grows geometrically, doubling up to one segment per step. Subclasses provide the
+ * memory through {@link #grow(long)}; only the partially filled tail segment is ever replaced.
+ * </p>
+ * <p>
+ * Layout: a {@link Region#HEADER_SIZE} byte blob header (allocation pointer at 0, version at 8,
+ * segment shift at 16, open flag at 20) followed by one {@link Region#HEADER_SIZE} byte header per region.
+ * </p>
+ * <p>
+ * The version is a seqlock for read-only openers in other processes: {@link #commit()} makes it
+ * odd, writes the headers and makes it even again, and {@link #refresh()} only keeps headers read
+ * between two equal even values. Everything written before a commit is visible to a reader that
+ * refreshed after it.
+ * </p>
+ */
+public abstract class BufferBlob implements Blob {
+
+    /** Default segment size: 1 GB. */
+    public static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    protected static final int MIN_SEGMENT_SHIFT = 20;
+    protected static final int MAX_SEGMENT_SHIFT = 30;
+    protected static final int VERSION_POS = 8;
+    protected static final int SHIFT_POS = 16;
+    protected static final int OPEN_POS = 20;
+    protected static final long MIN_GROWTH = 8 * 1024 * 1024;
+
+    protected final Region[] regions;
+    protected ByteBuffer[] segments;
+    protected int  segment_count;
+    protected int  segment_shift;
+    protected long segment_mask;
+    protected long next;
+    protected long length;
+    protected boolean write_behind;
+    protected boolean recovery;
+    protected boolean read_only;
+    protected long version;
+
+    protected final Lock lock;
+
+    protected BufferBlob(int segmentShift, Region... regions) {
+        if (segmentShift < MIN_SEGMENT_SHIFT || segmentShift > MAX_SEGMENT_SHIFT)
+            throw new IllegalArgumentException("Segment shift must be between " + MIN_SEGMENT_SHIFT + " and " + MAX_SEGMENT_SHIFT + ": " + segmentShift);
+
+        this.regions       = regions;
+        this.lock          = new ReentrantLock();
+        this.segments      = new ByteBuffer[4];
+        this.segment_shift = segmentShift;
+        this.segment_mask  = (1L << segmentShift) - 1;
+    }
+
+    /**
+     * Binds the regions to this blob and either creates their headers or reads them back.
+     * Subclasses call this once the initial memory is in place.
+     */
+    protected void init(boolean isNew) throws IOException {
+        long header_pos = 0;
+
+        for (Region r : regions) {
+            r.blob = this;
+            header_pos += Region.HEADER_SIZE;
+            r.header_pos = header_pos;
+        }
+
+        if (read_only) {
+            // never walk the full block chains, the writer may be linking blocks past our mapping
+            if (!refresh())
+                throw new IOException("Blob is being written, no consistent header found");
+            return;
+        }
+
+        if (isNew) {
+            next = header_pos + Region.HEADER_SIZE;
+            putLong(0, next);
+            putInt(SHIFT_POS, segment_shift);
+
+            for (Region region : regions) {
+                region.create();
+            }
+        } else {
+            next = getLong(0);
+
+            for (Region region : regions) {
+                region.read();
+                // blocks linked after the last commit are still in use
+                next = Math.max(next, region.end());
+            }
+
+            recovery = getInt(OPEN_POS) != 0;
+        }
+
+        putInt(OPEN_POS, 1);
+        commit();
+    }
+
+    @Override
+    public void writeBehind(boolean on) {
+        write_behind = on;
+
+        for (Region region : regions) {
+            region.write_behind = on;
+        }
+    }
+
+    @Override
+    public void commit() throws IOException {
+        if (read_only)
+            return;
+
+        lock.lock();
+
+        try {
+            long v = getLong(VERSION_POS) | 1;
+            putLong(VERSION_POS, v);
+            VarHandle.storeStoreFence();
+
+            putLong(0, next);
+
+            for (Region region : regions) {
+                region.commit();
+            }
+
+            // data and headers before the even version
+            VarHandle.storeStoreFence();
+            putLong(VERSION_POS, v + 1);
+            version = v + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Re-reads the region headers of a read-only blob if the writer committed since the last
+     * call, mapping the file further when it grew.
+     *
+     * @return false when nothing changed or the writer is in the middle of a commit
+     */
+    @Override
+    public boolean refresh() throws IOException {
+        if (!read_only)
+            return false;
+
+        lock.lock();
+
+        try {
+            for (int attempt = 0; attempt < 1000; attempt++) {
+                long v = getLong(VERSION_POS);
+                if ((v & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (v == version && v != 0)
+                    return false;
+
+                VarHandle.loadLoadFence();
+                remap();
+                next = getLong(0);
+
+                for (Region region : regions) {
+                    // files from before versioning only have the live headers
+                    region.refresh(v != 0);
+                }
+
+                VarHandle.loadLoadFence();
+                if (getLong(VERSION_POS) == v) {
+                    version = v;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isReadOnly() {
+        return read_only;
+    }
+
+    /**
+     * Maps the part of the file appended by the writer since the last call, read-only blobs only.
+     */
+    protected void remap() throws IOException {
+    }
+
+    @Override
+    public boolean needsRecovery() {
+        return recovery;
+    }
+
+    @Override
+    public void force() throws IOException {
+    }
+
+    /**
+     * Commits and marks the blob as closed cleanly, subclasses call it first in {@link #close()}.
+     */
+    protected void seal() throws IOException {
+        if (read_only)
+            return;
+
+        commit();
+        putInt(OPEN_POS, 0);
+    }
+
+    /**
+     * Makes the first {@code length} bytes addressable. Segments below the current tail are
+     * already full size and must be kept as they are.
+     */
+    protected abstract void grow(long length) throws IOException;
+
+    /**
+     * Installs segment {@code index}, growing the segment table when needed.
+     */
+    protected void setSegment(int index, ByteBuffer segment) {
+        if (index >= segments.length)
+            segments = Arrays.copyOf(segments, Math.max(index + 1, segments.length * 2));
+
+        segments[index] = segment;
+    }
+
+    /**
+     * Initial length for a new blob: the expected size rounded up to the growth step.
+     */
+    protected static long initialLength(long expectedSize) {
+        return Math.max(MIN_GROWTH, (expectedSize + MIN_GROWTH - 1) / MIN_GROWTH * MIN_GROWTH);
+    }
+
+    public long segmentSize() {
+        return 1L << segment_shift;
+    }
+
+    @Override
+    public long alloc(int bytes) throws IOException {
+        if (read_only)
+            throw new IOException("Blob is read-only");
+
+        if (bytes > segmentSize())
+            throw new IOException("Allocation of " + bytes + " bytes exceeds segment size " + segmentSize());
+
+        lock.lock();
+
+        try {
+            long pos = next;
+
+            // never straddle two segments, skip to the start of the next one instead
+            if ((pos >>> segment_shift) != ((pos + bytes - 1) >>> segment_shift))
+                pos = ((pos >>> segment_shift) + 1) << segment_shift;
+
+            long total = pos + bytes;
+
+            if (total > length) {
+                extend(total);
+            }
+
+            next = total;
+            if (!write_behind)
+                putLong(0, next);
+
+            return pos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Grows to at least {@code required} bytes. The step doubles the current length
+     * but never exceeds one segment, so a large blob grows one segment at a time.
+     */
+    private void extend(long required) throws IOException {
+        lock.lock();
+
+        try {
+            long step = Math.min(Math.max(length, MIN_GROWTH), segmentSize());
+            grow(Math.max(length + step, required));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected ByteBuffer segment(long pos) {
+        return segments[(int) (pos >>> segment_shift)];
+    }
+
+    protected int offset(long pos) {
+        return (int) (pos & segment_mask);
+    }
+
+    protected void check(long pos, int v) throws IOException {
+        if (pos < 0 || pos + v > length)
+            throw new IOException("Requested pointer greater than blob length " + (pos + v) + " vs " + length);
+    }
+
+    public void putInt(long pos, int v) throws IOException {
+        check(pos, 4);
+        segment(pos).putInt(offset(pos), v);
+    }
+
+    public int getInt(long pos) throws IOException {
+        check(pos, 4);
+        return segment(pos).getInt(offset(pos));
+    }
+
+    public void putLong(long pos, long v) throws IOException {
+        check(pos, 8);
+        segment(pos).putLong(offset(pos), v);
+    }
+
+    public long getLong(long pos) throws IOException {
+        check(pos, 8);
+        return segment(pos).getLong(offset(pos));
+    }
+
+    public void putByte(long pos, byte b) throws IOException {
+        check(pos, 1);
+        segment(pos).put(offset(pos), b);
+    }
+
+    public byte getByte(long pos) throws IOException {
+        check(pos, 1);
+        return segment(pos).get(offset(pos));
+    }
+
+    public void putBoolean(long pos, boolean b) throws IOException {
+        putByte(pos, (byte) (b ? 0 : 1));
+    }
+
+    public boolean getBoolean(long pos) throws IOException {
+        return getByte(pos) == 0;
+    }
+
+    public void putBytes(long pos, byte[] v) throws IOException {
+        check(pos, v.length);
+        segment(pos).put(offset(pos), v);
+    }
+
+    public byte[] getBytes(long pos, int width) throws IOException {
+        check(pos, width);
+        byte[] v = new byte[width];
+        segment(pos).get(offset(pos), v);
+        return v;
+    }
+
+    @Override
+    public void getBytes(long pos, byte[] dst, int off, int len) throws IOException {
+        check(pos, len);
+        segment(pos).get(offset(pos), dst, off, len);
+    }
+
+    @Override
+    public void putBytes(long pos, byte[] src, int off, int len) throws IOException {
+        check(pos, len);
+        segment(pos).put(offset(pos), src, off, len);
+    }
+
+    @Override
+    public void getBytes(long pos, ByteBuffer dst) throws IOException {
+        int len = dst.remaining();
+        check(pos, len);
+        dst.put(dst.position(), segment(pos), offset(pos), len);
+        dst.position(dst.position() + len);
+    }
+
+    @Override
+    public void checksum(long pos, int len, Checksum checksum) throws IOException {
+        check(pos, len);
+        // the range lies in one allocation, so in one segment, and is read without a copy
+        checksum.update(segment(pos).slice(offset(pos), len));
+    }
+
+    @Override
+    public void getInts(long pos, int[] dst, int off, int count) throws IOException {
+        check(pos, count * 4);
+        ByteBuffer bb = segment(pos);
+        int o = offset(pos);
+        for (int i = 0; i < count; i++, o += 4) {
+            dst[off + i] = bb.getInt(o);
+        }
+    }
+
+    @Override
+    public void getLongs(long pos, long[] dst, int off, int count) throws IOException {
+        check(pos, count * 8);
+        ByteBuffer bb = segment(pos);
+        int o = offset(pos);
+        for (int i = 0; i < count; i++, o += 8) {
+            dst[off + i] = bb.getLong(o);
+        }
+    }
+
+    @Override
+    public void getDoubles(long pos, double[] dst, int off, int count) throws IOException {
+        check(pos, count * 8);
+        ByteBuffer bb = segment(pos);
+        int o = offset(pos);
+        for (int i = 0; i < count; i++, o += 8) {
+            dst[off + i] = bb.getDouble(o);
+        }
+    }
+
+    @Override
+    public void fill(long pos, int len, byte b) throws IOException {
+        check(pos, len);
+        ByteBuffer bb = segment(pos);
+        int o = offset(pos);
+        long word = (b & 0xFFL) * 0x0101010101010101L;
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            bb.putLong(o + i, word);
+        }
+        for (; i < len; i++) {
+            bb.put(o + i, b);
+        }
+    }
+
+    @Override
+    public void move(long from, long to, int len) throws IOException {
+        check(from, len);
+        check(to, len);
+        // direct buffer to buffer transfers are a memmove, overlapping ranges are safe
+        segment(to).put(offset(to), segment(from), offset(from), len);
+    }
+
+    /**
+     * Releases a direct buffer immediately instead of waiting for GC.
+     */
+    protected static void free(ByteBuffer bb) throws IOException {
+        try {
+            CLEAN.invoke(UNSAFE, bb);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    private static final Method CLEAN;
+    private static final Object UNSAFE;
+
+    static {
+        try {
+            Class<?> unsafeClass;
+            try {
+                unsafeClass = Class.forName("sun.misc.Unsafe");
+            } catch (Exception ex) {
+                unsafeClass = Class.forName("jdk.internal.misc.Unsafe");
+            }
+            Method clean = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            clean.setAccessible(true);
+            Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafeField.setAccessible(true);
+            Object theUnsafe = theUnsafeField.get(null);
+
+            CLEAN = clean;
+            UNSAFE = theUnsafe;
+        } catch (Exception e){
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -5,82 +5,348 @@ import com.quanta.util.Utils;
 
 import java.io.File;
 import java.io.IOException;
-
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Region of fixed width values addressed by row number.
+ * <p>
+ * By default rows are stored in blocks of {@code 500}. In extent mode, see {@link #extents(int)},
+ * each block is an extent of {@code 2^shift} rows and a row is located with a shift and a mask
+ * instead of a division, while scans run over long contiguous ranges. The mode is kept in the
+ * region header at {@code header_pos + 4} (0 for 500 row blocks), so a file always reopens with
+ * the layout it was written with.
+ * </p>
+ * <p>
+ * Header: live size at {@code +0}, extent shift at {@code +4}, size as of the last commit at
+ * {@code +16} for read-only openers, row width at {@code +20} and two
+ * {@link #attribute(int) attributes} at {@code +24}. Files written before the width was stored
+ * hold 0 there and reopen with the width given to the constructor, see {@link #width(int)}.
+ * </p>
+ * <p>
+ * Only full extents are packed by {@link #compression(boolean)}, 500 row blocks are too small
+ * to gain from it. Rows of a packed extent are read from its decompressed copy; the extent is
+ * stored raw again before rows in it are truncated or inserted.
+ * </p>
+ * <p>
+ * A block is sealed, see {@link Region#seal(int)}, when the first row of the next one is added
+ * and when compaction copies it. Inserts and {@link #replace(long, long)} change full blocks in
+ * place, those are sealed again on {@link #commit()}.
+ * </p>
+ */
 public class FixedRegion extends Region {
     private static final int SIZE = 500;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    /** Smallest and largest extent, in rows as a power of two. */
+    public static final int MIN_EXTENT_SHIFT = 6;
+    public static final int MAX_EXTENT_SHIFT = 24;
+
+    /** Largest extent in bytes, well inside one blob segment. */
+    private static final int MAX_EXTENT_BYTES = 64 * 1024 * 1024;
 
-    final int width;
+    private static final int PUBLISHED_POS = 16;
+    private static final int WIDTH_POS = 20;
+    private static final int ATTRIBUTE_POS = 24;
+
+    int width;
     int size;
+
+    // width of files that do not store theirs
+    private final int legacy;
     int curr, start, end;
 
+    // rows per block; shift and mask are 0 for the 500 row layout
+    int rows;
+    int shift;
+    int mask;
+
+    private final int[] attributes = new int[2];
+
+    // block last found by replace(), rebuilds write runs of positions in one block
+    private int replaced;
+
     public FixedRegion(int width) {
         super(width * SIZE);
         this.width = width;
+        this.legacy = width;
         this.size  = 0;
+        this.rows  = SIZE;
         this.curr  = 0;
         this.start = 0;
-        this.end   = SIZE;
+        this.end   = rows;
+    }
+
+    /**
+     * Switches a region that has not been opened yet to extents of {@code 2^shift} rows,
+     * capped at 64 MB per extent. Existing files keep the layout stored in their header.
+     *
+     * @param shift log2 of the rows per extent, 0 for the default 500 row blocks
+     */
+    public void extents(int shift) {
+        if (blob != null)
+            throw new IllegalStateException("Region already opened");
+
+        if (shift != 0) {
+            if (shift < MIN_EXTENT_SHIFT || shift > MAX_EXTENT_SHIFT)
+                throw new IllegalArgumentException("Extent shift must be between " + MIN_EXTENT_SHIFT + " and " + MAX_EXTENT_SHIFT + ": " + shift);
+
+            while (shift > MIN_EXTENT_SHIFT && ((long) width << shift) > MAX_EXTENT_BYTES)
+                shift--;
+        }
+
+        layout(shift);
+    }
+
+    /**
+     * Switches a region that has not been opened yet to rows of {@code width} bytes. Only new
+     * files take it: a file reopens with the width stored in its header, or with the constructor
+     * width when it was written before the width was stored.
+     */
+    public void width(int width) {
+        if (blob != null)
+            throw new IllegalStateException("Region already opened");
+
+        this.width = width;
+        layout(shift);
+    }
+
+    /** Bytes per row. */
+    public int width() {
+        return width;
+    }
+
+    /** Adopts the width stored in the header, see {@link #width(int)}. */
+    private void storedWidth() throws IOException {
+        int stored = blob.getInt(header_pos + WIDTH_POS);
+        width = stored != 0 ? stored : legacy;
+    }
+
+    private void layout(int shift) {
+        this.shift = shift;
+        this.rows  = shift == 0 ? SIZE : 1 << shift;
+        this.mask  = shift == 0 ? 0 : rows - 1;
+        this.end   = start + rows;
+        blockWidth(width * rows);
+    }
+
+    /** Block holding {@code row}. */
+    private int block(int row) {
+        return shift != 0 ? row >>> shift : row / SIZE;
+    }
+
+    /** Position of {@code row} inside its block. */
+    private int slot(int row) {
+        return shift != 0 ? row & mask : row % SIZE;
+    }
+
+    /**
+     * Advises the blocks holding rows {@code from..to-1} once, e.g. {@link Advice#WILL_NEED}
+     * before a scan reads them. The advice of the region, see {@link #advise(Advice)}, is left
+     * as it is, so readers never change what other readers of the region rely on.
+     */
+    public void advise(int from, int to, Advice advice) throws IOException {
+        if (from < to)
+            adviseBlocks(block(from), Math.min(block(to - 1) + 1, block_count), advice);
     }
 
     public void reset() throws IOException {
         this.size  = 0;
         this.curr  = 0;
         this.start = 0;
-        this.end   = SIZE;
+        this.end   = rows;
+        blob.putInt(header_pos, size);
+        unsealFrom(0);
+    }
+
+    /**
+     * Drops every value from {@code size} on, the blocks are kept for reuse.
+     */
+    public void truncate(int size) throws IOException {
+        if (size >= this.size)
+            return;
+
+        for (int b = block(size); packed != null && b < block_count; b++) {
+            unpackInPlace(b, b == block(size));
+        }
+        unsealFrom(block(size));
+
+        this.size  = size;
+        this.curr  = Math.min(block(size), Math.max(block_count - 1, 0));
+        this.start = curr * rows;
+        this.end   = start + rows;
+        blob.putInt(header_pos, size);
+    }
+
+    /**
+     * Unseals the blocks from {@code block} on, which are no longer full.
+     */
+    private void unsealFrom(int block) throws IOException {
+        for (int b = block; b < block_count; b++) {
+            unseal(b);
+        }
+        stale.clear(block, Math.max(block, block_count));
+    }
+
+    @Override
+    protected void commit() throws IOException {
+        reseal();
         blob.putInt(header_pos, size);
+        blob.putInt(header_pos + PUBLISHED_POS, size);
+        blob.putInt(header_pos + ATTRIBUTE_POS, attributes[0]);
+        blob.putInt(header_pos + ATTRIBUTE_POS + 4, attributes[1]);
+    }
+
+    /**
+     * Value kept in the region header for the owner of the region, written on commit.
+     *
+     * @param i 0 or 1
+     */
+    public int attribute(int i) {
+        return attributes[i];
+    }
+
+    public void attribute(int i, int value) {
+        attributes[i] = value;
     }
 
     public int size() {
         return size;
     }
 
+    @Override
+    public Region blank() {
+        FixedRegion r = new FixedRegion(width);
+        r.layout(shift);
+        return r;
+    }
+
+    @Override
+    public long liveBytes() {
+        long used = Math.max(1, (size + rows - 1) / rows);
+        return used * (block_width + 16);
+    }
+
+    /**
+     * Copies rows {@code 0..size} in runs that fit both the source and the target block, so the
+     * target may use another layout, see {@link #extents(int)}. With {@link #compression(boolean)}
+     * on, a target extent is assembled in memory and packed once full.
+     */
+    @Override
+    public void copyTo(Region target) throws IOException {
+        FixedRegion t = (FixedRegion) target;
+        boolean pack = t.compress && t.shift != 0;
+        byte[] buffer = new byte[pack ? t.block_width : Math.max(COPY_BUFFER, width)];
+        byte[] out = pack ? new byte[t.block_width] : null;
+        int runs = buffer.length / width;
+
+        for (int done = 0; done < size; ) {
+            int n = Math.min(size - done, Math.min(runs, t.rows - t.slot(done)));
+            int b = t.block(done);
+
+            while (b >= t.block_count) {
+                t.alloc();
+            }
+
+            getRawBytes(done, n, buffer);
+
+            if (pack && n == t.rows)
+                t.pack(b, buffer, out);
+            else
+                t.blob.putBytes(t.blocks[b] + (long) t.slot(done) * width, buffer, 0, n * width);
+            done += n;
+        }
+
+        t.size  = size;
+        t.attributes[0] = attributes[0];
+        t.attributes[1] = attributes[1];
+        t.curr  = t.block_count - 1;
+        t.start = t.curr * t.rows;
+        t.end   = t.start + t.rows;
+
+        for (int b = 0, full = t.block(size); b < full; b++) {
+            t.seal(b);
+        }
+    }
+
     @Override
     protected void create() throws IOException {
         blob.putInt(header_pos, size);
+        blob.putInt(header_pos + 4, shift);
+        blob.putInt(header_pos + WIDTH_POS, width);
         alloc();
     }
 
     @Override
     protected void read() throws IOException {
+        // the stored layout wins over the configured one, block links depend on it
+        storedWidth();
+        layout(blob.getInt(header_pos + 4));
         super.read();
 
         size  = blob.getInt(header_pos);
+        readAttributes();
 
         curr  = block_count == 0 ? block_count : block_count - 1;
-        start = curr * SIZE;
-        end   = start + SIZE;
+        start = curr * rows;
+        end   = start + rows;
+    }
+
+    @Override
+    protected void refresh(boolean published) throws IOException {
+        if (block_count == 0) {
+            storedWidth();
+            layout(blob.getInt(header_pos + 4));
+        }
+
+        int size = blob.getInt(header_pos + (published ? PUBLISHED_POS : 0));
+        link(size == 0 ? 1 : block(size - 1) + 1);
+        refreshPacked();
+        readAttributes();
+
+        this.size = size;
     }
 
-    public int rp(int i) {
+    private void readAttributes() throws IOException {
+        attributes[0] = blob.getInt(header_pos + ATTRIBUTE_POS);
+        attributes[1] = blob.getInt(header_pos + ATTRIBUTE_POS + 4);
+    }
+
+    public long rp(int i) {
         //System.out.print((i / 100) + " " + (i % 100) + "  ");
         if (i >= size)
             throw new ArrayIndexOutOfBoundsException("size: " + size + ", index: " + i);
 
-        return blocks[i / SIZE] + ((i % SIZE) * width);
+        return blocks[block(i)] + ((long) slot(i) * width);
     }
 
-    private int cp() throws IOException {
+    private long cp() throws IOException {
         if (size >= start && size < end) {
             return inc();
         }
 
-        int block_id = size / SIZE;
+        int block_id = block(size);
 
         if (block_id >= block_count)
             alloc();
 
+        // the previous block is full, rows are only appended after it from now on
+        if (block_id > 0 && slot(size) == 0)
+            seal(block_id - 1);
+
         curr = block_id;
-        start = block_id * SIZE;
-        end   = start + SIZE;
+        start = block_id * rows;
+        end   = start + rows;
 
         return inc();
     }
 
 
-    private int inc() throws IOException {
-        int block_pos = (size % SIZE) * width;
+    private long inc() throws IOException {
+        int block_pos = slot(size) * width;
         size++;
-        blob.putInt(header_pos, size);
+        if (!write_behind)
+            blob.putInt(header_pos, size);
 
 //        if (size % 50 == 0)
 //            System.out.println("Updated size: " + blob.getInt(header_pos));
@@ -89,12 +355,23 @@ public class FixedRegion extends Region {
     }
 
     public void make_space(int pos) throws IOException {
-        int block = pos / SIZE;
-        int mod   = pos % SIZE;
+        int block = block(pos);
+        int mod   = slot(pos);
+
+        for (int b = block; packed != null && b < block_count; b++) {
+            unpackInPlace(b, true);
+        }
+
+        // every block from pos to the last row shifts, the full ones are sealed again on commit
+        for (int b = block; b <= block(size) && b < block_count; b++) {
+            modified(b);
+            if (b < block(size + 1))
+                stale.set(b);
+        }
 
         byte[] carry = make_pos(block, mod, 1);
 
-        int newPosBlockId = (size + 1) / SIZE;
+        int newPosBlockId = block(size + 1);
 
         while (carry.length > 0) {
             block++;
@@ -110,48 +387,49 @@ public class FixedRegion extends Region {
         }
 
         size++;
-        blob.putInt(header_pos, size);
+        if (!write_behind)
+            blob.putInt(header_pos, size);
 
         if (block > curr) {
             curr = block;
-            start = block * SIZE;
-            end   = start + SIZE;
+            start = block * rows;
+            end   = start + rows;
         }
     }
 
     private byte[] make_pos(int block, int from, int how_many) throws IOException {
         int plus  = from + how_many;
-        int minus = SIZE - how_many; // block + 1 == block_count ? ((size - 1) % SIZE) - how_many :
-        int len   = SIZE - from - how_many;
+        int minus = rows - how_many; // block + 1 == block_count ? ((size - 1) % rows) - how_many :
+        int len   = rows - from - how_many;
 
         if (block + 1 == block_count) {
-            int m = size % SIZE;
-            if ((size - 1) / SIZE < block) { // in new block, for the last item from prev
+            int m = slot(size);
+            if (size > 0 && block(size - 1) < block) { // in new block, for the last item from prev
                 minus = -1;
                 len = 0;
             } else if (m == 0) { // last item in block
-                minus = SIZE - how_many;
-            } else { // in between
+                minus = rows - how_many;
+            } else { // in between, only the rows up to the last one move
                 minus = -1;
-                len = m - how_many + 1;
+                len = m - from;
             }
         }
 
         //System.out.println("block: " + block + ", mod: " + from + ", plus: " + plus + ", minus: " + minus);
 
-        byte[] carry = new byte[0];
+        byte[] carry = NO_BYTES;
 
         if (minus > 0) {
            // long carryFrom = (minus * width);
            // System.out.println("   carry: " + minus + ", to: " + (minus + how_many) + ", t: " + blob.getInt(blocks[block] + carryFrom));
 
-            carry = blob.getBytes(blocks[block] + (minus * width), how_many * width);
+            carry = blob.getBytes(blocks[block] + ((long) minus * width), how_many * width);
         }
 
         //long from = from * width;
         //long to   = (plus * width);
         //System.out.println("    copy: " + from + ", to: " + plus + ", len: " + len);
-        blob.copy(blocks[block] + from * width, blocks[block] + (plus * width), len * width);
+        blob.move(blocks[block] + (long) from * width, blocks[block] + ((long) plus * width), len * width);
 
         return carry;
     }
@@ -188,7 +466,8 @@ public class FixedRegion extends Region {
     }
 
     public int getInt(int index) throws IOException {
-        return blob.getInt(rp(index));
+        ByteBuffer u = unpacked(index);
+        return u == null ? blob.getInt(rp(index)) : u.getInt(slot(index) * width);
     }
 
     public int addLong(long v) throws IOException {
@@ -198,17 +477,48 @@ public class FixedRegion extends Region {
     }
 
     public long getLong(int index) throws IOException {
-        return blob.getLong(rp(index));
+        ByteBuffer u = unpacked(index);
+        return u == null ? blob.getLong(rp(index)) : u.getLong(slot(index) * width);
     }
 
-    public long longAt(int pos) throws IOException {
+    /**
+     * Long at {@code pos} of the raw layout, read from the decompressed block when the block
+     * holding it is packed, as {@link #getLong(int)} reads rows.
+     */
+    public long longAt(long pos) throws IOException {
+        if (packed != null) {
+            int i = Arrays.binarySearch(blocks, 0, block_count, pos);
+            int b = i < 0 ? -i - 2 : i;
+            if (b >= 0 && isPacked(b))
+                return unpack(b).getLong((int) (pos - blocks[b]));
+        }
         return blob.getLong(pos);
     }
 
-    public void replace(int pos, long newValue) throws IOException {
+    public void replace(long pos, long newValue) throws IOException {
+        modifies(pos);
         blob.putLong(pos, newValue);
     }
 
+    public void replace(long pos, int newValue) throws IOException {
+        modifies(pos);
+        blob.putInt(pos, newValue);
+    }
+
+    /**
+     * Unseals the block holding {@code pos} before it is written in place, storing it raw again
+     * when it was packed: positions always address the raw layout.
+     */
+    private void modifies(long pos) throws IOException {
+        if (replaced >= block_count || pos < blocks[replaced] || pos >= blocks[replaced] + block_width) {
+            int i = Arrays.binarySearch(blocks, 0, block_count, pos);
+            replaced = i < 0 ? -i - 2 : i;
+        }
+
+        unpackInPlace(replaced, true);
+        modified(replaced);
+    }
+
     public int addByte(byte b) throws IOException {
         int s = size;
         blob.putByte(cp(), b);
@@ -216,7 +526,8 @@ public class FixedRegion extends Region {
     }
 
     public byte getByte(int index) throws IOException {
-        return blob.getByte(rp(index));
+        ByteBuffer u = unpacked(index);
+        return u == null ? blob.getByte(rp(index)) : u.get(slot(index) * width);
     }
 
     public int addBoolean(boolean b) throws IOException {
@@ -226,7 +537,9 @@ public class FixedRegion extends Region {
     }
 
     public boolean getBoolean(int index) throws IOException {
-        return blob.getBoolean(rp(index));
+        ByteBuffer u = unpacked(index);
+        // same encoding as the blobs write, 0 for true
+        return u == null ? blob.getBoolean(rp(index)) : u.get(slot(index) * width) == 0;
     }
 
     public int addBytes(byte v[]) throws IOException {
@@ -236,62 +549,183 @@ public class FixedRegion extends Region {
     }
 
     public byte[] getBytes(int index) throws IOException {
-        return blob.getBytes(rp(index), width);
+        byte[] v = new byte[width];
+        getBytes(index, v);
+        return v;
+    }
+
+    /**
+     * Reads the {@code width} bytes of row {@code index} into {@code dst} without allocating.
+     */
+    public void getBytes(int index, byte[] dst) throws IOException {
+        ByteBuffer u = unpacked(index);
+        if (u == null)
+            blob.getBytes(rp(index), dst, 0, width);
+        else
+            u.get(slot(index) * width, dst, 0, width);
+    }
+
+    /**
+     * Reads a row of 1 to 4 bytes as an unsigned little-endian int without allocating.
+     */
+    public int getUnsigned(int index) throws IOException {
+        ByteBuffer u = unpacked(index);
+        int v = 0;
+
+        if (u != null) {
+            int pos = slot(index) * width;
+            for (int i = 0; i < width; i++) {
+                v |= (u.get(pos + i) & 0xFF) << (i << 3);
+            }
+            return v;
+        }
+
+        long pos = rp(index);
+        for (int i = 0; i < width; i++) {
+            v |= (blob.getByte(pos + i) & 0xFF) << (i << 3);
+        }
+        return v;
+    }
+
+    /**
+     * Compares the bytes of row {@code index} with {@code key} as unsigned bytes, without
+     * copying the row. The padding after the row's bytes, trailing NUL and ASCII whitespace
+     * bytes, is not compared.
+     */
+    public int compareBytes(int index, byte[] key) throws IOException {
+        ByteBuffer u = unpacked(index);
+        int len = width;
+
+        if (u != null) {
+            int pos = slot(index) * width;
+            while (len > 0 && isPadding(u.get(pos + len - 1)))
+                len--;
+            return compareBytes(u, pos, len, key);
+        }
+
+        long pos = rp(index);
+        while (len > 0 && isPadding(blob.getByte(pos + len - 1)))
+            len--;
+        return compareBytes(pos, len, key);
+    }
+
+    /**
+     * True for the bytes {@link #compareBytes(int, byte[])} takes for padding.
+     */
+    public static boolean isPadding(byte b) {
+        return b == 0 || b == ' ' || (b >= '\t' && b <= '\r');
+    }
+
+    /**
+     * Decompressed extent holding row {@code index}, null when it is stored raw.
+     */
+    private ByteBuffer unpacked(int index) throws IOException {
+        if (packed == null)
+            return null;
+
+        if (index >= size)
+            throw new ArrayIndexOutOfBoundsException("size: " + size + ", index: " + index);
+
+        int b = block(index);
+        return isPacked(b) ? unpack(b) : null;
     }
 
     /**
-     * Reads 'count' rows starting from 'fromRow' from the memory‐mapped region
+     * Reads 'count' rows starting from 'fromRow' from the memory-mapped region
      * and returns their raw bytes in a single byte array.
      * This method handles cases where the rows span across multiple blocks.
      *
-     * @param fromRow the starting row index (0‐based)
+     * @param fromRow the starting row index (0-based)
      * @param count   the number of rows to read
      * @return a byte array containing the raw bytes for the requested rows.
      *         The length of the returned array is count * width.
      * @throws ArrayIndexOutOfBoundsException if the requested range is out of bounds.
      */
     public byte[] getRawBytes(int fromRow, int count) throws IOException {
-        if (fromRow < 0 || fromRow + count > size) {
-            throw new ArrayIndexOutOfBoundsException(
-                    "Requested rows from " + fromRow + " count " + count + ", size " + size);
+        byte[] result = new byte[count * width];
+        getRawBytes(fromRow, count, result);
+        return result;
+    }
+
+    /**
+     * Same as {@link #getRawBytes(int, int)} but reads into a caller supplied array of at
+     * least count * width bytes, so scans can reuse one buffer.
+     */
+    public void getRawBytes(int fromRow, int count, byte[] dst) throws IOException {
+        checkRange(fromRow, count);
+
+        for (int done = 0; done < count; ) {
+            int row = fromRow + done;
+            // rows left in the block that holds 'row'
+            int n = Math.min(count - done, rows - slot(row));
+            ByteBuffer u = unpacked(row);
+            if (u == null)
+                blob.getBytes(rp(row), dst, done * width, n * width);
+            else
+                u.get(slot(row) * width, dst, done * width, n * width);
+            done += n;
         }
+    }
 
-        // Total number of bytes to be read.
-        int totalBytes = count * width;
-        byte[] result = new byte[totalBytes];
-
-        int pos = 0;   // Position in the result array (in bytes)
-        int row = fromRow;  // Current row index to read
-
-        // Loop until we have read all requested rows.
-        while (pos < totalBytes) {
-            // Determine which block the current row is in.
-            int blockIndex = row / SIZE;
-            // The offset within that block (in rows)
-            int offsetInBlock = row % SIZE;
-            // How many rows remain in this block starting at offsetInBlock.
-            int rowsLeftInBlock = SIZE - offsetInBlock;
-            // How many rows to read from this block:
-            int rowsToRead = Math.min(count - (row - fromRow), rowsLeftInBlock);
-
-            // Calculate the starting byte offset for the current row in its block.
-            // The method 'rp(row)' essentially computes:
-            //    blocks[blockIndex] + (offsetInBlock * width)
-            int baseOffset = blocks[blockIndex] + (offsetInBlock * width);
-            // Number of bytes to read in this iteration.
-            int bytesToRead = rowsToRead * width;
-
-            // Fetch the contiguous block of bytes from the blob.
-            byte[] data = blob.getBytes(baseOffset, bytesToRead);
-            // Copy the fetched bytes into the result array.
-            System.arraycopy(data, 0, result, pos, bytesToRead);
-
-            // Advance the position and row count.
-            pos += bytesToRead;
-            row += rowsToRead;
+    /**
+     * Reads 'count' int rows (width 4) starting from 'fromRow' into dst.
+     */
+    public void getInts(int fromRow, int count, int[] dst) throws IOException {
+        checkRange(fromRow, count);
+
+        for (int done = 0; done < count; ) {
+            int row = fromRow + done;
+            int n = Math.min(count - done, rows - slot(row));
+            ByteBuffer u = unpacked(row);
+            if (u == null)
+                blob.getInts(rp(row), dst, done, n);
+            else
+                u.asIntBuffer().get(slot(row), dst, done, n);
+            done += n;
         }
+    }
 
-        return result;
+    /**
+     * Reads 'count' long rows (width 8) starting from 'fromRow' into dst.
+     */
+    public void getLongs(int fromRow, int count, long[] dst) throws IOException {
+        checkRange(fromRow, count);
+
+        for (int done = 0; done < count; ) {
+            int row = fromRow + done;
+            int n = Math.min(count - done, rows - slot(row));
+            ByteBuffer u = unpacked(row);
+            if (u == null)
+                blob.getLongs(rp(row), dst, done, n);
+            else
+                u.asLongBuffer().get(slot(row), dst, done, n);
+            done += n;
+        }
+    }
+
+    /**
+     * Reads 'count' double rows (width 8) starting from 'fromRow' into dst.
+     */
+    public void getDoubles(int fromRow, int count, double[] dst) throws IOException {
+        checkRange(fromRow, count);
+
+        for (int done = 0; done < count; ) {
+            int row = fromRow + done;
+            int n = Math.min(count - done, rows - slot(row));
+            ByteBuffer u = unpacked(row);
+            if (u == null)
+                blob.getDoubles(rp(row), dst, done, n);
+            else
+                u.asDoubleBuffer().get(slot(row), dst, done, n);
+            done += n;
+        }
+    }
+
+    private void checkRange(int fromRow, int count) {
+        if (fromRow < 0 || fromRow + count > size) {
+            throw new ArrayIndexOutOfBoundsException(
+                    "Requested rows from " + fromRow + " count " + count + ", size " + size);
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -338,4 +772,4 @@ public class FixedRegion extends Region {
         }
 
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
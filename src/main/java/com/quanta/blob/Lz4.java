@@ -0,0 +1,201 @@
+package com.quanta.blob;
+
+import java.io.IOException;
+
+/**
+ * LZ4 block format compressor, used for the packed blocks of a {@link Region}.
+ * <p>
+ * Sequences are a token (literal length in the high nibble, match length - 4 in the low one),
+ * the extra length bytes, the literals and a 2 byte little-endian match offset. The last 5 bytes
+ * are always literals. Matches are found through a single 4 KB hash table, which favours speed
+ * over ratio: dictionary strings and slowly changing metrics still shrink several fold.
+ * </p>
+ */
+final class Lz4 {
+
+    private static final int MIN_MATCH     = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT      = 12;
+    private static final int MAX_DISTANCE  = 65535;
+    private static final int HASH_LOG      = 12;
+    private static final int SKIP_TRIGGER  = 6;
+
+    private Lz4() {
+    }
+
+    /**
+     * Compresses {@code src[off..off+len)} into {@code dst} from {@code dstOff}.
+     *
+     * @param limit most bytes to write
+     * @return bytes written, -1 when the output would exceed {@code limit}
+     */
+    static int compress(byte[] src, int off, int len, byte[] dst, int dstOff, int limit) {
+        int end = off + len;
+        int dstEnd = dstOff + limit;
+        int anchor = off;
+        int op = dstOff;
+
+        if (len >= MF_LIMIT) {
+            // positions relative to off plus 1, 0 is empty
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = end - LAST_LITERALS;
+            int mfLimit = end - MF_LIMIT;
+            int ip = off + 1;
+            int attempts = 1 << SKIP_TRIGGER;
+
+            while (ip < mfLimit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                int ref = off + table[h] - 1;
+                table[h] = ip - off + 1;
+
+                if (ref < off || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+                    // step faster through data that does not compress
+                    ip += attempts++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                attempts = 1 << SKIP_TRIGGER;
+
+                while (ip > anchor && ref > off && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+
+                int match = MIN_MATCH;
+                while (ip + match < matchLimit && src[ip + match] == src[ref + match]) {
+                    match++;
+                }
+
+                op = sequence(src, anchor, ip - anchor, ip - ref, match, dst, op, dstEnd);
+                if (op < 0)
+                    return -1;
+
+                ip += match;
+                anchor = ip;
+
+                if (ip - 2 > off)
+                    table[hash(readInt(src, ip - 2))] = ip - 2 - off + 1;
+            }
+        }
+
+        op = sequence(src, anchor, end - anchor, 0, 0, dst, op, dstEnd);
+        return op < 0 ? -1 : op - dstOff;
+    }
+
+    /**
+     * Writes one sequence, a match of 0 for the trailing literals.
+     *
+     * @return the next output position, -1 when past {@code dstEnd}
+     */
+    private static int sequence(byte[] src, int literalsPos, int literals, int distance, int match,
+                                byte[] dst, int op, int dstEnd) {
+        if (op + 1 + literals + literals / 255 + 1 + (match > 0 ? 2 + match / 255 + 1 : 0) > dstEnd)
+            return -1;
+
+        int token = op++;
+        int ml = match - MIN_MATCH;
+        dst[token] = (byte) ((Math.min(literals, 15) << 4) | (match > 0 ? Math.min(ml, 15) : 0));
+
+        if (literals >= 15)
+            op = length(literals - 15, dst, op);
+
+        System.arraycopy(src, literalsPos, dst, op, literals);
+        op += literals;
+
+        if (match > 0) {
+            dst[op++] = (byte) distance;
+            dst[op++] = (byte) (distance >>> 8);
+            if (ml >= 15)
+                op = length(ml - 15, dst, op);
+        }
+        return op;
+    }
+
+    private static int length(int n, byte[] dst, int op) {
+        while (n >= 255) {
+            dst[op++] = (byte) 255;
+            n -= 255;
+        }
+        dst[op++] = (byte) n;
+        return op;
+    }
+
+    /**
+     * Decompresses {@code src[off..off+len)} into {@code dst} from {@code dstOff}.
+     *
+     * @param dstLen size of the original data
+     * @throws IOException when the input is corrupt or does not expand to {@code dstLen} bytes
+     */
+    static void decompress(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException {
+        int ip = off, end = off + len;
+        int op = dstOff, dstEnd = dstOff + dstLen;
+
+        try {
+            while (ip < end) {
+                int token = src[ip++] & 0xFF;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+
+                if (ip + literals > end || op + literals > dstEnd)
+                    throw corrupt();
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+
+                if (ip == end)
+                    break;
+
+                int distance = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+
+                int match = token & 15;
+                if (match == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        match += b;
+                    } while (b == 255);
+                }
+                match += MIN_MATCH;
+
+                int ref = op - distance;
+                if (distance == 0 || ref < dstOff || op + match > dstEnd)
+                    throw corrupt();
+
+                if (distance >= match) {
+                    System.arraycopy(dst, ref, dst, op, match);
+                } else {
+                    // overlapping copy repeats the last bytes
+                    for (int i = 0; i < match; i++) {
+                        dst[op + i] = dst[ref + i];
+                    }
+                }
+                op += match;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw corrupt();
+        }
+
+        if (op != dstEnd)
+            throw corrupt();
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Corrupt compressed block");
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | b[i + 3] << 24;
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
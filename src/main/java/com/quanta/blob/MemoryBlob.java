@@ -1,7 +1,5 @@
 package com.quanta.blob;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -11,223 +9,230 @@ import java.nio.file.StandardOpenOption;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-public class MemoryBlob implements Blob {
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File backed {@link Blob} that maps the file as a chain of fixed-size segments.
+ * <p>
+ * Positions are 64-bit file offsets split into segment and offset by {@link BufferBlob}, so a
+ * single column file is limited by disk space rather than by the 2 GB reach of one
+ * {@link MappedByteBuffer}.
+ * </p>
+ * <p>
+ * The file grows geometrically, doubling up to one segment per step. Only the partially
+ * filled tail segment is ever remapped; full segments stay mapped until {@link #close()},
+ * and a replaced tail mapping is retired rather than unmapped so readers still holding
+ * it never touch unmapped memory.
+ * </p>
+ * <p>
+ * Opened read-only, the file is mapped {@code READ_ONLY} and nothing is ever written: several
+ * processes can query the files one writer process appends to, picking up its commits with
+ * {@link #refresh()}.
+ * </p>
+ */
+public class MemoryBlob extends BufferBlob {
+
+    // null where madvise is not reachable, only WILL_NEED is then acted on
+    private static final NativeAdvice NATIVE_ADVICE = NativeAdvice.load();
 
     public final String fileName;
     private final RandomAccessFile raf;
     private FileChannel channel;
     public final boolean isNew;
 
-    private final Region[] regions;
-    //private long base;
-    private MappedByteBuffer bb;
-    private int next;
-    private long file_length;
-
-    private final Lock lock;
+    private final List<MappedByteBuffer> retired;
 
     public MemoryBlob(String file, Region...regions) throws IOException {
-        File temp = new File(file);
-
-        this.isNew      = !temp.exists();
-        this.fileName   = file;
-        this.raf        = new RandomAccessFile(file, "rw");
+        this(file, DEFAULT_SEGMENT_SHIFT, 0, regions);
+    }
 
-        this.regions    = regions;
-        this.lock       = new ReentrantLock();
+    public MemoryBlob(String file, int segmentShift, Region...regions) throws IOException {
+        this(file, segmentShift, 0, regions);
+    }
 
-        init();
+    /**
+     * @param file         column file
+     * @param segmentShift log2 of the segment size used for new files; existing files keep
+     *                     the segment size they were created with
+     * @param expectedSize expected final size of the file in bytes, used as the initial length
+     *                     of a new file; 0 when unknown
+     * @param regions      regions stored in this blob, in header order
+     */
+    public MemoryBlob(String file, int segmentShift, long expectedSize, Region...regions) throws IOException {
+        this(file, segmentShift, expectedSize, false, regions);
     }
 
-    private void init() throws IOException {
-        open();
+    /**
+     * @param readOnly map an existing file read-only, never writing to it
+     * @see #MemoryBlob(String, int, long, Region...)
+     */
+    public MemoryBlob(String file, int segmentShift, long expectedSize, boolean readOnly, Region...regions) throws IOException {
+        super(storedShift(file, segmentShift), regions);
 
-        int header_pos = 0;
+        File temp = new File(file);
 
-        for (Region r : regions) {
-            r.blob = this;
-            header_pos += 16;
-            r.header_pos = header_pos;
-        }
+        this.isNew      = !temp.exists() || temp.length() == 0;
+        this.fileName   = file;
+        this.read_only  = readOnly;
+        this.retired    = new ArrayList<>();
 
-        if (isNew) {
-            next = header_pos + 16;
-            bb.putInt(0, next);
-            //unsafe.putLong(base, next);
+        if (readOnly && isNew)
+            throw new IOException("Cannot open a missing or empty file read-only: " + file);
 
-            for (Region region : regions) {
-                region.create();
-            }
-        } else {
-            next = bb.getInt(0);
+        this.raf        = new RandomAccessFile(file, readOnly ? "r" : "rw");
 
-            for (Region region : regions) {
-                region.read();
-            }
-        }
+        open(expectedSize);
+        init(isNew);
     }
 
-    @Override
-    public int alloc(int bytes) throws IOException {
-        lock.lock();
-
-        try {
-            int total = next + bytes;
+    /**
+     * Segment shift of an existing file, read from its header, or {@code segmentShift} for a new one.
+     */
+    private static int storedShift(String file, int segmentShift) throws IOException {
+        File temp = new File(file);
+        if (!temp.exists() || temp.length() == 0)
+            return segmentShift;
 
-            if (total > file_length) {
-                extend();
-            }
+        try (RandomAccessFile in = new RandomAccessFile(temp, "r")) {
+            in.seek(SHIFT_POS);
+            int shift = in.readInt();
 
-            int pos = next;
-            next = total;
-            bb.putLong(0, next);
-            //unsafe.putLong(base, next);
+            if (shift < MIN_SEGMENT_SHIFT || shift > MAX_SEGMENT_SHIFT)
+                throw new IOException("Corrupt blob header in " + file + ", segment shift: " + shift);
 
-            return pos;
-        } finally {
-            lock.unlock();
+            return shift;
         }
     }
 
-    private void extend() throws IOException {
-        lock.lock();
-
-        try {
-            close();
-            file_length += (8 * 1024 * 1024); // 4mb
-            raf.setLength(file_length);
+    @Override
+    protected void grow(long length) throws IOException {
+        raf.setLength(length);
+        map(length);
+    }
 
-            open();
-        } finally {
-            lock.unlock();
+    private void open(long expectedSize) throws IOException {
+        long length = raf.length();
+        if (length == 0) {
+            length = initialLength(expectedSize);
+            raf.setLength(length);
         }
-    }
 
-    private void open() throws IOException {
-        file_length = raf.length();
-        if (file_length == 0)
-            file_length = 8 * 1024 * 1024;
+        this.channel = read_only
+                ? FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)
+                : FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
 
-        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
-        this.bb = channel.map(FileChannel.MapMode.READ_WRITE, 0, file_length);
+        map(length);
     }
 
-    public void close() throws IOException {
-        try {
-            if (bb == null || !bb.isDirect())
-                return;
+    /**
+     * Maps the file up to {@code length}. Segments that are already mapped at full size are
+     * left alone; a shorter tail mapping is retired and mapped again at its new size.
+     */
+    private void map(long length) throws IOException {
+        int count = (int) ((length + segment_mask) >>> segment_shift);
 
-            bb.force();
+        for (int i = Math.max(segment_count - 1, 0); i < count; i++) {
+            long start = (long) i << segment_shift;
+            long len   = Math.min(length - start, segmentSize());
 
-            CLEAN.invoke(UNSAFE, bb);
-            channel.close();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
+            if (i < segments.length && segments[i] != null) {
+                if (segments[i].capacity() == len)
+                    continue;
+                retired.add((MappedByteBuffer) segments[i]);
+            }
 
+            MappedByteBuffer segment = map(i, start, len);
+            setSegment(i, segment);
+        }
 
-    private void check(long pos, int v) throws IOException {
-        //System.out.println(pos + v);
-        if (pos + v >= file_length)
-            throw new IOException("Requested pointer greater than file length " + (pos + v) + " vs " + file_length);
-    }
-    public void putInt(int pos, int v) throws IOException {
-        //System.out.println(pos + " " + v);
-        //System.out.println("put_int(" + pos + ", " + v + ")");
-        check(pos, 4);
-        bb.putInt(pos, v);
-        //unsafe.putInt(base + pos, v);
+        segment_count = count;
+        this.length   = length;
     }
 
-    public int getInt(int pos) throws IOException {
-        check(pos, 4);
-        return bb.getInt(pos); //  unsafe.getInt(base + pos);
+    /**
+     * Passes the advice to {@code madvise} for the mapped pages of the range, see {@link NativeAdvice}.
+     * Without it only {@link Advice#WILL_NEED} has an effect, the range is loaded right away.
+     */
+    @Override
+    public void advise(long pos, long len, Advice advice) throws IOException {
+        // a run of contiguous blocks may go on into the next segment, each part is advised on its own
+        for (long p = pos, end = pos + len; p < end; ) {
+            int n = (int) Math.min(end - p, segmentSize() - offset(p));
+            check(p, n);
+
+            if (!(NATIVE_ADVICE != null && NATIVE_ADVICE.advise(segment(p), offset(p), n, advice)) && advice == Advice.WILL_NEED)
+                load(p, n);
+            p += n;
+        }
     }
 
-    public void putLong(int pos, long v) throws IOException {
-        //System.out.println("put_long(" + pos + ", " + v + ")");
-        check(pos, 8);
-        bb.putLong(pos, v);
-        //unsafe.putLong(base + pos, v);
+    /**
+     * Loads {@code len} bytes at {@code pos}, within one segment, into memory.
+     */
+    protected void load(long pos, int len) throws IOException {
+        ((MappedByteBuffer) segment(pos)).slice(offset(pos), len).load();
     }
 
-    public long getLong(int pos) throws IOException {
-        check(pos, 8);
-        return bb.getLong(pos);
-        //return unsafe.getLong(base + pos);
+    @Override
+    protected void remap() throws IOException {
+        long length = raf.length();
+        if (length > this.length)
+            map(length);
     }
 
-    public void putByte(int pos, byte b) throws IOException {
-        check(pos, 1);
-        bb.put(pos, b);
-        //unsafe.putByte(base + pos, b);
-    }
+    @Override
+    public void force() throws IOException {
+        if (read_only)
+            return;
 
-    public byte getByte(int pos) throws IOException {
-        check(pos, 1);
-        return bb.get(pos);
-        //return unsafe.getByte(base + pos);
+        for (int i = 0; i < segment_count; i++) {
+            force(i);
+        }
     }
 
-    public void putBoolean(int pos, boolean b) throws IOException {
-        putByte(pos, (byte) (b ? 0 : 1));
-//        check(pos, 1);
-//
-//        unsafe.putByte(base + pos, (byte) (b ? 0 : 1));
-    }
+    public void close() throws IOException {
+        if (channel == null || !channel.isOpen())
+            return;
 
-    public boolean getBoolean(int pos) throws IOException {
-        return getByte(pos) == 0;
-//        check(pos, 1);
-//        return unsafe.getByte(base + pos) == 0;
-    }
+        seal();
 
-    public void putBytes(int pos, byte[] v) throws IOException {
-        check(pos, v.length);
-        bb.put(pos, v);
-        //unsafe.copyMemory(v, BYTE_ARRAY_OFFSET, null, base + pos, v.length);
-    }
+        for (int i = 0; i < segment_count; i++) {
+            if (!read_only)
+                force(i);
+            unmap(segments[i]);
+            segments[i] = null;
+        }
+        segment_count = 0;
 
-    public byte[] getBytes(int pos, int width) throws IOException {
-        check(pos, width);
-        byte[] v = new byte[width];
-        bb.get(pos, v);
-        //unsafe.copyMemory(null, base + pos, v, BYTE_ARRAY_OFFSET, width);
-        return v;
-    }
+        for (ByteBuffer bb : retired) {
+            unmap(bb);
+        }
+        retired.clear();
 
-    public void copy(int from, int to, int width) throws IOException {
-        byte[] data = getBytes(from, width);
-        putBytes(to, data);
-        //unsafe.copyMemory(null, base + from, null, base + to, width);
+        channel.close();
+        raf.close();
     }
 
+    /**
+     * Maps {@code len} bytes of the file at {@code start} as segment {@code index}, including a
+     * remap of the tail segment. Runs during construction, before subclass fields are initialised.
+     */
+    protected MappedByteBuffer map(int index, long start, long len) throws IOException {
+        return channel.map(read_only ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, start, len);
+    }
 
-    private static final Method CLEAN;
-    private static final Object UNSAFE;
+    /**
+     * Writes the changes to segment {@code index} to the file.
+     */
+    protected void force(int index) throws IOException {
+        ((MappedByteBuffer) segments[index]).force();
+    }
 
-    static {
-        try {
-            Class<?> unsafeClass;
-            try {
-                unsafeClass = Class.forName("sun.misc.Unsafe");
-            } catch (Exception ex) {
-                unsafeClass = Class.forName("jdk.internal.misc.Unsafe");
-            }
-            Method clean = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
-            clean.setAccessible(true);
-            Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
-            theUnsafeField.setAccessible(true);
-            Object theUnsafe = theUnsafeField.get(null);
-
-            CLEAN = clean;
-            UNSAFE = theUnsafe;
-        } catch (Exception e){
-            throw new RuntimeException(e);
-        }
+    /**
+     * Releases a segment returned by {@link #map(int, long, long)} on close.
+     */
+    protected void unmap(ByteBuffer segment) throws IOException {
+        free(segment);
     }
 }
@@ -0,0 +1,31 @@
+package com.quanta.blob;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Passes advice for ranges of mapped buffers to the operating system, see {@link MemoryBlob}.
+ */
+interface NativeAdvice {
+
+    /**
+     * Advises the pages holding {@code len} bytes at {@code offset} of the mapped {@code buffer}.
+     *
+     * @return false when the advice could not be passed on
+     */
+    boolean advise(ByteBuffer buffer, int offset, int len, Advice advice);
+
+    /**
+     * {@code madvise} through the foreign linker, null when it was not built, the
+     * {@code jdk.incubator.foreign} module is missing or the JVM denies native access.
+     */
+    static NativeAdvice load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.foreign").isEmpty())
+            return null;
+
+        try {
+            return (NativeAdvice) Class.forName("com.quanta.blob.Madvise").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.quanta.blob;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded set of page frames shared by {@link PagedBlob}s.
+ * <p>
+ * The pool never holds more than {@code capacity / pageSize} pages, whatever the number and
+ * size of the files using it, which gives a predictable memory ceiling. Frames are direct
+ * buffers created on demand up to that limit; after that a fault evicts a page chosen by the
+ * CLOCK algorithm, writing it back first when it is dirty.
+ * </p>
+ * <p>
+ * Readers do not lock: a frame is pinned with a CAS on its pin count and released after the
+ * access. Eviction claims a frame only when its pin count is 0 by swapping it to -1, so a
+ * pinned page is never replaced under a reader. Faults are serialised by the pool lock.
+ * </p>
+ */
+public class PagePool {
+
+    /** Default page size: 64 KB. */
+    public static final int DEFAULT_PAGE_SHIFT = 16;
+
+    /** Pages read after a fault on a page advised {@link Advice#SEQUENTIAL}. */
+    static final int READ_AHEAD = 8;
+
+    final int page_shift;
+    final int page_size;
+    final long page_mask;
+
+    private final Frame[] frames;
+    private int frame_count;
+    private int hand;
+
+    private final Lock lock;
+
+    /**
+     * @param capacity maximum number of bytes held by the pool
+     */
+    public PagePool(long capacity) {
+        this(capacity, DEFAULT_PAGE_SHIFT);
+    }
+
+    /**
+     * @param capacity  maximum number of bytes held by the pool
+     * @param pageShift log2 of the page size, between 12 (4 KB) and 24 (16 MB)
+     */
+    public PagePool(long capacity, int pageShift) {
+        if (pageShift < 12 || pageShift > 24)
+            throw new IllegalArgumentException("Page shift must be between 12 and 24: " + pageShift);
+
+        this.page_shift = pageShift;
+        this.page_size  = 1 << pageShift;
+        this.page_mask  = page_size - 1;
+
+        long count = capacity >>> pageShift;
+        if (count < 4 || count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Pool capacity must hold between 4 and " + Integer.MAX_VALUE + " pages: " + capacity);
+
+        this.frames = new Frame[(int) count];
+        this.lock   = new ReentrantLock();
+    }
+
+    public int pageSize() {
+        return page_size;
+    }
+
+    public long capacity() {
+        return (long) frames.length << page_shift;
+    }
+
+    /**
+     * Returns the frame holding {@code page} of {@code blob}, pinned. Callers must
+     * {@link Frame#unpin()} it after the access.
+     */
+    Frame pin(PagedBlob blob, long page) throws IOException {
+        while (true) {
+            Frame f = blob.frame(page);
+
+            if (f == null)
+                return fault(blob, page);
+
+            if (f.tryPin()) {
+                if (f.owner == blob && f.page == page) {
+                    f.referenced = true;
+                    return f;
+                }
+                f.unpin();
+            }
+            // frame was evicted or is being evicted, look again
+            Thread.onSpinWait();
+        }
+    }
+
+    private Frame fault(PagedBlob blob, long page) throws IOException {
+        lock.lock();
+
+        try {
+            Frame f = blob.frame(page);
+            if (f != null && f.tryPin()) {
+                if (f.owner == blob && f.page == page) {
+                    f.referenced = true;
+                    return f;
+                }
+                f.unpin();
+            }
+
+            f = claim();
+            try {
+                blob.load(page, f.buffer);
+            } catch (IOException e) {
+                f.pins.set(0);
+                throw e;
+            }
+
+            f.owner      = blob;
+            f.page       = page;
+            f.dirty      = false;
+            f.referenced = true;
+            blob.frame(page, f);
+            f.pins.set(1);
+
+            for (long p = page + 1; p <= page + READ_AHEAD && blob.sequential(p) && p < blob.pages(); p++) {
+                if (!preload(blob, p))
+                    break;
+            }
+
+            return f;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads pages {@code first..last} of {@code blob} that are not in the pool yet, stopping
+     * early when every frame is pinned.
+     */
+    void prefetch(PagedBlob blob, long first, long last) throws IOException {
+        lock.lock();
+
+        try {
+            for (long p = first; p <= last && p < blob.pages(); p++) {
+                if (!preload(blob, p))
+                    break;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads {@code page} into an unpinned frame unless it is already there. Called under the lock.
+     *
+     * @return false when no frame could be claimed
+     */
+    private boolean preload(PagedBlob blob, long page) throws IOException {
+        Frame f = blob.frame(page);
+        if (f != null && f.owner == blob && f.page == page)
+            return true;
+
+        f = tryClaim();
+        if (f == null)
+            return false;
+
+        try {
+            blob.load(page, f.buffer);
+        } catch (IOException e) {
+            f.pins.set(0);
+            throw e;
+        }
+
+        f.owner      = blob;
+        f.page       = page;
+        f.dirty      = false;
+        f.referenced = true;
+        blob.frame(page, f);
+        f.pins.set(0);
+
+        return true;
+    }
+
+    /**
+     * Returns an empty frame claimed exclusively (pin count -1): a new one while the pool is
+     * below capacity, otherwise the CLOCK victim after writing it back.
+     */
+    private Frame claim() throws IOException {
+        Frame f = tryClaim();
+        if (f == null)
+            throw new IOException("Page pool exhausted, all " + frames.length + " pages are pinned");
+        return f;
+    }
+
+    /**
+     * Same as {@link #claim()}, but returns null when every frame is pinned.
+     */
+    private Frame tryClaim() throws IOException {
+        if (frame_count < frames.length) {
+            Frame f = new Frame(ByteBuffer.allocateDirect(page_size));
+            f.pins.set(-1);
+            frames[frame_count++] = f;
+            return f;
+        }
+
+        // two full sweeps clear every reference bit, a third finding nothing means all are pinned
+        for (int i = 0, max = frames.length * 3; i < max; i++) {
+            Frame f = frames[hand];
+            hand = (hand + 1) % frames.length;
+
+            if (f.pins.get() != 0)
+                continue;
+
+            if (f.referenced) {
+                f.referenced = false;
+                continue;
+            }
+
+            if (!f.pins.compareAndSet(0, -1))
+                continue;
+
+            try {
+                release(f);
+            } catch (IOException e) {
+                f.pins.set(0);
+                throw e;
+            }
+            return f;
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes back and detaches an exclusively claimed frame.
+     */
+    private void release(Frame f) throws IOException {
+        PagedBlob owner = f.owner;
+        if (owner == null)
+            return;
+
+        if (f.dirty) {
+            f.dirty = false;
+            owner.store(f.page, f.buffer);
+        }
+
+        owner.frame(f.page, null);
+        f.owner = null;
+        f.page  = -1;
+    }
+
+    /**
+     * Writes back every dirty page of {@code blob}.
+     */
+    void flush(PagedBlob blob) throws IOException {
+        lock.lock();
+
+        try {
+            for (int i = 0; i < frame_count; i++) {
+                Frame f = frames[i];
+                if (f.owner == blob && f.dirty) {
+                    // clear first, a write racing with the store marks the page dirty again
+                    f.dirty = false;
+                    blob.store(f.page, f.buffer);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes back and drops every page of {@code blob}, the frames return to the pool.
+     */
+    void evict(PagedBlob blob) throws IOException {
+        lock.lock();
+
+        try {
+            for (int i = 0; i < frame_count; i++) {
+                Frame f = frames[i];
+                if (f.owner != blob)
+                    continue;
+
+                while (!f.pins.compareAndSet(0, -1)) {
+                    Thread.onSpinWait();
+                }
+
+                try {
+                    release(f);
+                } finally {
+                    f.referenced = false;
+                    f.pins.set(0);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes back and drops pages {@code first..last} of {@code blob}, skipping pinned ones.
+     */
+    void evict(PagedBlob blob, long first, long last) throws IOException {
+        lock.lock();
+
+        try {
+            for (int i = 0; i < frame_count; i++) {
+                Frame f = frames[i];
+                if (f.owner != blob || f.page < first || f.page > last)
+                    continue;
+
+                if (!f.pins.compareAndSet(0, -1))
+                    continue;
+
+                try {
+                    release(f);
+                } finally {
+                    f.referenced = false;
+                    f.pins.set(0);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static final class Frame {
+        final ByteBuffer buffer;
+        final AtomicInteger pins = new AtomicInteger();
+
+        volatile PagedBlob owner;
+        volatile long page = -1;
+        volatile boolean dirty;
+        volatile boolean referenced;
+
+        Frame(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean tryPin() {
+            int p;
+            while ((p = pins.get()) >= 0) {
+                if (pins.compareAndSet(p, p + 1))
+                    return true;
+            }
+            return false;
+        }
+
+        void unpin() {
+            pins.decrementAndGet();
+        }
+    }
+}
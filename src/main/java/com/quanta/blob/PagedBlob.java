@@ -0,0 +1,613 @@
+package com.quanta.blob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File backed {@link Blob} that caches fixed-size pages in a bounded {@link PagePool}.
+ * <p>
+ * Pages are read with positional {@link FileChannel} reads on first access and written back
+ * when they are evicted, on {@link #flush()} and on {@link #close()}, so a column far larger
+ * than physical memory can be queried with memory use capped by the pool. The file format is
+ * the one {@link MemoryBlob} writes, allocations skip segment boundaries the same way, and a
+ * dataset can be reopened with either implementation.
+ * </p>
+ * <p>
+ * Safe for concurrent readers. Values that straddle two pages take a slower byte-wise path.
+ * In write-behind mode headers reach the file on {@link #commit()} like any other page.
+ * </p>
+ */
+public class PagedBlob implements Blob {
+
+    public final String fileName;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    public final boolean isNew;
+
+    private final PagePool pool;
+    private volatile PagePool.Frame[] frames;
+    private volatile long[] sequential;
+
+    private final Region[] regions;
+    private final int  page_shift;
+    private final int  page_size;
+    private final long page_mask;
+    private int  segment_shift;
+    private long next;
+    private boolean write_behind;
+    private boolean recovery;
+    private boolean closed;
+
+    private final Lock lock;
+
+    public PagedBlob(String file, PagePool pool, Region...regions) throws IOException {
+        File temp = new File(file);
+
+        this.isNew      = !temp.exists() || temp.length() == 0;
+        this.fileName   = file;
+        this.raf        = new RandomAccessFile(file, "rw");
+        this.channel    = raf.getChannel();
+
+        this.pool       = pool;
+        this.frames     = new PagePool.Frame[64];
+        this.sequential = new long[1];
+        this.page_shift = pool.page_shift;
+        this.page_size  = pool.page_size;
+        this.page_mask  = pool.page_mask;
+
+        this.regions    = regions;
+        this.lock       = new ReentrantLock();
+
+        init();
+    }
+
+    private void init() throws IOException {
+        long header_pos = 0;
+
+        for (Region r : regions) {
+            r.blob = this;
+            header_pos += Region.HEADER_SIZE;
+            r.header_pos = header_pos;
+        }
+
+        if (isNew) {
+            segment_shift = BufferBlob.DEFAULT_SEGMENT_SHIFT;
+            next = header_pos + Region.HEADER_SIZE;
+            putLong(0, next);
+            putInt(BufferBlob.SHIFT_POS, segment_shift);
+
+            for (Region region : regions) {
+                region.create();
+            }
+        } else {
+            // only the blob header is addressable until the allocation pointer is known
+            next = Region.HEADER_SIZE;
+            segment_shift = getInt(BufferBlob.SHIFT_POS);
+            if (segment_shift < BufferBlob.MIN_SEGMENT_SHIFT || segment_shift > BufferBlob.MAX_SEGMENT_SHIFT)
+                throw new IOException("Corrupt blob header in " + fileName + ", segment shift: " + segment_shift);
+
+            long header = getLong(0);
+            // blocks may have been linked past the committed pointer, pages never written read as 0
+            next = Long.MAX_VALUE;
+
+            for (Region region : regions) {
+                region.read();
+            }
+
+            // blocks linked after the last commit are still in use
+            next = header;
+            for (Region region : regions) {
+                next = Math.max(next, region.end());
+            }
+
+            recovery = getInt(BufferBlob.OPEN_POS) != 0;
+        }
+
+        putInt(BufferBlob.OPEN_POS, 1);
+    }
+
+    @Override
+    public void writeBehind(boolean on) {
+        write_behind = on;
+
+        for (Region region : regions) {
+            region.write_behind = on;
+        }
+    }
+
+    @Override
+    public void commit() throws IOException {
+        lock.lock();
+
+        try {
+            putLong(0, next);
+
+            for (Region region : regions) {
+                region.commit();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean needsRecovery() {
+        return recovery;
+    }
+
+    @Override
+    public long alloc(int bytes) throws IOException {
+        if (bytes > (1L << segment_shift))
+            throw new IOException("Allocation of " + bytes + " bytes exceeds segment size " + (1L << segment_shift));
+
+        lock.lock();
+
+        try {
+            long pos = next;
+
+            // same placement as BufferBlob so the file stays mappable
+            if ((pos >>> segment_shift) != ((pos + bytes - 1) >>> segment_shift))
+                pos = ((pos >>> segment_shift) + 1) << segment_shift;
+
+            next = pos + bytes;
+            if (!write_behind)
+                putLong(0, next);
+
+            return pos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frame last holding {@code page}, or null. The entry may be stale, callers validate it
+     * after pinning.
+     */
+    PagePool.Frame frame(long page) {
+        PagePool.Frame[] f = frames;
+        return page < f.length ? f[(int) page] : null;
+    }
+
+    /**
+     * Sets the frame of {@code page}, only called under the pool lock.
+     */
+    void frame(long page, PagePool.Frame frame) {
+        if (page >= frames.length) {
+            if (frame == null)
+                return;
+            frames = Arrays.copyOf(frames, (int) Math.max(page + 1, frames.length * 2L));
+        }
+        frames[(int) page] = frame;
+    }
+
+    /**
+     * True when {@code page} was advised {@link Advice#SEQUENTIAL}, faults on it read ahead.
+     */
+    boolean sequential(long page) {
+        long[] s = sequential;
+        int word = (int) (page >>> 6);
+        return word < s.length && (s[word] & (1L << page)) != 0;
+    }
+
+    /**
+     * Number of pages holding allocated space.
+     */
+    long pages() {
+        return (next + page_mask) >>> page_shift;
+    }
+
+    @Override
+    public void advise(long pos, long len, Advice advice) throws IOException {
+        if (len <= 0)
+            return;
+
+        long first = pos >>> page_shift;
+        long last  = (pos + len - 1) >>> page_shift;
+
+        switch (advice) {
+            case WILL_NEED -> pool.prefetch(this, first, last);
+            case DONT_NEED -> pool.evict(this, first, last);
+            default -> mark(first, last, advice == Advice.SEQUENTIAL);
+        }
+    }
+
+    private void mark(long first, long last, boolean on) {
+        lock.lock();
+
+        try {
+            long[] s = sequential;
+            int words = (int) (last >>> 6) + 1;
+            if (words > s.length)
+                s = Arrays.copyOf(s, Math.max(words, s.length * 2));
+
+            for (long p = first; p <= last; p++) {
+                if (on)
+                    s[(int) (p >>> 6)] |= 1L << p;
+                else
+                    s[(int) (p >>> 6)] &= ~(1L << p);
+            }
+
+            sequential = s;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads {@code page} into {@code buffer}. Bytes past the end of the file read as zero.
+     */
+    void load(long page, ByteBuffer buffer) throws IOException {
+        ByteBuffer bb = buffer.duplicate().clear();
+        long pos = page << page_shift;
+
+        while (bb.hasRemaining()) {
+            int n = channel.read(bb, pos + bb.position());
+            if (n < 0)
+                break;
+        }
+
+        while (bb.hasRemaining()) {
+            bb.put((byte) 0);
+        }
+    }
+
+    /**
+     * Writes {@code buffer} back as {@code page}.
+     */
+    void store(long page, ByteBuffer buffer) throws IOException {
+        ByteBuffer bb = buffer.duplicate().clear();
+        long pos = page << page_shift;
+
+        while (bb.hasRemaining()) {
+            channel.write(bb, pos + bb.position());
+        }
+    }
+
+    private void check(long pos, int v) throws IOException {
+        if (pos < 0 || pos + v > next)
+            throw new IOException("Requested pointer greater than blob length " + (pos + v) + " vs " + next);
+    }
+
+    private boolean inPage(long pos, int v) {
+        return (pos & page_mask) + v <= page_size;
+    }
+
+    public void putInt(long pos, int v) throws IOException {
+        check(pos, 4);
+        if (inPage(pos, 4)) {
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                f.buffer.putInt((int) (pos & page_mask), v);
+                f.dirty = true;
+            } finally {
+                f.unpin();
+            }
+        } else {
+            write(pos, ByteBuffer.allocate(4).putInt(0, v).array(), 0, 4);
+        }
+    }
+
+    public int getInt(long pos) throws IOException {
+        check(pos, 4);
+        if (inPage(pos, 4)) {
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                return f.buffer.getInt((int) (pos & page_mask));
+            } finally {
+                f.unpin();
+            }
+        }
+        return ByteBuffer.wrap(getBytes(pos, 4)).getInt();
+    }
+
+    public void putLong(long pos, long v) throws IOException {
+        check(pos, 8);
+        if (inPage(pos, 8)) {
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                f.buffer.putLong((int) (pos & page_mask), v);
+                f.dirty = true;
+            } finally {
+                f.unpin();
+            }
+        } else {
+            write(pos, ByteBuffer.allocate(8).putLong(0, v).array(), 0, 8);
+        }
+    }
+
+    public long getLong(long pos) throws IOException {
+        check(pos, 8);
+        if (inPage(pos, 8)) {
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                return f.buffer.getLong((int) (pos & page_mask));
+            } finally {
+                f.unpin();
+            }
+        }
+        return ByteBuffer.wrap(getBytes(pos, 8)).getLong();
+    }
+
+    public void putByte(long pos, byte b) throws IOException {
+        check(pos, 1);
+        PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+        try {
+            f.buffer.put((int) (pos & page_mask), b);
+            f.dirty = true;
+        } finally {
+            f.unpin();
+        }
+    }
+
+    public byte getByte(long pos) throws IOException {
+        check(pos, 1);
+        PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+        try {
+            return f.buffer.get((int) (pos & page_mask));
+        } finally {
+            f.unpin();
+        }
+    }
+
+    public void putBoolean(long pos, boolean b) throws IOException {
+        putByte(pos, (byte) (b ? 0 : 1));
+    }
+
+    public boolean getBoolean(long pos) throws IOException {
+        return getByte(pos) == 0;
+    }
+
+    public void putBytes(long pos, byte[] v) throws IOException {
+        check(pos, v.length);
+        write(pos, v, 0, v.length);
+    }
+
+    @Override
+    public void putBytes(long pos, byte[] src, int off, int len) throws IOException {
+        check(pos, len);
+        write(pos, src, off, len);
+    }
+
+    public byte[] getBytes(long pos, int width) throws IOException {
+        byte[] v = new byte[width];
+        getBytes(pos, v, 0, width);
+        return v;
+    }
+
+    @Override
+    public void getBytes(long pos, byte[] dst, int off, int len) throws IOException {
+        check(pos, len);
+
+        while (len > 0) {
+            int o = (int) (pos & page_mask);
+            int n = Math.min(len, page_size - o);
+
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                f.buffer.get(o, dst, off, n);
+            } finally {
+                f.unpin();
+            }
+
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void getBytes(long pos, ByteBuffer dst) throws IOException {
+        int len = dst.remaining();
+        check(pos, len);
+
+        while (len > 0) {
+            int o = (int) (pos & page_mask);
+            int n = Math.min(len, page_size - o);
+
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                dst.put(dst.position(), f.buffer, o, n);
+            } finally {
+                f.unpin();
+            }
+
+            dst.position(dst.position() + n);
+            pos += n;
+            len -= n;
+        }
+    }
+
+    private void write(long pos, byte[] src, int off, int len) throws IOException {
+        while (len > 0) {
+            int o = (int) (pos & page_mask);
+            int n = Math.min(len, page_size - o);
+
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                f.buffer.put(o, src, off, n);
+                f.dirty = true;
+            } finally {
+                f.unpin();
+            }
+
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void getInts(long pos, int[] dst, int off, int count) throws IOException {
+        check(pos, count * 4);
+        int i = 0;
+
+        while (i < count) {
+            int o = (int) (pos & page_mask);
+            int n = Math.min(count - i, (page_size - o) / 4);
+
+            if (n == 0) {
+                dst[off + i++] = getInt(pos);
+                pos += 4;
+                continue;
+            }
+
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                for (int j = 0; j < n; j++, o += 4) {
+                    dst[off + i + j] = f.buffer.getInt(o);
+                }
+            } finally {
+                f.unpin();
+            }
+
+            i   += n;
+            pos += 4L * n;
+        }
+    }
+
+    @Override
+    public void getLongs(long pos, long[] dst, int off, int count) throws IOException {
+        check(pos, count * 8);
+        int i = 0;
+
+        while (i < count) {
+            int o = (int) (pos & page_mask);
+            int n = Math.min(count - i, (page_size - o) / 8);
+
+            if (n == 0) {
+                dst[off + i++] = getLong(pos);
+                pos += 8;
+                continue;
+            }
+
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                for (int j = 0; j < n; j++, o += 8) {
+                    dst[off + i + j] = f.buffer.getLong(o);
+                }
+            } finally {
+                f.unpin();
+            }
+
+            i   += n;
+            pos += 8L * n;
+        }
+    }
+
+    @Override
+    public void getDoubles(long pos, double[] dst, int off, int count) throws IOException {
+        check(pos, count * 8);
+        int i = 0;
+
+        while (i < count) {
+            int o = (int) (pos & page_mask);
+            int n = Math.min(count - i, (page_size - o) / 8);
+
+            if (n == 0) {
+                dst[off + i++] = Double.longBitsToDouble(getLong(pos));
+                pos += 8;
+                continue;
+            }
+
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                for (int j = 0; j < n; j++, o += 8) {
+                    dst[off + i + j] = f.buffer.getDouble(o);
+                }
+            } finally {
+                f.unpin();
+            }
+
+            i   += n;
+            pos += 8L * n;
+        }
+    }
+
+    @Override
+    public void fill(long pos, int len, byte b) throws IOException {
+        check(pos, len);
+
+        while (len > 0) {
+            int o = (int) (pos & page_mask);
+            int n = Math.min(len, page_size - o);
+
+            PagePool.Frame f = pool.pin(this, pos >>> page_shift);
+            try {
+                for (int i = 0; i < n; i++) {
+                    f.buffer.put(o + i, b);
+                }
+                f.dirty = true;
+            } finally {
+                f.unpin();
+            }
+
+            pos += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void move(long from, long to, int len) throws IOException {
+        check(from, len);
+        check(to, len);
+
+        // at most two pages are pinned at a time, so a move cannot exhaust the pool;
+        // copying backwards when the target is ahead keeps overlapping ranges intact
+        byte[] chunk = new byte[Math.min(len, page_size)];
+
+        if (to <= from) {
+            for (int done = 0; done < len; ) {
+                int n = Math.min(chunk.length, len - done);
+                getBytes(from + done, chunk, 0, n);
+                write(to + done, chunk, 0, n);
+                done += n;
+            }
+        } else {
+            for (int left = len; left > 0; ) {
+                int n = Math.min(chunk.length, left);
+                left -= n;
+                getBytes(from + left, chunk, 0, n);
+                write(to + left, chunk, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Writes every dirty page back to the file.
+     */
+    public void flush() throws IOException {
+        pool.flush(this);
+
+        // allocated but never written space still has to exist for a mapped reopen
+        if (raf.length() < next)
+            raf.setLength(next);
+    }
+
+    @Override
+    public void force() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+
+        commit();
+        putInt(BufferBlob.OPEN_POS, 0);
+        pool.evict(this);
+
+        if (raf.length() < next)
+            raf.setLength(next);
+
+        channel.close();
+        raf.close();
+    }
+}
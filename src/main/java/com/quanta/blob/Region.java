@@ -1,64 +1,528 @@
 package com.quanta.blob;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
 
+/**
+ * A chain of equally sized blocks inside a {@link Blob}.
+ * <p>
+ * Header ({@link #HEADER_SIZE} bytes at {@code header_pos}): region specific values in the
+ * first 8 bytes, the position of the first block at {@code header_pos + 8}, the rest is reserved.
+ * Each block is {@code block_width} data bytes followed by a 16 byte trailer holding the
+ * position of the next block and, at {@code packed_pos}, the compressed length of a packed block
+ * and, at {@code crc_pos}, the block checksum.
+ * </p>
+ * <p>
+ * A block is sealed with a CRC32C once it is full, see {@link #seal(int)}. The checksum covers
+ * the stored data bytes and the first 12 trailer bytes, so a damaged link or packed length is
+ * caught too; 0 marks a block that is not sealed, the one still being filled or one written
+ * before checksums existed. Writers that change a sealed block {@link #unseal(int)} it first.
+ * {@link #verify(int)} checks a block against its checksum.
+ * </p>
+ * <p>
+ * Blocks are packed with {@link Lz4} when the region is copied by compaction with
+ * {@link #compression(boolean)} on, see {@link #pack(int, byte[], byte[])}. A packed block keeps
+ * its place and size in the blob, only its first bytes are used, so the rest is never read or
+ * cached and stays a hole in the compacted file. Reads of a packed block go through a small
+ * cache of decompressed blocks, see {@link #unpack(int)}.
+ * </p>
+ * <p>
+ * In write-behind mode the region specific header values are only written by {@link #commit()},
+ * the block links are always written when a block is allocated.
+ * </p>
+ */
 public abstract class Region {
-    protected int[] blocks;
+    public static final int HEADER_SIZE = 32;
+
+    /** Buffer size used by {@link #copyTo(Region)}. */
+    protected static final int COPY_BUFFER = 64 * 1024;
+
+    /** Bytes of decompressed blocks a region keeps, at least one block. */
+    private static final int UNPACKED_BYTES = 16 * 1024 * 1024;
+
+    // longs of a key in the byte order of the blobs, see compareBytes
+    private static final VarHandle KEY_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    protected long[] blocks;
     protected int   block_count;
-    protected final int block_width;
-    protected final int next_pos;
-    protected final int bloom_pos;
+    protected int block_width;
+    protected int next_pos;
+    protected int packed_pos;
+    protected int crc_pos;
+
+    // compressed length of each block, 0 for raw ones; null while no block is packed
+    protected int[] packed;
+    protected boolean compress;
+    private Map<Integer, ByteBuffer> unpacked;
+
+    // sealed blocks changed since the last commit, sealed again by it
+    protected final BitSet stale = new BitSet();
 
     protected Blob blob;
-    protected int header_pos;
+    protected long header_pos;
+    protected boolean write_behind;
+    protected Advice advice = Advice.NORMAL;
 
     public Region(int block_width) {
-        blocks           = new int[10];
+        blocks           = new long[10];
         block_count      = 0;
+        blockWidth(block_width);
+    }
+
+    /**
+     * Sets the block size, only before the region has blocks.
+     */
+    protected void blockWidth(int block_width) {
         this.block_width = block_width;
         this.next_pos    = block_width;
-        this.bloom_pos   = next_pos + 8;
+        this.packed_pos  = next_pos + 8;
+        this.crc_pos     = packed_pos + 4;
     }
 
-   // protected abstract long alloc() throws IOException;
+    /**
+     * Packs the sealed blocks when this region is the target of {@link #copyTo(Region)}, see
+     * {@link com.quanta.column.Column#compact()}.
+     */
+    public void compression(boolean on) {
+        this.compress = on;
+    }
 
-  //  protected abstract boolean isFixed();
+    public boolean compression() {
+        return compress;
+    }
 
     protected abstract void create() throws IOException;
 
+    /**
+     * New, unopened region with the same configuration, the target of {@link #copyTo(Region)}.
+     */
+    public abstract Region blank();
+
+    /**
+     * Copies the live contents into {@code target}, a {@link #blank()} region opened in another
+     * blob. Blocks are appended to the target in order, so the copy is contiguous and blocks or
+     * rows that are no longer reachable are left behind.
+     */
+    public abstract void copyTo(Region target) throws IOException;
+
+    /**
+     * Bytes of blocks {@link #copyTo(Region)} writes, used to size the target.
+     */
+    public abstract long liveBytes();
+
+    /**
+     * Loads the live blocks into memory, see {@link Advice#WILL_NEED}.
+     *
+     * @return bytes loaded
+     */
+    public long warm() throws IOException {
+        int live = live();
+
+        long bytes = 0;
+
+        for (int i = 0; i < live; i++) {
+            bytes += stored(i);
+        }
+        adviseBlocks(0, live, Advice.WILL_NEED);
+
+        return bytes;
+    }
+
+    /**
+     * Hints how the region is going to be read. {@link Advice#SEQUENTIAL}, {@link Advice#RANDOM}
+     * and {@link Advice#NORMAL} stay in effect, also for blocks allocated later;
+     * {@link Advice#WILL_NEED} and {@link Advice#DONT_NEED} apply once to the live blocks.
+     */
+    public void advise(Advice advice) throws IOException {
+        if (advice != Advice.WILL_NEED && advice != Advice.DONT_NEED)
+            this.advice = advice;
+
+        adviseBlocks(0, live(), advice);
+    }
+
+    /**
+     * Advises blocks {@code from..to-1}, with one call per run of blocks that follow each other
+     * in the blob rather than one per block.
+     */
+    protected void adviseBlocks(int from, int to, Advice advice) throws IOException {
+        for (int i = from; i < to; ) {
+            long start = blocks[i];
+            int j = i;
+            // a packed block leaves a hole after its stored bytes, the run stops there
+            while (j + 1 < to && !isPacked(j) && blocks[j + 1] == blocks[j] + block_width + 16)
+                j++;
+
+            blob.advise(start, blocks[j] - start + stored(j), advice);
+            i = j + 1;
+        }
+    }
+
+    /** Bytes {@code block} occupies in the blob, a packed block only uses its first bytes. */
+    private int stored(int block) {
+        return isPacked(block) ? packed[block] : block_width + 16;
+    }
+
+    protected final boolean isPacked(int block) {
+        return packed != null && block < packed.length && packed[block] != 0;
+    }
+
+    private void packed(int block, int length) {
+        if (packed == null) {
+            if (length == 0)
+                return;
+            packed = new int[blocks.length];
+        } else if (block >= packed.length) {
+            packed = Arrays.copyOf(packed, blocks.length);
+        }
+        packed[block] = length;
+    }
+
+    /**
+     * Writes the {@code block_width} bytes of {@code raw} to the sealed {@code block}, compressed
+     * through {@code buffer}, of the same size, when that saves at least an eighth.
+     */
+    protected void pack(int block, byte[] raw, byte[] buffer) throws IOException {
+        int length = Lz4.compress(raw, 0, block_width, buffer, 0, block_width - block_width / 8);
+
+        if (length > 0) {
+            blob.putBytes(blocks[block], buffer, 0, length);
+            blob.putInt(blocks[block] + packed_pos, length);
+            packed(block, length);
+        } else {
+            blob.putBytes(blocks[block], raw, 0, block_width);
+        }
+    }
+
+    /**
+     * Stores {@code block} raw again, before it is written to. Must not run while the block is
+     * being read.
+     *
+     * @param keep true to decompress the contents back, false when they are about to be replaced
+     */
+    protected void unpackInPlace(int block, boolean keep) throws IOException {
+        if (!isPacked(block))
+            return;
+
+        if (keep) {
+            ByteBuffer raw = unpack(block);
+            blob.putBytes(blocks[block], raw.array(), 0, block_width);
+        }
+
+        blob.putInt(blocks[block] + packed_pos, 0);
+        unseal(block);
+        packed[block] = 0;
+
+        synchronized (this) {
+            if (unpacked != null)
+                unpacked.remove(block);
+        }
+    }
+
+    /**
+     * Forgets the compressed length of the blocks the writer stored raw again since they were
+     * linked, see {@link #unpackInPlace(int, boolean)}, for a region of a read-only blob.
+     * Blocks are only packed by compaction, into a new file, so a known block never becomes packed.
+     */
+    protected void refreshPacked() throws IOException {
+        if (packed == null)
+            return;
+
+        for (int b = 0, n = Math.min(block_count, packed.length); b < n; b++) {
+            if (packed[b] != 0 && blob.getInt(blocks[b] + packed_pos) == 0) {
+                packed[b] = 0;
+                synchronized (this) {
+                    if (unpacked != null)
+                        unpacked.remove(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decompressed contents of the packed {@code block}, from the cache when it was read lately.
+     * The buffer is shared and must not be written to.
+     */
+    protected ByteBuffer unpack(int block) throws IOException {
+        synchronized (this) {
+            if (unpacked == null) {
+                int capacity = Math.max(1, UNPACKED_BYTES / block_width);
+                unpacked = new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest) {
+                        return size() > capacity;
+                    }
+                };
+            }
+
+            ByteBuffer b = unpacked.get(block);
+            if (b != null)
+                return b;
+        }
+
+        byte[] raw = new byte[block_width];
+        readBlock(block, raw);
+        ByteBuffer b = ByteBuffer.wrap(raw);
+
+        synchronized (this) {
+            unpacked.put(block, b);
+        }
+        return b;
+    }
+
+    /**
+     * Compares the {@code len} bytes stored at {@code pos} with {@code key} as unsigned bytes, as
+     * {@link Arrays#compareUnsigned(byte[], byte[])} would, without copying them out of the blob.
+     * Blobs are big-endian, so the bytes are compared a long at a time where they can be.
+     */
+    protected int compareBytes(long pos, int len, byte[] key) throws IOException {
+        int n = Math.min(len, key.length);
+        int i = 0;
+
+        for (; i + Long.BYTES <= n; i += Long.BYTES) {
+            long a = blob.getLong(pos + i);
+            long b = (long) KEY_LONG.get(key, i);
+            if (a != b)
+                return Long.compareUnsigned(a, b);
+        }
+        for (; i < n; i++) {
+            int c = Byte.compareUnsigned(blob.getByte(pos + i), key[i]);
+            if (c != 0)
+                return c;
+        }
+        return len - key.length;
+    }
+
+    /**
+     * Same as {@link #compareBytes(long, int, byte[])} for bytes of a decompressed block.
+     */
+    protected static int compareBytes(ByteBuffer buffer, int offset, int len, byte[] key) {
+        int n = Math.min(len, key.length);
+        int i = 0;
+
+        for (; i + Long.BYTES <= n; i += Long.BYTES) {
+            long a = buffer.getLong(offset + i);
+            long b = (long) KEY_LONG.get(key, i);
+            if (a != b)
+                return Long.compareUnsigned(a, b);
+        }
+        for (; i < n; i++) {
+            int c = Byte.compareUnsigned(buffer.get(offset + i), key[i]);
+            if (c != 0)
+                return c;
+        }
+        return len - key.length;
+    }
+
+    /**
+     * Reads the {@code block_width} data bytes of {@code block} into {@code dst}, decompressed
+     * when the block is packed.
+     */
+    protected void readBlock(int block, byte[] dst) throws IOException {
+        if (isPacked(block)) {
+            byte[] src = blob.getBytes(blocks[block], packed[block]);
+            Lz4.decompress(src, 0, src.length, dst, 0, block_width);
+        } else {
+            blob.getBytes(blocks[block], dst, 0, block_width);
+        }
+    }
+
+    /**
+     * Writes the checksum of {@code block}, whose contents are final until it is unsealed.
+     */
+    protected void seal(int block) throws IOException {
+        int length = blob.getInt(blocks[block] + packed_pos);
+        blob.putInt(blocks[block] + crc_pos, crc(block, length == 0 ? block_width : length));
+    }
+
+    /**
+     * Clears the checksum of {@code block} before it is written to.
+     */
+    protected void unseal(int block) throws IOException {
+        if (blob.getInt(blocks[block] + crc_pos) != 0)
+            blob.putInt(blocks[block] + crc_pos, 0);
+    }
+
+    /**
+     * Unseals {@code block} and seals it again on the next {@link #commit()}, for writers that
+     * change a few values of a full block in place.
+     */
+    protected void modified(int block) throws IOException {
+        if (!stale.get(block) && blob.getInt(blocks[block] + crc_pos) != 0) {
+            blob.putInt(blocks[block] + crc_pos, 0);
+            stale.set(block);
+        }
+    }
+
+    /**
+     * Seals again the blocks changed through {@link #modified(int)}.
+     */
+    protected void reseal() throws IOException {
+        for (int b = stale.nextSetBit(0); b >= 0 && b < block_count; b = stale.nextSetBit(b + 1)) {
+            seal(b);
+        }
+        stale.clear();
+    }
+
+    /**
+     * Checks {@code block} against its checksum.
+     *
+     * @return false when the block is damaged, true when it matches or is not sealed
+     */
+    public boolean verify(int block) throws IOException {
+        long pos = blocks[block];
+        int crc = blob.getInt(pos + crc_pos);
+        if (crc == 0)
+            return true;
+
+        int length = blob.getInt(pos + packed_pos);
+        if (length < 0 || length > block_width)
+            return false;
+
+        return crc(block, length == 0 ? block_width : length) == crc;
+    }
+
+    private int crc(int block, int length) throws IOException {
+        CRC32C crc = new CRC32C();
+        blob.checksum(blocks[block], length, crc);
+        blob.checksum(blocks[block] + next_pos, 12, crc);
+
+        // 0 is kept for blocks that are not sealed
+        int v = (int) crc.getValue();
+        return v == 0 ? 1 : v;
+    }
+
+    /** Number of blocks, including the ones kept for reuse. */
+    public int blockCount() {
+        return block_count;
+    }
+
+    /** Position of {@code block} in the blob. */
+    public long position(int block) {
+        return blocks[block];
+    }
+
+    /** Bytes of a block including its trailer. */
+    public int blockBytes() {
+        return block_width + 16;
+    }
+
+    /** Number of blocks holding data, the rest are kept for reuse. */
+    private int live() {
+        return (int) Math.min(block_count, liveBytes() / (block_width + 16));
+    }
+
+    /**
+     * Copies {@code len} bytes from this region's blob to {@code target}'s blob through {@code buffer}.
+     */
+    protected void transfer(long from, Region target, long to, long len, byte[] buffer) throws IOException {
+        for (long done = 0; done < len; ) {
+            int n = (int) Math.min(buffer.length, len - done);
+            blob.getBytes(from + done, buffer, 0, n);
+            target.blob.putBytes(to + done, buffer, 0, n);
+            done += n;
+        }
+    }
+
     protected void read() throws IOException {
-        int next = blob.getInt(header_pos + 8);
+        long next = blob.getLong(header_pos + 8);
         block_count = 0;
+        packed = null;
+        stale.clear();
+
+        synchronized (this) {
+            unpacked = null;
+        }
 
         while (next > 0) {
             if (block_count + 1 > blocks.length) {
-                blocks = Arrays.copyOf(blocks, block_count + 10);
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
             }
 
             blocks[block_count] = next;
-            next = blob.getInt(next + next_pos);
+            packed(block_count, blob.getInt(next + packed_pos));
+            next = blob.getLong(next + next_pos);
             block_count++;
         }
     }
 
     protected void alloc() throws IOException {
-        //System.out.println("Allocating new block: current:" + block_count);
-        int pos = blob.alloc(block_width + 16);
+        long pos = blob.alloc(block_width + 16);
+
+        // no stale link, packed length or checksum from a block orphaned by a crash
+        blob.putLong(pos + next_pos, 0);
+        blob.putLong(pos + packed_pos, 0);
 
         if (block_count + 1 > blocks.length) {
-            blocks = Arrays.copyOf(blocks, block_count + 10);
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
         }
 
         if (block_count == 0) {
-            blob.putInt(header_pos + 8, pos);
+            blob.putLong(header_pos + 8, pos);
         } else {
-            //System.out.println("   Setting linked block: " + (blocks[block_count - 1] + next_pos) + "  " + pos);
-            blob.putInt(blocks[block_count - 1] + next_pos, pos);
+            blob.putLong(blocks[block_count - 1] + next_pos, pos);
+
+            // the link is covered by the checksum
+            if (blob.getInt(blocks[block_count - 1] + crc_pos) != 0)
+                seal(block_count - 1);
         }
 
         blocks[block_count++] = pos;
-        //System.out.println(getClass().getSimpleName() + ": New Block " + block_count +  "> " + pos);
+
+        if (advice != Advice.NORMAL)
+            blob.advise(pos, block_width + 16, advice);
+    }
+
+    /**
+     * Reads back the headers a writer process committed, for a read-only blob. Only called
+     * between two matching versions, see {@link BufferBlob#refresh()}.
+     *
+     * @param published true when the writer maintains the committed header values, false for
+     *                  files written before they existed
+     */
+    protected void refresh(boolean published) throws IOException {
+    }
+
+    /**
+     * Follows the block links until {@code count} blocks are known or the chain ends.
+     */
+    protected void link(int count) throws IOException {
+        long next = block_count == 0 ? blob.getLong(header_pos + 8) : blob.getLong(blocks[block_count - 1] + next_pos);
+
+        while (next > 0 && block_count < count) {
+            if (block_count + 1 > blocks.length) {
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            }
+
+            blocks[block_count] = next;
+            packed(block_count++, blob.getInt(next + packed_pos));
+            next = blob.getLong(next + next_pos);
+        }
+    }
+
+    /**
+     * Writes the header values held back in write-behind mode.
+     */
+    protected void commit() throws IOException {
+    }
+
+    /**
+     * End of the last block in the blob, used to recover the allocation pointer when blocks
+     * were linked after the last commit.
+     */
+    protected long end() {
+        long end = 0;
+        for (int i = 0; i < block_count; i++) {
+            end = Math.max(end, blocks[i] + block_width + 16);
+        }
+        return end;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.quanta.blob;
+
+/**
+ * Enum selecting the {@link Blob} implementation that backs each column file.
+ * <p>
+ * All file backed types share one file format, so a dataset written with one type can be
+ * reopened with another, e.g. to compare them on the same data.
+ * </p>
+ *
+ * <p>Usage Example:</p>
+ * <pre>
+ * Quanta quanta = new QuantaBuilder("Dataset", "/data")
+ *     .storage(StorageType.SEGMENT)
+ *     .addIntColumn("year", IndexCardinality.TINY)
+ *     .getQuanta();
+ * </pre>
+ */
+public enum StorageType {
+
+    /** Memory mapped segments accessed through {@link java.nio.MappedByteBuffer}. The default. */
+    MAPPED,
+
+    /**
+     * Memory mapped {@code MemorySegment}s accessed through var handles and unmapped as soon as
+     * the blob is closed, see {@code SegmentBlob}. Uses the incubating foreign memory API of Java
+     * 17 and 18: only built there, and needs {@code --add-modules jdk.incubator.foreign}.
+     */
+    SEGMENT,
+
+    /**
+     * Off-heap memory with no backing file. Nothing is written to disk and the data is
+     * discarded on close, for short-lived scratch datasets.
+     */
+    ANONYMOUS,
+
+    /**
+     * Pages read on demand into a bounded {@link PagePool} and written back on eviction, for
+     * columns larger than physical memory. Memory use is capped by the pool size.
+     */
+    PAGED
+}
@@ -4,11 +4,14 @@ import com.quanta.util.Utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class VariableRegion extends Region {
 
     int curr;
-    int next, start, end;
+    long next, start, end;
 
     public VariableRegion() {
         this(4 * 1024 * 1024); // 4mb
@@ -31,28 +34,137 @@ public class VariableRegion extends Region {
 
     @Override
     protected void read() throws IOException {
-        next = blob.getInt(header_pos);
+        next = blob.getLong(header_pos);
         super.read();
+        appendBlock();
     }
 
-    private int cp(int width) throws IOException {
-        int e = next + width;
+    /**
+     * Links the blocks the writer allocated up to the one holding its append pointer, with their
+     * packed lengths, so values of packed blocks are decompressed. The header holds no separate
+     * committed value: the pointer only ever moves past values the published rows refer to.
+     */
+    @Override
+    protected void refresh(boolean published) throws IOException {
+        next = blob.getLong(header_pos);
+
+        // blocks are allocated in increasing order, the chain is followed until one ends past next
+        while (block_count == 0 || next > blocks[block_count - 1] + block_width) {
+            int known = block_count;
+            link(known + 1);
+            if (block_count == known)
+                break;
+        }
+        refreshPacked();
+        appendBlock();
+    }
+
+    private void appendBlock() {
+        // continue filling the block that holds the append pointer
+        for (int i = block_count - 1; i >= 0; i--) {
+            if (next >= blocks[i] && next <= blocks[i] + block_width) {
+                curr  = i;
+                start = blocks[i];
+                end   = start + block_width;
+                break;
+            }
+        }
+    }
+
+    @Override
+    protected void commit() throws IOException {
+        blob.putLong(header_pos, next);
+    }
+
+    @Override
+    public Region blank() {
+        return new VariableRegion(block_width);
+    }
+
+    @Override
+    public long liveBytes() {
+        return (long) (curr + 1) * (block_width + 16);
+    }
+
+    /**
+     * Copies blocks {@code 0..curr}, the last one up to the append pointer. Values keep their
+     * offset inside their block, see {@link #relocate(long, VariableRegion)}. Blocks before the
+     * last one are full, sealed, and packed when the target has {@link #compression(boolean)} on.
+     */
+    @Override
+    public void copyTo(Region target) throws IOException {
+        VariableRegion t = (VariableRegion) target;
+        byte[] buffer = new byte[COPY_BUFFER];
+        byte[] raw = null, out = null;
+
+        for (int i = 0; i <= curr; i++) {
+            if (i >= t.block_count)
+                t.alloc();
+
+            if (i < curr && (t.compress || isPacked(i))) {
+                if (raw == null) {
+                    raw = new byte[block_width];
+                    out = new byte[block_width];
+                }
+                readBlock(i, raw);
+
+                if (t.compress)
+                    t.pack(i, raw, out);
+                else
+                    t.blob.putBytes(t.blocks[i], raw, 0, block_width);
+            } else {
+                transfer(blocks[i], t, t.blocks[i], i == curr ? next - start : block_width, buffer);
+            }
+
+            if (i < curr)
+                t.seal(i);
+        }
+
+        t.curr  = curr;
+        t.start = t.blocks[curr];
+        t.end   = t.start + block_width;
+        t.next  = t.start + (next - start);
+    }
+
+    /**
+     * Position in {@code target}, filled by {@link #copyTo(Region)}, of the value stored at
+     * {@code pos} in this region. Blocks are allocated in increasing order, so the block holding
+     * {@code pos} is found by binary search.
+     */
+    public long relocate(long pos, VariableRegion target) {
+        int i = block(pos);
+        return target.blocks[i] + (pos - blocks[i]);
+    }
+
+    /** Block holding {@code pos}. */
+    private int block(long pos) {
+        int i = Arrays.binarySearch(blocks, 0, curr + 1, pos);
+        return i < 0 ? -i - 2 : i;
+    }
+
+    private long cp(int width) throws IOException {
+        long e = next + width;
         if (e >= start && e < end) {
-            int r = next;
+            long r = next;
             next = e;
-            blob.putInt(header_pos, next);
+            if (!write_behind)
+                blob.putLong(header_pos, next);
             return r;
         }
 
         int block_id = block_count;
         alloc();
 
+        // values never span blocks, the one being left is final
+        seal(curr);
+
         curr  = block_id;
         start = blocks[curr];
         end   = start + block_width;
 
         next = start + width;
-        blob.putLong(header_pos, next);
+        if (!write_behind)
+            blob.putLong(header_pos, next);
 
         return start;
     }
@@ -98,18 +210,18 @@ public class VariableRegion extends Region {
     }
     */
 
-    public int addString(String s) throws IOException {
-        byte[] b = s == null ? new byte[0] : s.getBytes();
+    public long addString(String s) throws IOException {
+        byte[] b = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
 
         return addBytes(b);
     }
 
-    public String getString(int pos) throws IOException {
-        return new String(getBytes(pos));
+    public String getString(long pos) throws IOException {
+        return new String(getBytes(pos), StandardCharsets.UTF_8);
     }
 
-    public int addBytes(byte[] v) throws IOException {
-        int p = cp(v.length + 4);
+    public long addBytes(byte[] v) throws IOException {
+        long p = cp(v.length + 4);
 
         blob.putInt(p, v.length);
         blob.putBytes(p + 4, v);
@@ -117,24 +229,52 @@ public class VariableRegion extends Region {
         return p;
     }
 
-    public byte[] getBytes(int pos) throws IOException {
+    public byte[] getBytes(long pos) throws IOException {
+        if (packed != null) {
+            int i = block(pos);
+            if (isPacked(i)) {
+                ByteBuffer b = unpack(i);
+                int offset = (int) (pos - blocks[i]);
+                byte[] v = new byte[b.getInt(offset)];
+                b.get(offset + 4, v);
+                return v;
+            }
+        }
+
         int len = blob.getInt(pos);
         return blob.getBytes(pos + 4, len);
     }
 
+    /**
+     * Compares the bytes stored at {@code pos} with {@code key} as unsigned bytes, reading them
+     * in place rather than copying them out as {@link #getBytes(long)} does.
+     */
+    public int compareBytes(long pos, byte[] key) throws IOException {
+        if (packed != null) {
+            int i = block(pos);
+            if (isPacked(i)) {
+                ByteBuffer b = unpack(i);
+                int offset = (int) (pos - blocks[i]);
+                return compareBytes(b, offset + 4, b.getInt(offset), key);
+            }
+        }
+
+        return compareBytes(pos + 4, blob.getInt(pos), key);
+    }
+
     public static void main(String[] args) throws IOException {
         // offline: Time to add : 57728
         // memory: Time to add : 182
         new File(Utils.USER_HOME + "/temp/vr_1").delete();
 
-        FixedRegion fr = new FixedRegion(4);
+        FixedRegion fr = new FixedRegion(8);
         VariableRegion vr = new VariableRegion();
 
         Blob blob = new MemoryBlob(Utils.USER_HOME + "/temp/vr_1", fr, vr);
 
         long start = System.currentTimeMillis();
         for (int i = 0; i < 1000; i++) {
-            int p = vr.addString("Label " + i);
+            long p = vr.addString("Label " + i);
             fr.addLong(p);
             if (i % 200 == 0)
                 System.out.println(">>>>> SIZE: " + i);
@@ -142,7 +282,7 @@ public class VariableRegion extends Region {
         System.out.println("Time to add : " + (System.currentTimeMillis() - start));
 
         for (int i = 995; i < 1000; i++) {
-            System.out.println(vr.getString(fr.getInt(i)));
+            System.out.println(vr.getString(fr.getLong(i)));
         }
     }
 }
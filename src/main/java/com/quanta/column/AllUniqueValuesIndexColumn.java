@@ -1,5 +1,6 @@
 package com.quanta.column;
 
+import com.quanta.blob.BlobFactory;
 import com.quanta.util.ByteBitSet;
 import com.quanta.util.JSONWriter;
 import com.quanta.data.DataAdapter;
@@ -9,11 +10,20 @@ import java.io.IOException;
 public class AllUniqueValuesIndexColumn<T> extends SortedColumn<T> {
 
     public AllUniqueValuesIndexColumn(String name, String file, DataAdapter<T> adapter) throws IOException {
-        super(name, adapter, Integer.MAX_VALUE);
+        this(name, file, adapter, new BlobFactory());
+    }
+
+    public AllUniqueValuesIndexColumn(String name, String file, DataAdapter<T> adapter, BlobFactory blobs) throws IOException {
+        super(name, adapter, Integer.MAX_VALUE, blobs);
 
         init(file, sortedValues.regions()[0]);
     }
 
+    @Override
+    protected long expectedSize(long rows) {
+        return super.expectedSize(rows) + rows * sortedValues.width;
+    }
+
     @Override
     public int getColumnType() {
         return 1;
@@ -25,6 +35,15 @@ public class AllUniqueValuesIndexColumn<T> extends SortedColumn<T> {
         sort(value, loc, true);
     }
 
+    @Override
+    public void recover(int rows) throws IOException {
+        boolean trimmed = size() > rows;
+        super.recover(rows);
+
+        if (trimmed || blob.needsRecovery() || sortedValues.size() != values.size())
+            resort();
+    }
+
     @Override
     protected void forValueId(ByteBitSet set, int valueId) throws IOException {
         set.set(valueId);
@@ -0,0 +1,158 @@
+package com.quanta.column;
+
+import com.quanta.blob.Advice;
+import com.quanta.blob.BlobFactory;
+import com.quanta.blob.Region;
+import com.quanta.data.BooleanAdapter;
+import com.quanta.util.ByteBitSet;
+import com.quanta.util.JSONWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A boolean column storing a bit per row, see {@link BooleanAdapter#BooleanAdapter(boolean)}.
+ * <p>
+ * The stored bits are the index: {@code eq(true)} copies them into the result a long at a time
+ * and {@code eq(false)} copies their complement, so there is no dictionary, row id region or
+ * bitmap to maintain, and a flag takes an eighth of the space of a byte per row.
+ * </p>
+ */
+public class BooleanColumn extends Column<Boolean> {
+
+    private final BooleanAdapter bits;
+
+    public BooleanColumn(String name, String file) throws IOException {
+        this(name, file, new BlobFactory());
+    }
+
+    public BooleanColumn(String name, String file, BlobFactory blobs) throws IOException {
+        this(name, file, new BooleanAdapter(true), blobs);
+    }
+
+    private BooleanColumn(String name, String file, BooleanAdapter adapter, BlobFactory blobs) throws IOException {
+        super(name, adapter, blobs);
+
+        this.bits = adapter;
+        init(file);
+    }
+
+    @Override
+    public int getColumnType() {
+        return 1;
+    }
+
+    @Override
+    protected Advice advice(Region region) {
+        // filters read the bits whole
+        return Advice.SEQUENTIAL;
+    }
+
+    @Override
+    protected int warmTier(Region region) {
+        return 0;
+    }
+
+    @Override
+    protected long expectedSize(long rows) {
+        return rows / 8 + Long.BYTES;
+    }
+
+    /**
+     * Rows holding true when {@code t}, false when {@code f}.
+     */
+    private ByteBitSet rows(boolean t, boolean f) throws IOException {
+        int size = size();
+        ByteBitSet set = new ByteBitSet(size);
+
+        if (t && f)
+            set.set(0, size);
+        else if (t || f)
+            bits.mark(t, size, set);
+
+        return set;
+    }
+
+    @Override
+    public ByteBitSet eq(List<Boolean> list) throws IOException {
+        return rows(list.contains(Boolean.TRUE), list.contains(Boolean.FALSE));
+    }
+
+    @Override
+    public ByteBitSet not(List<Boolean> list) throws IOException {
+        return rows(!list.contains(Boolean.TRUE), !list.contains(Boolean.FALSE));
+    }
+
+    @Override
+    public ByteBitSet gt(Boolean value) throws IOException {
+        return rows(!value, false);
+    }
+
+    @Override
+    public ByteBitSet lt(Boolean value) throws IOException {
+        return rows(false, value);
+    }
+
+    @Override
+    public ByteBitSet between(Boolean low, Boolean high) throws IOException {
+        return rows(high, !low);
+    }
+
+    @Override
+    public void writeMeta(JSONWriter json) throws IOException {
+        json.newObject();
+
+        json.write("name",    name);
+        json.write("index",   "yes");
+        json.write("is_fact", "false", false);
+        json.write("data",    "int");
+
+        json.newArray("values");
+        json.writeValue("false", false);
+        json.writeValue("true", false);
+        json.closeArray();
+
+        json.closeObject();
+    }
+
+    private static String[] labels(boolean t, boolean f) {
+        List<String> ans = new ArrayList<>(2);
+        if (f)
+            ans.add("false");
+        if (t)
+            ans.add("true");
+
+        return ans.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getAllLabels() {
+        return labels(true, true);
+    }
+
+    @Override
+    public String[] eqLabels(List<Boolean> list) {
+        return labels(list.contains(Boolean.TRUE), list.contains(Boolean.FALSE));
+    }
+
+    @Override
+    public String[] notEqLabels(List<Boolean> list) {
+        return labels(!list.contains(Boolean.TRUE), !list.contains(Boolean.FALSE));
+    }
+
+    @Override
+    public String[] gtLabels(Boolean item) {
+        return labels(!item, false);
+    }
+
+    @Override
+    public String[] ltLabels(Boolean item) {
+        return labels(false, item);
+    }
+
+    @Override
+    public String[] betweenLabels(Boolean one, Boolean two) {
+        return labels(two, !one);
+    }
+}
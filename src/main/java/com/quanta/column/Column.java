@@ -1,16 +1,27 @@
 package com.quanta.column;
 
 import com.quanta.util.JSONWriter;
+import com.quanta.blob.Advice;
+import com.quanta.blob.AnonymousBlob;
 import com.quanta.blob.Blob;
-import com.quanta.blob.MemoryBlob;
+import com.quanta.blob.BlobFactory;
 import com.quanta.blob.Region;
+import com.quanta.blob.VariableRegion;
 import com.quanta.data.DataAdapter;
+import com.quanta.data.Dictionary;
 import com.quanta.util.ByteBitSet;
 import com.quanta.util.Utils;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -23,10 +34,19 @@ public abstract class Column<T> implements Closeable {
     public final String name;
     protected Blob blob;
     protected DataAdapter<T> values;
+    protected final BlobFactory blobs;
+
+    private String file;
+    private Region[] regions;
 
     public Column(String name, DataAdapter<T> dataAdapter) {
+        this(name, dataAdapter, new BlobFactory());
+    }
+
+    public Column(String name, DataAdapter<T> dataAdapter, BlobFactory blobs) {
         this.name   = name;
         this.values = dataAdapter;
+        this.blobs  = blobs;
     }
 
     protected void init(String file, Region...regions) throws IOException {
@@ -41,7 +61,53 @@ public abstract class Column<T> implements Closeable {
         for (int i = 0, j = va.length; i < regions.length; i++, j++)
             rp[j] = regions[i];
 
-        blob = new MemoryBlob(file, rp);
+        this.file    = file;
+        this.regions = rp;
+        this.blob    = blobs.open(file, expectedSize(blobs.expectedRows()), rp);
+        adviseDefaults();
+    }
+
+    /**
+     * Access pattern of {@code region}, set when the column is opened. Values are fetched by row
+     * id while a query result is iterated, so they default to {@link Advice#RANDOM}.
+     */
+    protected Advice advice(Region region) {
+        return Advice.RANDOM;
+    }
+
+    /**
+     * True when the sealed blocks of {@code region} may be compressed by {@link #compact()}, see
+     * {@link BlobFactory#compression(boolean)}. Only regions that are appended to and read, never
+     * rewritten in place, qualify: by default the strings of a dictionary.
+     */
+    protected boolean compressible(Region region) {
+        return region instanceof VariableRegion;
+    }
+
+    private void adviseDefaults() throws IOException {
+        for (Region r : regions) {
+            r.advise(advice(r));
+        }
+    }
+
+    /**
+     * Applies {@code advice} to every region of the column, e.g. {@link Advice#DONT_NEED} for a
+     * column that will not be queried for a while.
+     */
+    public void advise(Advice advice) throws IOException {
+        for (Region r : regions) {
+            r.advise(advice);
+        }
+    }
+
+    /**
+     * Estimates the size of this column's file once it holds {@code rows} rows.
+     *
+     * @param rows expected number of rows, 0 when unknown
+     * @return expected file size in bytes, 0 when it cannot be estimated
+     */
+    protected long expectedSize(long rows) {
+        return values.width > 0 ? rows * values.width : 0;
     }
 
     private static final Pattern PRINT = Pattern.compile("\\P{Print}");
@@ -68,6 +134,140 @@ public abstract class Column<T> implements Closeable {
         return values.size();
     }
 
+    /**
+     * Writes the headers held back in write-behind mode, see {@link BlobFactory#checkpointRows(int)}.
+     */
+    public void commit() throws IOException {
+        blob.commit();
+    }
+
+    /**
+     * Forces the column file to disk.
+     */
+    public void force() throws IOException {
+        blob.force();
+    }
+
+    /**
+     * True when the column was not closed by its previous session.
+     */
+    public boolean needsRecovery() {
+        return blob.needsRecovery();
+    }
+
+    /**
+     * Picks up the rows a writer process committed since the last call, for a column opened
+     * read-only, see {@link BlobFactory#readOnly(boolean)}.
+     *
+     * @return true when new rows or index data became visible
+     */
+    public boolean refresh() throws IOException {
+        if (!blob.refresh())
+            return false;
+
+        values.refresh();
+        return true;
+    }
+
+    /**
+     * Brings the column back to {@code rows} rows after an unclean shutdown, dropping rows
+     * that were written after the last checkpoint of the dataset.
+     *
+     * @param rows number of rows every column of the dataset holds
+     */
+    public void recover(int rows) throws IOException {
+        if (size() > rows)
+            values.truncate(rows);
+    }
+
+    /**
+     * Warm-up tier of {@code region}, loaded in ascending order by {@code Quanta#warmUp}:
+     * 0 for index regions every filter reads, 1 for dictionaries, 2 for plain values.
+     */
+    protected int warmTier(Region region) {
+        return values instanceof Dictionary ? 1 : 2;
+    }
+
+    /**
+     * Regions of this column in warm-up tier {@code tier}, see {@link #warmTier(Region)}.
+     */
+    public List<Region> warmRegions(int tier) {
+        List<Region> list = new ArrayList<>();
+        for (Region r : regions) {
+            if (warmTier(r) == tier)
+                list.add(r);
+        }
+        return list;
+    }
+
+    /**
+     * Regions of this column in the order they are stored in its file.
+     */
+    public Region[] regions() {
+        return regions.clone();
+    }
+
+    /**
+     * Path of the column file.
+     */
+    public String file() {
+        return file;
+    }
+
+    /**
+     * Rewrites the column file with each region stored contiguously, dropping blocks left behind
+     * by rebuilds, truncation and recovery. The copy is written to a temporary file that then
+     * replaces the column file, so a crash leaves either the old or the new file in place.
+     * <p>
+     * Must not run concurrently with adds or queries on this column.
+     * </p>
+     */
+    public void compact() throws IOException {
+        if (blob instanceof AnonymousBlob)
+            return;
+
+        blob.commit();
+
+        Region[] targets = new Region[regions.length];
+        long expectedSize = (long) (regions.length + 1) * Region.HEADER_SIZE;
+
+        for (int i = 0; i < regions.length; i++) {
+            targets[i] = regions[i].blank();
+            targets[i].compression(blobs.compression() && compressible(regions[i]));
+            expectedSize += regions[i].liveBytes();
+        }
+
+        Path source = Paths.get(file);
+        Path temp   = Paths.get(file + ".compact");
+        Files.deleteIfExists(temp);
+
+        Blob target = blobs.open(temp.toString(), expectedSize, targets);
+        long used;
+
+        try {
+            for (int i = 0; i < regions.length; i++) {
+                regions[i].copyTo(targets[i]);
+            }
+            values.relocate(Arrays.copyOf(targets, values.regions().length));
+            target.commit();
+            target.force();
+            used = target.getLong(0);
+        } finally {
+            target.close();
+        }
+
+        // drop the growth reserve, the file grows again on the next append
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            if (channel.size() > used)
+                channel.truncate(used);
+        }
+
+        blob.close();
+        Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        blob = blobs.open(file, 0, regions);
+        adviseDefaults();
+    }
+
 
     public abstract int getColumnType();
 
@@ -1,38 +1,171 @@
 package com.quanta.column;
 
 
+import com.quanta.blob.Advice;
+import com.quanta.blob.BlobFactory;
 import com.quanta.data.*;
 import com.quanta.util.JSONWriter;
 import com.quanta.blob.FixedRegion;
+import com.quanta.blob.Region;
 import com.quanta.util.ByteBitSet;
 import com.quanta.util.Utils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import java.util.logging.Logger;
 
+/**
+ * Dictionary column with a bitmap index over the row ids.
+ * <p>
+ * For each value id the bitmap holds one bit per block of {@code bit_length} rows, set when the
+ * block contains the value, so a filter only reads the blocks that can match. {@link #rebuild()}
+ * builds it for the rows added so far; rows added later are scanned until the next rebuild.
+ * </p>
+ * <p>
+ * A rebuild writes a new bitmap next to the one in use and switches to it when complete, so
+ * filters running meanwhile keep reading a whole bitmap and never a half-written one. The
+ * bitmap region therefore holds up to two of them. Each starts with two longs,
+ * {@code [rows << 32 | uniques][bit_length << 32 | bit_words]}, and region attribute 0 keeps
+ * the position of the current one plus 1, 0 when there is none.
+ * </p>
+ * <p>
+ * Row ids of columns with up to {@link PackedIntAdapter#MAX_UNIQUE} values are bit-packed, see
+ * {@link PackedIntAdapter}; wider ones take 3 or 4 bytes per row.
+ * </p>
+ * <p>
+ * A run-length column stores its row ids as runs instead, see {@link RunLengthAdapter}, for data
+ * ingested sorted or clustered by the column. It has no bitmap: a filter marks each matching run
+ * as a range of rows, which is faster than reading blocks flagged by a bitmap.
+ * </p>
+ * <p>
+ * The id of a value is found through a hash table kept in a file next to the column's, see
+ * {@link ValueHash}, rather than by binary search over the sorted values.
+ * </p>
+ */
 public class IndexedColumn<T> extends SortedColumn<T> {
 
     private static final Logger logger = Logger.getLogger(IndexedColumn.class.getName());
 
+    /** Row ids unpacked at a time by rebuilds. */
+    private static final int SCAN_ROWS = 4096;
+
     private final int maxUnique;
+    private final boolean runLength;
     private final FixedWidthDataAdapter<Integer> rows;
     private final FixedRegion bitmap;
     private int uniques;
+    private volatile Bitmap index;
+    // held for reading by filters while they use a bitmap, see matcher()
+    private final ReadWriteLock retired = new ReentrantReadWriteLock();
+
+    // null for a file opened read-only before it had one
+    private final ValueHash<T> hash;
 
     public IndexedColumn(String name, String file, DataAdapter<T> adapter, int maxUnique) throws IOException {
-        super(name, adapter, maxUnique);
+        this(name, file, adapter, maxUnique, new BlobFactory());
+    }
+
+    public IndexedColumn(String name, String file, DataAdapter<T> adapter, int maxUnique, BlobFactory blobs) throws IOException {
+        this(name, file, adapter, maxUnique, false, blobs);
+    }
+
+    /**
+     * @param runLength true to store the row ids as runs, for rows added sorted or clustered by
+     *                  this column; must be the same every time the file is opened
+     */
+    public IndexedColumn(String name, String file, DataAdapter<T> adapter, int maxUnique, boolean runLength, BlobFactory blobs) throws IOException {
+        super(name, adapter, maxUnique, blobs);
+
+        FixedWidthDataAdapter<Integer> ids = maxUnique <= PackedIntAdapter.MAX_UNIQUE ? new PackedIntAdapter(maxUnique) : SmallIntAdapter.newAdapter(maxUnique);
 
         this.maxUnique = maxUnique;
-        this.rows = SmallIntAdapter.newAdapter(maxUnique);
+        this.runLength = runLength;
+        this.rows = runLength ? new RunLengthAdapter<>(ids) : ids;
         this.bitmap = new FixedRegion(8);
-        init(file, sortedValues.regions()[0], rows.regions()[0], bitmap);
+
+        Region[] r = rows.regions();
+        Region[] regions = new Region[r.length + 2];
+        regions[0] = sortedValues.regions()[0];
+        System.arraycopy(r, 0, regions, 1, r.length);
+        regions[r.length + 1] = bitmap;
+        init(file, regions);
 
         uniques = super.size();
 
-        optimalBitmap();
+        String hashFile = file + ".hash";
+        this.hash = blobs.readOnly() && !new File(hashFile).exists() ? null : new ValueHash<>(hashFile, values, blobs);
+        if (hash != null)
+            hash.sync();
+
+        loadBitmap();
+    }
+
+    /**
+     * Takes the bitmap stored by the last rebuild. Files from before bitmaps were located get
+     * none and are scanned until their next rebuild.
+     */
+    private void loadBitmap() throws IOException {
+        int base = bitmap.attribute(0) - 1;
+        if (base < 0) {
+            index = null;
+            return;
+        }
+
+        long counts = bitmap.getLong(base);
+        long layout = bitmap.getLong(base + 1);
+        index = new Bitmap(base, (int) (counts >>> 32), (int) counts, (int) (layout >>> 32), (int) layout);
+    }
+
+    @Override
+    public boolean refresh() throws IOException {
+        if (!super.refresh())
+            return false;
+
+        uniques = values.size();
+        rows.refresh();
+        if (hash != null)
+            hash.refresh();
+        loadBitmap();
+        return true;
+    }
+
+    /**
+     * Finds the id through the hash table of the values, see {@link ValueHash}, and through the
+     * sorted values when the table is behind them.
+     */
+    @Override
+    protected int valueId(T value) throws IOException {
+        if (hash == null || !hash.current())
+            return super.valueId(value);
+
+        int id = hash.find(value);
+        return id < 0 && hash.uncertain() ? super.valueId(value) : id;
+    }
+
+    @Override
+    public void commit() throws IOException {
+        super.commit();
+        if (hash != null)
+            hash.commit();
+    }
+
+    @Override
+    public void force() throws IOException {
+        super.force();
+        if (hash != null)
+            hash.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (hash != null)
+            hash.close();
     }
 
     @Override
@@ -40,6 +173,23 @@ public class IndexedColumn<T> extends SortedColumn<T> {
         return rows.size();
     }
 
+    @Override
+    protected Advice advice(Region region) {
+        // forValueId and the range filters scan the row ids block by block
+        return region == rows.regions()[0] ? Advice.SEQUENTIAL : super.advice(region);
+    }
+
+    @Override
+    protected int warmTier(Region region) {
+        return region == bitmap || region == rows.regions()[0] ? 0 : super.warmTier(region);
+    }
+
+    @Override
+    protected long expectedSize(long rows) {
+        // only the row ids grow with the row count, the dictionary and bitmap stay small
+        return runLength ? 0 : rows * this.rows.width;
+    }
+
     @Override
     public int getColumnType() {
         return 1;
@@ -50,11 +200,9 @@ public class IndexedColumn<T> extends SortedColumn<T> {
         lock.lock();
 
         try {
-            // find id from sorted data
-            int valueId  = 0;
-            int sortedId = search(value);
+            int valueId = valueId(value);
 
-            if (sortedId < 0) {
+            if (valueId < 0) {
                 // if does not exist in sorted data
                 // then add to it and sort data
                 valueId = values.add(value);
@@ -63,9 +211,8 @@ public class IndexedColumn<T> extends SortedColumn<T> {
                 if (sortedValues.size() != values.size()) {
                     throw new IllegalStateException("Something went wrong");
                 }
+                hash.add(value, valueId);
                 uniques++;
-            } else {
-                valueId = sortedValues.get(sortedId);
             }
 
             rows.add(valueId);
@@ -77,6 +224,25 @@ public class IndexedColumn<T> extends SortedColumn<T> {
         }
     }
 
+    @Override
+    public void recover(int rows) throws IOException {
+        // values without rows stay in the dictionary, only the row ids are trimmed
+        if (this.rows.size() > rows)
+            this.rows.truncate(rows);
+
+        if (blob.needsRecovery() || sortedValues.size() != values.size())
+            resort();
+        if (hash != null)
+            hash.sync();
+
+        uniques = values.size();
+
+        // a bitmap covering more rows than survived is ignored, the rows are scanned instead
+        loadBitmap();
+        if (index != null && index.rows() > rows)
+            index = null;
+    }
+
     @Override
     public T get(int index) throws IOException {
         int uid = rows.getInt(index);
@@ -113,9 +279,65 @@ public class IndexedColumn<T> extends SortedColumn<T> {
 
     @Override
     protected void forValueId(ByteBitSet set, int valueId) throws IOException {
+        forValueIds(set, size(), new int[] {valueId}, 1);
+    }
+
+    @Override
+    protected void forValueIds(ByteBitSet set, int limit, int[] ids, int count) throws IOException {
+        matcher().mark(set, limit, ids, count);
+    }
+
+    /**
+     * Matches against the current bitmap. It stays readable until the matcher has run: the
+     * matcher holds a read lock of {@link #retired}, which a rebuild drains before reusing the
+     * space of older bitmaps.
+     */
+    @Override
+    protected Matcher matcher() {
+        Lock reading = retired.readLock();
+        reading.lock();
+        Bitmap b = index;
+
+        return (set, limit, ids, count) -> {
+            try {
+                forValueIds(set, b, limit, ids, count);
+            } finally {
+                reading.unlock();
+            }
+        };
+    }
+
+    /**
+     * Marks the rows below {@code limit} holding any of {@code ids[0..count)}: from the blocks
+     * flagged by {@code b}, then by scanning the rows it does not cover.
+     */
+    private void forValueIds(ByteBitSet set, Bitmap b, int limit, int[] ids, int count) throws IOException {
+        int from = 0;
+
+        if (b != null) {
+            for (int i = 0; i < count; i++) {
+                // values added after the rebuild have no bits
+                if (ids[i] < b.uniques())
+                    forValueId(set, b, ids[i], Math.min(limit, b.rows()));
+            }
+            from = b.rows();
+        }
+
+        if (from < limit) {
+            // only the rows added since the rebuild are read in full, ask for them ahead
+            rows.advise(from, limit, Advice.WILL_NEED);
+            scan(set, from, limit, ids, count);
+        }
+    }
+
+    /**
+     * Marks the rows of {@code valueId} below {@code limit} in the blocks flagged by {@code b}.
+     */
+    private void forValueId(ByteBitSet set, Bitmap b, int valueId, int limit) throws IOException {
+        int bit_length = b.length();
+        int bit_words  = b.words();
         // Compute the base offset for this unique index in the bitmap.
-        int baseIndex = valueId * bit_words;
-        byte[] valueIdInBytes = rows.toBytes(valueId);
+        int baseIndex = b.base() + 2 + valueId * bit_words;
 
         // Loop over each 64‐bit word in the bitmap for this index.
         for (int y = bit_words - 1; y >= 0; y--) {
@@ -134,62 +356,40 @@ public class IndexedColumn<T> extends SortedColumn<T> {
                     // Compute the starting row index for this block.
                     int blockStart = blockStartOffset + (bitPos * bit_length);
                     // Determine the end index for this block.
-                    int blockEnd = Math.min(blockStart + bit_length, size());
-                    int count = blockEnd - blockStart;
-
-                    // Read the contiguous block of raw bytes.
-                    byte[] rawData = rows.getRawBytes(blockStart, count);
-                    // Process the block in one go.
-                    processBlockRaw(rawData, blockStart, count, valueIdInBytes, rows.width, set);
-//                    // Retrieve all the values for this block at once.
-//                    int[] blockValues = rows.getInts(blockStart, count);
-//
-//                    // Now, compare all values in the block to the provided index.
-//                    for (int i = 0; i < count; i++) {
-//                        if (blockValues[i] == valueId) {
-//                            set.set(blockStart + i);
-//                        }
-//                    }
+                    int blockEnd = Math.min(blockStart + bit_length, limit);
+                    if (blockEnd <= blockStart)
+                        continue;
+
+                    // Mark the matching rows of the block in one go.
+                    rows.mark(blockStart, blockEnd, valueId, set);
                 }
             }
         }
     }
 
     /**
-     * Scans the given raw byte array (representing a contiguous block of rows)
-     * for occurrences of the target value (given as raw bytes), and marks the corresponding
-     * row IDs in the result ByteBitSet.
-     *
-     * @param rawData      The raw byte array; its length should be (count * width).
-     * @param blockStartRow The starting row number corresponding to the first value in rawData.
-     * @param count        The number of rows (values) contained in rawData.
-     * @param targetRaw    The raw bytes (length == width) representing the target value.
-     * @param width        The number of bytes per value.
-     * @param set          The result ByteBitSet in which to mark matching row IDs.
+     * Marks the rows {@code from..limit-1} holding any of {@code ids[0..count)}, for the rows
+     * the bitmap does not cover yet.
      */
-    private void processBlockRaw(byte[] rawData, int blockStartRow, int count,
-                                 byte[] targetRaw, int width, ByteBitSet set) {
-        // Loop over each value in the block.
+    private void scan(ByteBitSet set, int from, int limit, int[] ids, int count) throws IOException {
+        if (count == 0)
+            return;
+
+        boolean[] match = new boolean[uniques + 1];
         for (int i = 0; i < count; i++) {
-            int offset = i * width;
-            boolean match = true;
-            // Compare the bytes for this value with targetRaw.
-            for (int j = 0; j < width; j++) {
-                if (rawData[offset + j] != targetRaw[j]) {
-                    match = false;
-                    break;
-                }
-            }
-            if (match) {
-                // If there's a match, mark the corresponding row.
-                set.set(blockStartRow + i);
-            }
+            if (ids[i] < match.length)
+                match[ids[i]] = true;
         }
+
+        rows.mark(from, limit, match, set);
     }
 
-    private void optimalBitmap() {
+    /**
+     * Rows per bitmap block for {@code size} rows of {@code uniques} values, keeping the bitmap
+     * under 40 MB.
+     */
+    private static int bitLength(int size, int uniques) {
         int maxBytes = 40 * 1024 * 1024;  // 40 MB
-        int size = rows.size();
 
         // Compute the minimal range required:
         double required = ((double) size * uniques) / (maxBytes * 8.0);
@@ -198,45 +398,74 @@ public class IndexedColumn<T> extends SortedColumn<T> {
         if (range < 50) {
             range = 50;
         }
-
-        int bits = size / range;
-        int bitWords = (bits + 63) / 64;
-
-        this.bit_length = range;
-        this.bit_words = bitWords;
+        return range;
     }
 
-
-    private int bit_length, bit_words;
-
+    /**
+     * Builds the bitmap of the rows added so far and switches filters to it.
+     * <p>
+     * The new bitmap is written where it cannot overlap the current one: at the start of the
+     * region when it fits before it, otherwise right after it. Filters keep using the current
+     * one until the switch, then rows past the new one are scanned as before.
+     * </p>
+     */
     public void rebuild() throws IOException {
-        bitmap.reset();
+        // rows first: every value id they hold is below the uniques read after
+        int size = rows.size();
+        int uniques = this.uniques;
+
+        // runs are filtered whole, a bitmap would only add reads
+        if (runLength) {
+            publish(null);
+            return;
+        }
 
         if (maxUnique > 30000 && uniques > maxUnique) {
             logger.warning("Column: " + this.name + " has more unique values: " + uniques + " than max: " + maxUnique);
+            publish(null);
             return;
         }
 
-        // Compute optimal bitmap parameters in one step.
-        optimalBitmap();
+        int bit_length = bitLength(size, uniques);
+        // one bit per block, counting the last partial one
+        int bits = (size + bit_length - 1) / bit_length;
+        int bit_words = (bits + 63) / 64;
+        int total = 2 + uniques * bit_words;
+
+        Bitmap old = index;
+        int base = old == null || old.base() >= total ? 0 : old.end();
+
+        // filters read the bitmap to use once they hold a read lock of retired, so once it is
+        // drained none still reads a bitmap older than the current one, whose space may be
+        // reused here
+        retired.writeLock().lock();
+        retired.writeLock().unlock();
 
         // Allocate space for the bitmap: one contiguous block for each unique value,
-        // each needing 'bit_words' 64-bit longs.
-        int total = uniques * bit_words;
-        for (int i = 0; i < total; i++) {
+        // each needing 'bit_words' 64-bit longs. Space reused from an old bitmap is cleared.
+        int filled = bitmap.size();
+        for (int i = base; i < Math.min(filled, base + total); i++) {
+            bitmap.replace(bitmap.rp(i), 0L);
+        }
+        for (int i = filled; i < base + total; i++) {
             bitmap.addLong(0L);
         }
 
-        int size = rows.size();
         int x, y;
         // Cache previous unique value and block index to avoid repeated lookups.
         int px = -1, py = -1;
         long word = 0;
-        int last = 0;
+        long last = 0;
 
-        // Process rows in reverse order.
+        int[] run = new int[Math.max(1, Math.min(size, SCAN_ROWS))];
+
+        // Process rows in reverse order, a run of row ids at a time.
         for (int i = size - 1; i >= 0; i--) {
-            x = rows.getInt(i);      // unique value index
+            int r = i % run.length;
+            if (r == run.length - 1 || i == size - 1)
+                rows.getInts(i - r, r + 1, run);
+
+            x = run[r];              // unique value index
             y = i / bit_length;      // block number
 
             // Only update the word if either the unique value or block has changed.
@@ -245,8 +474,8 @@ public class IndexedColumn<T> extends SortedColumn<T> {
                 py = y;
                 // Compute the location in the bitmap.
                 // The bitmap is organized by unique value, each with 'bit_words' words.
-                // The index into the bitmap is: (x * bit_words) + (y / 64)
-                last = bitmap.rp(x * bit_words + (y / 64));
+                // The index into the bitmap is: base + 2 + (x * bit_words) + (y / 64)
+                last = bitmap.rp(base + 2 + x * bit_words + (y / 64));
                 word = bitmap.longAt(last);
             }
 
@@ -254,6 +483,35 @@ public class IndexedColumn<T> extends SortedColumn<T> {
             word |= (1L << (y % 64));
             bitmap.replace(last, word);
         }
+
+        bitmap.replace(bitmap.rp(base), (long) size << 32 | uniques);
+        bitmap.replace(bitmap.rp(base + 1), (long) bit_length << 32 | bit_words);
+
+        publish(new Bitmap(base, size, uniques, bit_length, bit_words));
+    }
+
+    /**
+     * Switches filters to {@code b}, null to scan every row.
+     */
+    private void publish(Bitmap b) {
+        lock.lock();
+
+        try {
+            index = b;
+            bitmap.attribute(0, b == null ? 0 : b.base() + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One bitmap built by {@link #rebuild()}, covering the first {@code rows} rows and value ids
+     * below {@code uniques}. Its words follow the two header longs at {@code base}.
+     */
+    private record Bitmap(int base, int rows, int uniques, int length, int words) {
+        int end() {
+            return base + 2 + uniques * words;
+        }
     }
 
 
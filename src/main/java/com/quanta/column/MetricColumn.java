@@ -1,24 +1,61 @@
 package com.quanta.column;
 
+import com.quanta.blob.Advice;
+import com.quanta.blob.BlobFactory;
+import com.quanta.blob.Region;
 import com.quanta.data.DataAdapter;
+import com.quanta.data.DecimalAdapter;
+import com.quanta.data.DoubleAdapter;
+import com.quanta.data.FixedWidthDataAdapter;
+import com.quanta.data.IntAdapter;
+import com.quanta.data.LongAdapter;
+import com.quanta.data.SmallIntAdapter;
+import com.quanta.data.TimestampAdapter;
 import com.quanta.util.ByteBitSet;
 import com.quanta.util.JSONWriter;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.List;
 
 public class MetricColumn<T> extends Column<T> {
 
+    // rows read at a time by sum()
+    private static final int RUN = 4096;
+
     public MetricColumn(String name, String file, DataAdapter<T> adapter) throws IOException {
-        super(name, adapter);
+        this(name, file, adapter, new BlobFactory());
+    }
+
+    public MetricColumn(String name, String file, DataAdapter<T> adapter, BlobFactory blobs) throws IOException {
+        super(name, adapter, blobs);
 
         init(file);
     }
+    @Override
+    public void add(T value) throws IOException {
+        // rows carry decimals as doubles or strings, and the ingest log replays them as strings
+        super.add(values.parse(value));
+    }
+
     @Override
     public int getColumnType() {
         return 5;
     }
 
+    @Override
+    protected Advice advice(Region region) {
+        // metrics are mostly read by full scans
+        return Advice.SEQUENTIAL;
+    }
+
+    @Override
+    protected boolean compressible(Region region) {
+        // values are only appended, older extents are read by scans
+        return true;
+    }
+
     public double getDouble(int index) throws IOException {
         return (Double)super.values.get(index);
     }
@@ -26,6 +63,105 @@ public class MetricColumn<T> extends Column<T> {
         return (Integer)super.values.get(index);
     }
 
+    /**
+     * Sums the values of the rows set in {@code rows} below {@code limit}. Runs of rows holding
+     * a set bit are read whole, through the streaming decoder of encoded doubles; int and
+     * decimal values are added up exactly by {@link #total(ByteBitSet, int)}.
+     */
+    public double sum(ByteBitSet rows, int limit) throws IOException {
+        if (!(values instanceof DoubleAdapter doubles))
+            return total(rows, limit).doubleValue();
+
+        limit = Math.min(limit, values.size());
+
+        double[] run = new double[RUN];
+        double sum = 0;
+
+        for (int from = rows.nextSetBit(0); from >= 0 && from < limit; from = rows.nextSetBit(from)) {
+            int n = Math.min(RUN, limit - from);
+            doubles.getDoubles(from, n, run);
+
+            for (int i = 0; i < n; i++) {
+                if (rows.get(from + i))
+                    sum += run[i];
+            }
+            from += n;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Exact sum of the values of the rows set in {@code rows} below {@code limit}. Int, long and
+     * decimal values are added as longs, the unscaled ones for decimals, doubles are summed by
+     * {@link #sum(ByteBitSet, int)}.
+     *
+     * @throws UnsupportedOperationException when the values of the column cannot be added up
+     */
+    public BigDecimal total(ByteBitSet rows, int limit) throws IOException {
+        if (values instanceof DoubleAdapter)
+            return BigDecimal.valueOf(sum(rows, limit));
+
+        LongRuns runs = longRuns();
+        limit = Math.min(limit, values.size());
+
+        long[] run = new long[RUN];
+        BigInteger carried = BigInteger.ZERO;
+        long sum = 0;
+
+        for (int from = rows.nextSetBit(0); from >= 0 && from < limit; from = rows.nextSetBit(from)) {
+            int n = Math.min(RUN, limit - from);
+            runs.get(from, n, run);
+
+            for (int i = 0; i < n; i++) {
+                if (rows.get(from + i)) {
+                    long v = run[i], s = sum + v;
+                    // the sum moves to the BigInteger before it overflows
+                    if (((sum ^ s) & (v ^ s)) < 0) {
+                        carried = carried.add(BigInteger.valueOf(sum));
+                        s = v;
+                    }
+                    sum = s;
+                }
+            }
+            from += n;
+        }
+
+        return new BigDecimal(carried.add(BigInteger.valueOf(sum)), values instanceof DecimalAdapter d ? d.scale() : 0);
+    }
+
+    /**
+     * Reads {@code count} values from {@code fromRow} into {@code dst} as longs.
+     */
+    private interface LongRuns {
+        void get(int fromRow, int count, long[] dst) throws IOException;
+    }
+
+    /**
+     * Reader of the values as longs for {@link #total(ByteBitSet, int)}, picked by adapter: the
+     * unscaled longs of decimals, the longs of long and timestamp values, widened ints.
+     */
+    private LongRuns longRuns() {
+        if (values instanceof DecimalAdapter decimals)
+            return decimals::getUnscaled;
+        if (values instanceof LongAdapter longs)
+            return longs::getLongs;
+        if (values instanceof TimestampAdapter stamps)
+            return stamps::getLongs;
+
+        if (values instanceof IntAdapter || values instanceof SmallIntAdapter) {
+            FixedWidthDataAdapter<?> ints = (FixedWidthDataAdapter<?>) values;
+            int[] run = new int[RUN];
+
+            return (fromRow, count, dst) -> {
+                ints.getInts(fromRow, count, run);
+                for (int i = 0; i < count; i++)
+                    dst[i] = run[i];
+            };
+        }
+        throw new UnsupportedOperationException("Cannot total the " + values.getClass().getSimpleName() + " values of metric column " + name);
+    }
+
     @Override
     public ByteBitSet eq(List<T> values) throws IOException {
         throw new UnsupportedOperationException("This operation is not supported on FactColumn");
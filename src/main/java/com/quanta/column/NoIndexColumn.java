@@ -1,7 +1,9 @@
 package com.quanta.column;
 
 import com.quanta.util.JSONWriter;
+import com.quanta.blob.BlobFactory;
 import com.quanta.data.DataAdapter;
+import com.quanta.data.RunLengthAdapter;
 import com.quanta.util.ByteBitSet;
 
 import java.io.IOException;
@@ -11,7 +13,11 @@ public class NoIndexColumn<T> extends Column<T> {
 
 
     public NoIndexColumn(String name, String file, DataAdapter<T> adapter) throws IOException {
-        super(name, adapter);
+        this(name, file, adapter, new BlobFactory());
+    }
+
+    public NoIndexColumn(String name, String file, DataAdapter<T> adapter, BlobFactory blobs) throws IOException {
+        super(name, adapter, blobs);
 
         init(file);
     }
@@ -20,14 +26,30 @@ public class NoIndexColumn<T> extends Column<T> {
         return 0;
     }
 
+    /**
+     * Supported for values stored as runs, see {@link RunLengthAdapter}: each matching run is
+     * marked as a range of rows.
+     */
     @Override
     public ByteBitSet eq(List<T> list) throws IOException {
-        throw new UnsupportedOperationException("");
+        if (!(values instanceof RunLengthAdapter<T> runs))
+            throw new UnsupportedOperationException("");
+
+        int size = size();
+        ByteBitSet set = new ByteBitSet(size);
+
+        for (T value : list) {
+            runs.mark(0, size, value, set);
+        }
+        return set;
     }
 
     @Override
     public ByteBitSet not(List<T> list) throws IOException {
-        throw new UnsupportedOperationException("");
+        ByteBitSet set = eq(list);
+        set.not();
+
+        return set;
     }
 
     @Override
@@ -1,11 +1,14 @@
 package com.quanta.column;
 
+import com.quanta.blob.BlobFactory;
+import com.quanta.blob.Region;
 import com.quanta.data.DataAdapter;
 import com.quanta.data.FixedWidthDataAdapter;
 import com.quanta.data.SmallIntAdapter;
 import com.quanta.util.ByteBitSet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -18,11 +21,21 @@ public abstract class SortedColumn<T> extends Column<T> {
     protected Lock lock;
 
     public SortedColumn(String name, DataAdapter<T> adapter, int maxUnique) {
-        super(name, adapter);
+        this(name, adapter, maxUnique, new BlobFactory());
+    }
+
+    public SortedColumn(String name, DataAdapter<T> adapter, int maxUnique, BlobFactory blobs) {
+        super(name, adapter, blobs);
         this.lock = new ReentrantLock();
         this.sortedValues = SmallIntAdapter.newAdapter(maxUnique);
     }
 
+    @Override
+    protected int warmTier(Region region) {
+        // the sorted values and the values are the column's dictionary
+        return 1;
+    }
+
     protected void sort(T input, int index, boolean ensureUnique) throws IOException {
         if (index == 0) {
             sortedValues.add(index);
@@ -33,22 +46,21 @@ public abstract class SortedColumn<T> extends Column<T> {
             int high = size - 1;
 
             int mid_id = 0;
-            T mid_val;
             int compare = 0;
+            Object key = values.key(input);
 
             while (low <= high) {
                 int mid = (low + high) >>> 1;
                 //System.out.println(low + " : " + high + " : " + mid);
                 mid_id  = sortedValues.get(mid);
-                mid_val = values.get(mid_id);
-                compare = values.compare(mid_val, input);
+                compare = values.compareAt(mid_id, key);
 
                 if (compare < 0)
                     low = mid + 1;
                 else if (compare > 0)
                     high = mid - 1;
                 else if (ensureUnique) {
-                    throw new IllegalStateException("Column:" + this.name + ", Key: " + input + ", Unique key violation index: " + mid_id + ":" + mid_val + ", repeat index: " + index);
+                    throw new IllegalStateException("Column:" + this.name + ", Key: " + input + ", Unique key violation index: " + mid_id + ":" + values.get(mid_id) + ", repeat index: " + index);
                 } else {
                     break;
                 }
@@ -72,6 +84,28 @@ public abstract class SortedColumn<T> extends Column<T> {
     }
 
 
+    /**
+     * Rebuilds the sorted ids from the values. Inserts shift the sorted ids in place, so after
+     * an unclean shutdown they cannot be trusted past the last checkpoint.
+     */
+    protected void resort() throws IOException {
+        int size = values.size();
+        List<T> all = new ArrayList<>(size);
+        List<Integer> ids = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            all.add(values.get(i));
+            ids.add(i);
+        }
+
+        ids.sort((a, b) -> values.compare(all.get(a), all.get(b)));
+
+        sortedValues.truncate(0);
+        for (int id : ids) {
+            sortedValues.add(id);
+        }
+    }
+
     protected void printSortedTable() throws IOException {
         //unique + 1;
         for (int i = 0; i < sortedValues.size(); i++) {
@@ -90,8 +124,9 @@ public abstract class SortedColumn<T> extends Column<T> {
         int high = values.size() - 1;
 
         int mid_id = 0;
-        T mid_val = null;
         int compare = 0;
+        // encoded once, compared with the stored values without decoding them
+        Object key = values.key(value);
 
         //printSortedTable();
 
@@ -99,10 +134,9 @@ public abstract class SortedColumn<T> extends Column<T> {
             int mid = (low + high) >>> 1;
             mid_id  = sortedValues.get(mid);
 
-            mid_val = values.get(mid_id);
-            compare = values.compare(mid_val, value);
+            compare = values.compareAt(mid_id, key);
 
-            //System.out.println(low + ", " + high + ", " + mid + ", id:" + mid_id + ", v:" + mid_val + " comp:" + compare );
+            //System.out.println(low + ", " + high + ", " + mid + ", id:" + mid_id + " comp:" + compare );
 
             if (compare < 0)
                 low = mid + 1;
@@ -116,23 +150,54 @@ public abstract class SortedColumn<T> extends Column<T> {
         return -(low + 1);  // key not found.
     }
 
+    /**
+     * Id of {@code value}, -1 when the column does not hold it.
+     */
+    protected int valueId(T value) throws IOException {
+        int search = search(value);
+        return search > -1 ? sortedValues.get(search) : -1;
+    }
+
+    /**
+     * Marks the rows of value ids for a filter, as the column was when {@link #matcher()} was
+     * called. Filters resolve their value ids and take a matcher under the lock, then release it
+     * before reading the rows, so they do not hold up {@link #add(Object)}.
+     */
+    protected interface Matcher {
+        void mark(ByteBitSet result, int limit, int[] ids, int count) throws IOException;
+    }
+
+    /**
+     * Matcher of the rows as they are now, called under the lock right before the filter runs it
+     * and releases the lock. Rows are only appended, so by default the live rows are read.
+     */
+    protected Matcher matcher() {
+        return this::forValueIds;
+    }
+
     @Override
     public final ByteBitSet eq(List<T> list) throws IOException {
+        int size;
+        int[] ids = new int[list.size()];
+        int count = 0;
+        Matcher matcher;
+
         lock.lock();
         try {
-            ByteBitSet set = new ByteBitSet(size());
-
+            size = size();
             for (T val : list) {
-                int search = search(val);
-                if (search > -1)
-                    forValueId(set, sortedValues.get(search));
-                    //set.set(sorted.getInt(search));
+                int id = valueId(val);
+                if (id > -1)
+                    ids[count++] = id;
             }
-
-            return set;
+            matcher = matcher();
         } finally {
             lock.unlock();
         }
+
+        ByteBitSet set = new ByteBitSet(size);
+        matcher.mark(set, size, ids, count);
+        return set;
     }
 
     @Override
@@ -145,66 +210,99 @@ public abstract class SortedColumn<T> extends Column<T> {
 
     protected abstract void forValueId(ByteBitSet result, int valueId) throws IOException;
 
+    /**
+     * Marks the rows below {@code limit} that hold any of the value ids {@code ids[0..count)}.
+     * Calls {@link #forValueId(ByteBitSet, int)} for each id unless a subclass can do better.
+     */
+    protected void forValueIds(ByteBitSet result, int limit, int[] ids, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            forValueId(result, ids[i]);
+        }
+    }
+
+    /**
+     * Value ids at sorted positions {@code from..to}, inclusive, in that order.
+     */
+    private int[] sortedIds(int from, int to) throws IOException {
+        int step = from <= to ? 1 : -1;
+        int[] ids = new int[Math.abs(to - from) + 1];
+
+        for (int i = 0, s = from; i < ids.length; i++, s += step) {
+            ids[i] = sortedValues.get(s);
+        }
+        return ids;
+    }
+
     @Override
     public final ByteBitSet gt(T value) throws IOException {
+        int size;
+        int[] ids;
+        Matcher matcher;
+
         lock.lock();
         try {
-            //long start = System.currentTimeMillis();
-            int size = size();
-            ByteBitSet set = new ByteBitSet(size);
+            size = size();
             int search = Math.abs(search(value));
 
-            for (int i = search; i < values.size(); i++) {
-                //set.set(sorted.getInt(search));
-                forValueId(set, sortedValues.get(i));
-            }
-            //System.out.println(" - GT: " + (System.currentTimeMillis() - start));
-            return set;
+            ids = search < values.size() ? sortedIds(search, values.size() - 1) : new int[0];
+            matcher = matcher();
         } finally {
             lock.unlock();
         }
 
+        ByteBitSet set = new ByteBitSet(size);
+        matcher.mark(set, size, ids, ids.length);
+        return set;
     }
 
     @Override
     public final ByteBitSet lt(T value) throws IOException {
-        lock.lock();
+        int size;
+        int[] ids;
+        Matcher matcher;
 
+        lock.lock();
         try {
-            int size = size();
-            ByteBitSet set = new ByteBitSet(size);
+            size = size();
             int search = Math.abs(search(value));
 
-            for (int i = search; i > -1; i--) {
-                forValueId(set, sortedValues.get(i));
-            }
-            return set;
+            ids = sortedIds(search, 0);
+            matcher = matcher();
         } finally {
             lock.unlock();
         }
+
+        ByteBitSet set = new ByteBitSet(size);
+        matcher.mark(set, size, ids, ids.length);
+        return set;
     }
 
     @Override
     public final ByteBitSet between(T low, T high) throws IOException {
-        lock.lock();
+        int size;
+        int[] ids = new int[0];
+        Matcher matcher;
 
+        lock.lock();
         try {
-            int size = size();
-            ByteBitSet set = new ByteBitSet(size);
+            size = size();
             int from = Math.abs(search(low));
             int to   = Math.abs(search(high));
 
             if (from < sortedValues.size()) {
                 to = Math.min(to, sortedValues.size());
 
-                for (int i = from; i < to; i++) {
-                    forValueId(set, sortedValues.get(i));
-                }
+                if (from < to)
+                    ids = sortedIds(from, to - 1);
             }
-            return set;
+            matcher = matcher();
         } finally {
             lock.unlock();
         }
+
+        ByteBitSet set = new ByteBitSet(size);
+        matcher.mark(set, size, ids, ids.length);
+        return set;
     }
 
     public String[] eqLabels(List<T> list) throws IOException {
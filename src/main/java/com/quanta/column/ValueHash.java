@@ -0,0 +1,182 @@
+package com.quanta.column;
+
+import com.quanta.blob.Blob;
+import com.quanta.blob.BlobFactory;
+import com.quanta.blob.FixedRegion;
+import com.quanta.data.DataAdapter;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Open-addressing hash table from the values of a column to their value ids, so that finding the
+ * id of a value is a probe or two and one {@link DataAdapter#matches(int, Object)} instead of a
+ * binary search decoding a value at every step.
+ * <p>
+ * The table is kept in its own file next to the column file, as longs: the number of value ids
+ * it holds, then the slots, each {@code [hash << 32 | id + 1]} and 0 when empty, probed linearly.
+ * Ids are added in order, so the table holds ids {@code 0..count-1}. It is rebuilt from the
+ * values when its count differs from theirs or its file was not closed cleanly, and rehashed
+ * from the hashes in its slots at twice the size when half full.
+ * </p>
+ * <p>
+ * A reader of a dataset opened read-only may see the table while the writer rehashes it, so
+ * values it does not find there are looked up again by the column.
+ * </p>
+ */
+final class ValueHash<T> implements Closeable {
+
+    /** Slots of a new table. */
+    private static final int INITIAL = 1024;
+
+    private final DataAdapter<T> values;
+    private final FixedRegion table;
+    private final Blob blob;
+    private final boolean readOnly;
+
+    // set once the table was rebuilt, after which a crash of its previous session is moot
+    private boolean rebuilt;
+
+    ValueHash(String file, DataAdapter<T> values, BlobFactory blobs) throws IOException {
+        this.values   = values;
+        this.table    = new FixedRegion(Long.BYTES);
+        this.blob     = blobs.open(file, 0, table);
+        this.readOnly = blobs.readOnly();
+    }
+
+    private int count() throws IOException {
+        return table.size() == 0 ? 0 : (int) table.getLong(0);
+    }
+
+    private int capacity() {
+        return table.size() - 1;
+    }
+
+    /**
+     * True when the table holds every value id, readers fall back to the column otherwise.
+     */
+    boolean current() throws IOException {
+        return table.size() > 1 && count() == values.size();
+    }
+
+    /**
+     * True when a value the table does not find may still be held by the column.
+     */
+    boolean uncertain() {
+        return readOnly;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E37_79B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Id of {@code value}, -1 when the table does not hold it.
+     */
+    int find(T value) throws IOException {
+        int hash = values.hash(value);
+        int n = capacity();
+        int mask = n - 1;
+
+        for (int i = 0, s = spread(hash) & mask; i < n; i++, s = (s + 1) & mask) {
+            long slot = table.getLong(1 + s);
+            if (slot == 0)
+                return -1;
+
+            int id = (int) slot - 1;
+            if ((int) (slot >>> 32) == hash && values.matches(id, value))
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds {@code value}, just given id {@code id} by the column.
+     */
+    void add(T value, int id) throws IOException {
+        if (id != count() || table.size() <= 1) {
+            // ids were added without the table, it catches up from the values
+            sync();
+            return;
+        }
+
+        if (2L * (id + 1) > capacity()) {
+            rehash(capacity() * 2);
+        }
+
+        put(values.hash(value), id);
+        table.replace(table.rp(0), id + 1L);
+    }
+
+    private void put(int hash, int id) throws IOException {
+        int mask = capacity() - 1;
+        int s = spread(hash) & mask;
+
+        while (table.getLong(1 + s) != 0)
+            s = (s + 1) & mask;
+
+        table.replace(table.rp(1 + s), (long) hash << 32 | (id + 1));
+    }
+
+    /**
+     * Rebuilds the table at {@code capacity} slots from the hashes kept in its slots.
+     */
+    private void rehash(int capacity) throws IOException {
+        int n = capacity();
+        long[] slots = new long[n];
+        table.getLongs(1, n, slots);
+
+        clear(capacity);
+        for (long slot : slots) {
+            if (slot != 0)
+                put((int) (slot >>> 32), (int) slot - 1);
+        }
+    }
+
+    private void clear(int capacity) throws IOException {
+        long count = count();
+
+        table.truncate(0);
+        table.addLong(count);
+        for (int i = 0; i < capacity; i++)
+            table.addLong(0L);
+    }
+
+    /**
+     * Rebuilds the table from the values when it does not hold exactly their ids, or its file
+     * may hold slots lost in a crash.
+     */
+    void sync() throws IOException {
+        if (readOnly || (current() && (rebuilt || !blob.needsRecovery())))
+            return;
+
+        int n = values.size();
+        int capacity = INITIAL;
+        while (capacity < 2L * n)
+            capacity *= 2;
+
+        clear(capacity);
+        for (int id = 0; id < n; id++)
+            put(values.hash(values.get(id)), id);
+        table.replace(table.rp(0), (long) n);
+        rebuilt = true;
+    }
+
+    void refresh() throws IOException {
+        blob.refresh();
+    }
+
+    void commit() throws IOException {
+        blob.commit();
+    }
+
+    void force() throws IOException {
+        blob.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        blob.close();
+    }
+}
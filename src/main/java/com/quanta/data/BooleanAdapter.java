@@ -1,11 +1,68 @@
 package com.quanta.data;
 
+import com.quanta.util.ByteBitSet;
+
 import java.io.IOException;
 import java.sql.Types;
 
+/**
+ * Booleans stored a byte per row, or a bit per row in bit files.
+ * <p>
+ * A bit file holds longs: the row count, then the rows, 64 per long from the low bit up, the
+ * layout of {@link ByteBitSet}. The stored longs are then the index of the column: a filter
+ * copies them, or their complement, into its result, see {@link #mark(boolean, int, ByteBitSet)}.
+ * Rows a count holds past the stored longs were written after the last commit and are dropped
+ * with them.
+ * </p>
+ */
 public class BooleanAdapter extends FixedWidthDataAdapter<Boolean> {
+
+    // longs read at a time by mark()
+    private static final int RUN = 1024;
+
+    // rows of a bit file, -1 until read from its first long
+    private volatile int rows = -1;
+
     public BooleanAdapter() {
+        this(false);
+    }
+
+    /**
+     * @param bits true to store the rows of new files a bit per row; bit rows are only
+     *             appended. Files written a byte per row are still read as such.
+     */
+    public BooleanAdapter(boolean bits) {
         super(1, false);
+
+        if (bits)
+            data.width(Long.BYTES);
+    }
+
+    /** False for files written a byte per row. */
+    private boolean bits() {
+        return data.width() == Long.BYTES;
+    }
+
+    private int rows() throws IOException {
+        int n = rows;
+        if (n < 0) {
+            int words = data.size();
+            n = words == 0 ? 0 : (int) Math.min(data.getLong(0), (words - 1) * (long) Long.SIZE);
+            rows = n;
+        }
+        return n;
+    }
+
+    @Override
+    public int size() {
+        if (!bits())
+            return super.size();
+
+        try {
+            return rows();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
@@ -15,19 +72,116 @@ public class BooleanAdapter extends FixedWidthDataAdapter<Boolean> {
 
     @Override
     public int add(Boolean value) throws IOException {
-        int s = data.size();
-        data.addBoolean(value);
-        return s;
+        if (!bits()) {
+            int s = data.size();
+            data.addBoolean(value);
+            return s;
+        }
+
+        if (data.size() == 0)
+            data.addLong(0L);
+
+        int k = rows();
+        int w = 1 + k / Long.SIZE;
+        int off = k % Long.SIZE;
+        long bit = value ? 1L : 0L;
+
+        // longs and bits past the rows were left by a write cut short
+        if (data.size() > w + (off == 0 ? 0 : 1))
+            data.truncate(w + (off == 0 ? 0 : 1));
+
+        if (off == 0) {
+            data.addLong(bit);
+        } else {
+            long pos = data.rp(w);
+            data.replace(pos, data.longAt(pos) & ~(-1L << off) | bit << off);
+        }
+
+        data.replace(data.rp(0), k + 1L);
+        rows = k + 1;
+
+        return k;
     }
 
     @Override
     public void insert(int index, Boolean value) throws IOException {
+        if (bits())
+            throw new UnsupportedOperationException("Bit rows are only appended");
         data.insert(index, value);
     }
 
     @Override
     public Boolean get(int index) throws IOException {
-        return data.getBoolean(index);
+        if (!bits())
+            return data.getBoolean(index);
+
+        if (index < 0 || index >= rows())
+            throw new ArrayIndexOutOfBoundsException("size: " + size() + ", index: " + index);
+
+        return (data.getLong(1 + index / Long.SIZE) >>> (index % Long.SIZE) & 1) != 0;
+    }
+
+    /**
+     * Sets in {@code set} the rows below {@code limit} holding {@code value}. Bit files are read
+     * a long, 64 rows, at a time.
+     */
+    public void mark(boolean value, int limit, ByteBitSet set) throws IOException {
+        limit = Math.min(limit, size());
+
+        if (!bits()) {
+            for (int i = 0; i < limit; i++) {
+                if (data.getBoolean(i) == value)
+                    set.set(i);
+            }
+            return;
+        }
+
+        int words = (limit + Long.SIZE - 1) / Long.SIZE;
+        long[] run = new long[Math.max(1, Math.min(words, RUN))];
+
+        for (int from = 0; from < words; from += run.length) {
+            int n = Math.min(run.length, words - from);
+            data.getLongs(1 + from, n, run);
+
+            for (int i = 0; i < n; i++) {
+                long w = value ? run[i] : ~run[i];
+                // rows past the limit in the last long
+                if (from + i == words - 1 && limit % Long.SIZE != 0)
+                    w &= -1L >>> (Long.SIZE - limit % Long.SIZE);
+                set.or(from + i, w);
+            }
+        }
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        if (!bits()) {
+            super.truncate(size);
+            return;
+        }
+
+        if (size >= size())
+            return;
+
+        int words = 1 + (size + Long.SIZE - 1) / Long.SIZE;
+        data.truncate(words);
+
+        // later adds OR their bits into the last long
+        if (size % Long.SIZE != 0) {
+            long pos = data.rp(words - 1);
+            data.replace(pos, data.longAt(pos) & -1L >>> (Long.SIZE - size % Long.SIZE));
+        }
+
+        data.replace(data.rp(0), (long) size);
+        rows = size;
+    }
+
+    /**
+     * Picks up the rows a writer process committed, after the region was refreshed.
+     */
+    @Override
+    public void refresh() {
+        rows = -1;
     }
 
     @Override
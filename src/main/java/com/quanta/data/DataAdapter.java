@@ -27,6 +27,27 @@ public abstract class DataAdapter<T> {
 
     public abstract T get(int index) throws IOException;
 
+    /**
+     * Drops every value from {@code size} on.
+     */
+    public void truncate(int size) throws IOException {
+        throw new UnsupportedOperationException("");
+    }
+
+    /**
+     * Rewrites positions that point into this adapter's own regions after they were compacted.
+     *
+     * @param targets copies of {@link #regions()}, in the same order
+     */
+    public void relocate(Region[] targets) throws IOException {
+    }
+
+    /**
+     * Picks up the rows a writer process committed, once the regions were refreshed.
+     */
+    public void refresh() throws IOException {
+    }
+
     //public abstract byte[] getBytes(int index) throws IOException;
 
     //public abstract byte[] toBytes(T value);
@@ -35,9 +56,36 @@ public abstract class DataAdapter<T> {
 
     public abstract int compare(T v1, T v2);
 
+    /**
+     * {@code value} in the form {@link #compareAt(int, Object)} takes, so that a search encodes
+     * it once rather than at every step. The value itself unless overridden along with
+     * {@code compareAt}.
+     */
+    public Object key(T value) {
+        return value;
+    }
+
+    /**
+     * Compares the value stored at {@code index} with the value {@code key} was made from by
+     * {@link #key(Object)}, as {@link #compare(Object, Object)} would. Adapters that can compare
+     * the stored bytes without decoding the value override it.
+     */
+    @SuppressWarnings("unchecked")
+    public int compareAt(int index, Object key) throws IOException {
+        return compare(get(index), (T) key);
+    }
+
+    /**
+     * True when the value stored at {@code index} equals {@code value}, as by
+     * {@link #compare(Object, Object)}.
+     */
+    public boolean matches(int index, T value) throws IOException {
+        return compareAt(index, key(value)) == 0;
+    }
+
     public String toString(T v) {
         return v == null ? "" : v.toString();
     }
 
     public abstract T parse(Object o);
-}
\ No newline at end of file
+}
\ No newline at end of file
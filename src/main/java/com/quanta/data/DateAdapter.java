@@ -0,0 +1,44 @@
+package com.quanta.data;
+
+import java.sql.Types;
+import java.time.LocalDate;
+
+/**
+ * Dates stored as their epoch day in 2 bytes, see {@link TimePrecision#DAYS}, a quarter of the
+ * space of {@link TimestampAdapter} rows.
+ */
+public class DateAdapter extends EpochAdapter<LocalDate> {
+
+    public DateAdapter() {
+        this("yyyy-MM-dd");
+    }
+
+    /**
+     * @param format pattern of {@link java.time.format.DateTimeFormatter} the values are parsed
+     *               from and formatted in
+     */
+    public DateAdapter(String format) {
+        super(LocalDate.class, format, TimePrecision.DAYS);
+    }
+
+    @Override
+    public int getDataType() {
+        return Types.DATE;
+    }
+
+    @Override
+    public long toEpoch(LocalDate value) {
+        return value.toEpochDay();
+    }
+
+    @Override
+    public LocalDate fromEpoch(long epoch) {
+        return LocalDate.ofEpochDay(epoch);
+    }
+
+    @Override
+    protected LocalDate parseText(String s) {
+        LocalDate date = iso && s.length() == 10 ? isoDate(s) : null;
+        return date != null ? date : LocalDate.parse(s, formatter);
+    }
+}
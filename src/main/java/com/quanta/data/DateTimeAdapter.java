@@ -0,0 +1,67 @@
+package com.quanta.data;
+
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Date-times stored as their epoch value at UTC in the width of the chosen precision: 4 bytes a
+ * row to the second, or 8 to the millisecond. Values have no time zone, they are stored and read
+ * back as given.
+ */
+public class DateTimeAdapter extends EpochAdapter<LocalDateTime> {
+
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    public DateTimeAdapter(TimePrecision precision) {
+        this("yyyy-MM-dd HH:mm:ss", precision);
+    }
+
+    /**
+     * @param format    pattern of {@link java.time.format.DateTimeFormatter} the values are parsed
+     *                  from and formatted in, values of a pattern without a time start the day
+     * @param precision the unit values are stored in, finer parts are dropped
+     */
+    public DateTimeAdapter(String format, TimePrecision precision) {
+        super(LocalDateTime.class, format, precision);
+    }
+
+    @Override
+    public int getDataType() {
+        return Types.TIMESTAMP;
+    }
+
+    @Override
+    public long toEpoch(LocalDateTime value) {
+        long seconds = value.toEpochSecond(ZoneOffset.UTC);
+
+        switch (precision) {
+            case DAYS:    return Math.floorDiv(seconds, SECONDS_PER_DAY);
+            case SECONDS: return seconds;
+            default:      return Math.addExact(Math.multiplyExact(seconds, 1000L), value.getNano() / 1_000_000);
+        }
+    }
+
+    @Override
+    public LocalDateTime fromEpoch(long epoch) {
+        switch (precision) {
+            case DAYS:    return LocalDate.ofEpochDay(epoch).atStartOfDay();
+            case SECONDS: return LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC);
+            default:      return LocalDateTime.ofEpochSecond(Math.floorDiv(epoch, 1000L),
+                                                             (int) Math.floorMod(epoch, 1000L) * 1_000_000, ZoneOffset.UTC);
+        }
+    }
+
+    @Override
+    protected LocalDateTime parseText(String s) {
+        LocalDateTime value = iso ? isoDateTime(s) : null;
+        if (value != null)
+            return value;
+
+        TemporalAccessor t = formatter.parse(s);
+        return t.isSupported(ChronoField.HOUR_OF_DAY) ? LocalDateTime.from(t) : LocalDate.from(t).atStartOfDay();
+    }
+}
@@ -0,0 +1,158 @@
+package com.quanta.data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.Types;
+
+/**
+ * Decimals of a declared precision and scale, such as amounts of money, stored as their unscaled
+ * longs: 12.34 at scale 2 is stored as 1234.
+ * <p>
+ * Rows are encoded as by {@link LongAdapter#LongAdapter(boolean)}, so amounts that stay within a
+ * few dollars of each other take a couple of bytes per row, and are only appended. Aggregations
+ * read the unscaled longs with {@link #getUnscaled(int, int, long[])} and add them up exactly.
+ * </p>
+ * <p>
+ * Values with more decimals than the scale are rejected, except doubles, which are rounded to it
+ * half even by {@link #parse(Object)} as they are not exact to begin with.
+ * </p>
+ */
+public class DecimalAdapter extends FixedWidthDataAdapter<BigDecimal> {
+
+    /** Most digits of a value, its unscaled value has to fit a long. */
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final int scale;
+
+    // smallest unscaled value with more than 'precision' digits
+    private final long limit;
+
+    private final FrameOfReference frames;
+
+    /**
+     * @param precision digits of a value, at most {@value #MAX_PRECISION}
+     * @param scale     digits after the decimal point, at most {@code precision}
+     */
+    public DecimalAdapter(int precision, int scale) {
+        super(Long.BYTES, false);
+
+        if (precision < 1 || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("Precision must be 1 to " + MAX_PRECISION + ": " + precision);
+        if (scale < 0 || scale > precision)
+            throw new IllegalArgumentException("Scale must be 0 to " + precision + ": " + scale);
+
+        this.precision = precision;
+        this.scale     = scale;
+        this.limit     = BigInteger.TEN.pow(precision).longValueExact();
+        this.frames    = new FrameOfReference(data, Long.SIZE);
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    @Override
+    public int getDataType() {
+        return Types.DECIMAL;
+    }
+
+    /**
+     * Returns {@code value} times 10^scale.
+     *
+     * @throws IllegalArgumentException if it has more decimals than the scale or more digits
+     *                                  than the precision
+     */
+    public long unscaled(BigDecimal value) {
+        BigDecimal scaled;
+        try {
+            scaled = value.setScale(scale, RoundingMode.UNNECESSARY);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("More than " + scale + " decimals: " + value);
+        }
+
+        BigInteger unscaled = scaled.unscaledValue();
+        long v = unscaled.longValue();
+        // Math.abs would leave Long.MIN_VALUE negative, so both bounds are compared
+        if (unscaled.bitLength() >= Long.SIZE || v <= -limit || v >= limit)
+            throw new IllegalArgumentException("More than " + precision + " digits: " + value);
+
+        return v;
+    }
+
+    @Override
+    public void insert(int index, BigDecimal value) {
+        throw new UnsupportedOperationException("Encoded rows are only appended");
+    }
+
+    @Override
+    public int add(BigDecimal value) throws IOException {
+        return frames.add(unscaled(value));
+    }
+
+    @Override
+    public BigDecimal get(int index) throws IOException {
+        return BigDecimal.valueOf(frames.get(index), scale);
+    }
+
+    public long getUnscaled(int index) throws IOException {
+        return frames.get(index);
+    }
+
+    /**
+     * Reads the unscaled values of {@code count} rows starting from {@code fromRow} into
+     * {@code dst}.
+     */
+    public void getUnscaled(int fromRow, int count, long[] dst) throws IOException {
+        frames.get(fromRow, count, dst, 0);
+    }
+
+    @Override
+    public int size() {
+        return frames.size();
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        frames.truncate(size);
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        frames.refresh();
+    }
+
+    @Override
+    public int hash(BigDecimal value) {
+        // equal for values compare() finds equal, whatever their scale
+        return value.stripTrailingZeros().hashCode();
+    }
+
+    @Override
+    public int compare(BigDecimal v1, BigDecimal v2) {
+        return v1.compareTo(v2);
+    }
+
+    @Override
+    public BigDecimal parse(Object o) {
+        if (o instanceof BigDecimal) {
+            return (BigDecimal) o;
+        } else if (o instanceof Double || o instanceof Float) {
+            return BigDecimal.valueOf(((Number) o).doubleValue()).setScale(scale, RoundingMode.HALF_EVEN);
+        } else if (o instanceof Integer || o instanceof Long) {
+            return BigDecimal.valueOf(((Number) o).longValue());
+        } else if (o instanceof String) {
+            return new BigDecimal(((String) o).trim());
+        } else if (o == null) {
+            throw new NullPointerException("");
+        } else {
+            throw new ClassCastException("Expected decimal, Actual: " + o.getClass());
+        }
+    }
+}
@@ -13,7 +13,7 @@ public class Dictionary extends DataAdapter<String> {
         super(-1, true);
 
         data = new VariableRegion();
-        list = new FixedRegion(maxWidth);
+        list = new FixedRegion(Long.BYTES);
     }
 
     @Override
@@ -21,6 +21,23 @@ public class Dictionary extends DataAdapter<String> {
         return list.size();
     }
 
+    @Override
+    public void truncate(int size) throws IOException {
+        // the string bytes stay behind, they are unreachable without their list entry
+        list.truncate(size);
+    }
+
+    @Override
+    public void relocate(Region[] targets) throws IOException {
+        FixedRegion l = (FixedRegion) targets[0];
+        VariableRegion d = (VariableRegion) targets[1];
+
+        for (int i = 0, n = l.size(); i < n; i++) {
+            long pos = l.rp(i);
+            l.replace(pos, data.relocate(l.longAt(pos), d));
+        }
+    }
+
     @Override
     public Region[] regions() {
         return new Region[] {list, data};
@@ -33,8 +50,8 @@ public class Dictionary extends DataAdapter<String> {
 
     @Override
     public int add(String value) throws IOException {
-        int pos = data.addString(value);
-        return list.addInt(pos);
+        long pos = data.addString(value);
+        return list.addLong(pos);
 
         //System.out.println(value + "\t" + pos + "\t" + i + "\t" + list.getLong(i));
         //return i;
@@ -42,10 +59,21 @@ public class Dictionary extends DataAdapter<String> {
 
     @Override
     public String get(int index) throws IOException {
-        int pos = list.getInt(index);
+        long pos = list.getLong(index);
         return data.getString(pos);
     }
 
+    @Override
+    public Object key(String value) {
+        return Utf8.encode(value);
+    }
+
+    @Override
+    public int compareAt(int index, Object key) throws IOException {
+        // the stored bytes, not a String decoded from them
+        return data.compareBytes(list.getLong(index), (byte[]) key);
+    }
+
     @Override
     public int hash(String value) {
         return value.hashCode();
@@ -53,7 +81,7 @@ public class Dictionary extends DataAdapter<String> {
 
     @Override
     public int compare(String v1, String v2) {
-        return v1.compareTo(v2);
+        return Utf8.compare(v1, v2);
     }
 
     @Override
@@ -5,12 +5,32 @@ import java.sql.Types;
 
 public class DoubleAdapter extends FixedWidthDataAdapter<Double> {
 
+    // null when rows are always stored raw
+    private final XorDoubles xor;
+
     public DoubleAdapter() {
+        this(false);
+    }
+
+    /**
+     * @param encoded true to store the rows of new files as the XOR of each value with the one
+     *                before, see {@link XorDoubles}; files written raw are still read and
+     *                appended raw
+     */
+    public DoubleAdapter(boolean encoded) {
         super(8, false);
+
+        this.xor = encoded ? new XorDoubles(data) : null;
+    }
+
+    private boolean encoded() throws IOException {
+        return xor != null && xor.active();
     }
 
     @Override
     public void insert(int index, Double value) throws IOException {
+        if (encoded())
+            throw new UnsupportedOperationException("Encoded rows are only appended");
         data.insert(index, Double.doubleToRawLongBits(value));
     }
 
@@ -21,16 +41,46 @@ public class DoubleAdapter extends FixedWidthDataAdapter<Double> {
 
     @Override
     public int add(Double value) throws IOException {
-        return data.addLong(Double.doubleToRawLongBits(value));
+        return encoded() ? xor.add(value) : data.addLong(Double.doubleToRawLongBits(value));
     }
 
     @Override
     public Double get(int index) throws IOException {
-        return Double.longBitsToDouble(data.getLong(index));
+        return getDouble(index);
     }
 
     public double getDouble(int index) throws IOException {
-        return Double.longBitsToDouble(data.getLong(index));
+        return encoded() ? xor.get(index) : Double.longBitsToDouble(data.getLong(index));
+    }
+
+    public void getDoubles(int fromRow, int count, double[] dst) throws IOException {
+        if (encoded())
+            xor.get(fromRow, count, dst);
+        else
+            data.getDoubles(fromRow, count, dst);
+    }
+
+    @Override
+    public int size() {
+        try {
+            return encoded() ? xor.size() : data.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        if (encoded())
+            xor.truncate(size);
+        else
+            data.truncate(size);
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        if (xor != null)
+            xor.refresh();
     }
 
     @Override
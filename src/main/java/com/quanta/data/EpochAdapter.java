@@ -0,0 +1,255 @@
+package com.quanta.data;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base of the java.time adapters, storing a value as a count of {@link TimePrecision} units
+ * since 1970-01-01, its epoch value, in the width of the precision.
+ * <p>
+ * Rows of {@link TimePrecision#DAYS} and {@link TimePrecision#SECONDS} are stored unsigned
+ * little-endian from the origin of the precision, as {@link SmallIntAdapter} stores its ints,
+ * and {@link TimePrecision#MILLIS} rows as signed longs. Their raw bytes therefore do not sort as
+ * the values do: rows are ordered by {@link #compareAt(int, Object)}, which compares the values
+ * read by {@link #getEpoch(int)}, without creating a value, never by comparing stored bytes.
+ * </p>
+ * <p>
+ * Formatters are immutable and shared by every adapter of a pattern, so values can be parsed and
+ * formatted by concurrent ingest and queries. Strings in the ISO shape
+ * {@code yyyy-MM-dd[ HH:mm[:ss[.S]]]}, with a space or a {@code T} before the time, are parsed
+ * by hand when the pattern is an ISO one, see {@link #isoDate(String)}.
+ * </p>
+ */
+public abstract class EpochAdapter<T extends TemporalAccessor> extends FixedWidthDataAdapter<T> {
+
+    private static final Map<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+
+    protected final TimePrecision precision;
+    protected final DateTimeFormatter formatter;
+
+    // true when the pattern formats values in the ISO shape isoDate and isoDateTime parse
+    protected final boolean iso;
+
+    private final Class<T> type;
+
+    protected EpochAdapter(Class<T> type, String format, TimePrecision precision) {
+        super(precision.width, true);
+
+        this.type      = type;
+        this.precision = precision;
+        this.formatter = FORMATTERS.computeIfAbsent(format, DateTimeFormatter::ofPattern);
+        this.iso       = format.replace("uuuu", "yyyy").matches("yyyy-MM-dd(( |'T')HH:mm(:ss(\\.S{1,9})?)?)?");
+    }
+
+    public TimePrecision precision() {
+        return precision;
+    }
+
+    /**
+     * Epoch value of {@code value}, in the unit of the precision.
+     */
+    public abstract long toEpoch(T value);
+
+    /**
+     * Value of the epoch value {@code epoch}, in the unit of the precision.
+     */
+    public abstract T fromEpoch(long epoch);
+
+    /**
+     * Parses {@code s} in the format of the adapter.
+     */
+    protected abstract T parseText(String s);
+
+    private byte[] toBytes(long epoch) {
+        long v = epoch - precision.origin;
+        int width = precision.width;
+
+        if (width == Long.BYTES) {
+            byte[] b = new byte[Long.BYTES];
+            for (int i = 0; i < Long.BYTES; i++)
+                b[i] = (byte) (v >>> (56 - 8 * i));
+            return b;
+        }
+
+        if (v < 0 || v >= 1L << (8 * width))
+            throw new IllegalArgumentException("Out of the range of " + precision + ": " + fromEpoch(epoch));
+
+        byte[] b = new byte[width];
+        for (int i = 0; i < width; i++)
+            b[i] = (byte) (v >>> (8 * i));
+        return b;
+    }
+
+    @Override
+    public byte[] toBytes(T value) {
+        return toBytes(toEpoch(value));
+    }
+
+    @Override
+    public void insert(int index, T value) throws IOException {
+        if (precision.width == Long.BYTES)
+            data.insert(index, toEpoch(value));
+        else
+            data.insert(index, toBytes(value));
+    }
+
+    @Override
+    public int add(T value) throws IOException {
+        return addEpoch(toEpoch(value));
+    }
+
+    /**
+     * Adds the value of the epoch value {@code epoch} without creating it.
+     */
+    public int addEpoch(long epoch) throws IOException {
+        if (precision.width == Long.BYTES)
+            return data.addLong(epoch);
+        return data.addBytes(toBytes(epoch));
+    }
+
+    @Override
+    public T get(int index) throws IOException {
+        return fromEpoch(getEpoch(index));
+    }
+
+    /**
+     * Epoch value of row {@code index}, in the unit of the precision.
+     */
+    public long getEpoch(int index) throws IOException {
+        if (precision.width == Long.BYTES)
+            return data.getLong(index);
+        return precision.origin + Integer.toUnsignedLong(data.getUnsigned(index));
+    }
+
+    /**
+     * Reads the epoch values of {@code count} rows starting from {@code fromRow} into {@code dst}.
+     */
+    public void getEpochs(int fromRow, int count, long[] dst) throws IOException {
+        if (precision.width == Long.BYTES) {
+            data.getLongs(fromRow, count, dst);
+            return;
+        }
+
+        int width = precision.width;
+        byte[] raw = new byte[Math.min(count, 4096) * width];
+
+        for (int done = 0; done < count; ) {
+            int n = Math.min(raw.length / width, count - done);
+            data.getRawBytes(fromRow + done, n, raw);
+
+            for (int i = 0, offset = 0; i < n; i++) {
+                long v = 0;
+                for (int j = 0; j < width; j++, offset++)
+                    v |= (raw[offset] & 0xFFL) << (8 * j);
+                dst[done + i] = precision.origin + v;
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public Object key(T value) {
+        return toEpoch(value);
+    }
+
+    @Override
+    public int compareAt(int index, Object key) throws IOException {
+        return Long.compare(getEpoch(index), (Long) key);
+    }
+
+    @Override
+    public int hash(T value) {
+        return Long.hashCode(toEpoch(value));
+    }
+
+    /**
+     * Compares values as stored, so values within a unit of the precision are equal.
+     */
+    @Override
+    public int compare(T v1, T v2) {
+        return Long.compare(toEpoch(v1), toEpoch(v2));
+    }
+
+    @Override
+    public String toString(T v) {
+        return v == null ? "" : formatter.format(v);
+    }
+
+    @Override
+    public T parse(Object o) {
+        if (type.isInstance(o)) {
+            return type.cast(o);
+        } else if (o instanceof String) {
+            return parseText(((String) o).trim());
+        } else if (o instanceof Long || o instanceof Integer) {
+            return fromEpoch(((Number) o).longValue());
+        } else if (o == null) {
+            throw new NullPointerException("");
+        } else {
+            throw new ClassCastException("Expected " + type.getSimpleName() + ", Actual: " + o.getClass());
+        }
+    }
+
+    /**
+     * Parses the date of a string in the ISO shape {@code yyyy-MM-dd...}, null when it has
+     * another shape. The date is checked by {@link LocalDate#of(int, int, int)}.
+     */
+    protected static LocalDate isoDate(String s) {
+        if (s.length() < 10 || s.charAt(4) != '-' || s.charAt(7) != '-')
+            return null;
+
+        int y = digits(s, 0, 4), m = digits(s, 5, 7), d = digits(s, 8, 10);
+        if ((y | m | d) < 0)
+            return null;
+        return LocalDate.of(y, m, d);
+    }
+
+    /**
+     * Parses a string in the ISO shape {@code yyyy-MM-dd[ HH:mm[:ss[.S]]]}, with a space or a
+     * {@code T} before the time, null when it has another shape.
+     */
+    protected static LocalDateTime isoDateTime(String s) {
+        int n = s.length();
+        LocalDate date = isoDate(s);
+        if (date == null)
+            return null;
+        if (n == 10)
+            return date.atStartOfDay();
+
+        char sep = s.charAt(10);
+        if ((sep != ' ' && sep != 'T') || n < 16 || s.charAt(13) != ':')
+            return null;
+
+        int h = digits(s, 11, 13), m = digits(s, 14, 16), sec = 0, nano = 0;
+        if (n > 16) {
+            if (n < 19 || s.charAt(16) != ':' || (sec = digits(s, 17, 19)) < 0)
+                return null;
+            if (n > 19) {
+                if (s.charAt(19) != '.' || n == 20 || n > 29 || (nano = digits(s, 20, n)) < 0)
+                    return null;
+                for (int i = n; i < 29; i++)
+                    nano *= 10;
+            }
+        }
+        if ((h | m) < 0)
+            return null;
+        return date.atTime(h, m, sec, nano);
+    }
+
+    // value of the decimal digits s[from..to), -1 when one is not a digit
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            int c = s.charAt(i) - '0';
+            if (c < 0 || c > 9)
+                return -1;
+            v = v * 10 + c;
+        }
+        return v;
+    }
+}
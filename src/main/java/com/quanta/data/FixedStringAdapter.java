@@ -1,11 +1,14 @@
 package com.quanta.data;
 
+import com.quanta.blob.FixedRegion;
+
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Types;
 import java.util.regex.Pattern;
 
 public class FixedStringAdapter extends FixedWidthDataAdapter<String> {
-	private final static Pattern RTRIM = Pattern.compile("\\s+$");
+	private final static Pattern RTRIM = Pattern.compile("[\\s\\x00]+$");
 
 	public static String rtrim(String s) {
 	    return RTRIM.matcher(s).replaceAll("");
@@ -17,7 +20,7 @@ public class FixedStringAdapter extends FixedWidthDataAdapter<String> {
 
     @Override
     public int add(String value) throws IOException {
-        return data.addBytes(value == null ? new byte[0] : value.getBytes());
+        return data.addBytes(Utf8.encode(value));
     }
 
     @Override
@@ -27,11 +30,27 @@ public class FixedStringAdapter extends FixedWidthDataAdapter<String> {
 
     @Override
     public void insert(int index, String value) throws IOException {
-        data.insert(index, value == null ? new byte[0] : value.getBytes());
+        data.insert(index, Utf8.encode(value));
     }
     @Override
     public String get(int index) throws IOException {
-        return rtrim(new String(data.getBytes(index)));
+        // the bytes before the padding, what rtrim would leave of the whole row
+        byte[] b = data.getBytes(index);
+        int len = b.length;
+        while (len > 0 && FixedRegion.isPadding(b[len - 1]))
+            len--;
+
+        return new String(b, 0, len, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object key(String value) {
+        return Utf8.encode(value);
+    }
+
+    @Override
+    public int compareAt(int index, Object key) throws IOException {
+        return data.compareBytes(index, (byte[]) key);
     }
 
     @Override
@@ -41,7 +60,7 @@ public class FixedStringAdapter extends FixedWidthDataAdapter<String> {
 
     @Override
     public int compare(String v1, String v2) {
-        return v1.compareTo(v2);
+        return Utf8.compare(v1, v2);
     }
 
 
@@ -1,7 +1,9 @@
 package com.quanta.data;
 
+import com.quanta.blob.Advice;
 import com.quanta.blob.FixedRegion;
 import com.quanta.blob.Region;
+import com.quanta.util.ByteBitSet;
 
 import java.io.IOException;
 
@@ -25,6 +27,57 @@ public abstract class FixedWidthDataAdapter<T> extends DataAdapter<T> {
         throw new UnsupportedOperationException("");
     }
 
+    /**
+     * Reads {@code count} int rows starting from {@code fromRow} into {@code dst}.
+     */
+    public void getInts(int fromRow, int count, int[] dst) throws IOException {
+        for (int i = 0; i < count; i++) {
+            dst[i] = getInt(fromRow + i);
+        }
+    }
+
+    /**
+     * Marks in {@code set} the rows {@code from..to-1} holding {@code value}, comparing the raw
+     * bytes of the rows with {@link #toBytes(Object)}.
+     */
+    public void mark(int from, int to, T value, ByteBitSet set) throws IOException {
+        byte[] target = toBytes(value);
+        int run = Math.max(1, Math.min(to - from, 4096));
+        byte[] raw = new byte[run * width];
+
+        for (int start = from; start < to; start += run) {
+            int count = Math.min(run, to - start);
+            getRawBytes(start, count, raw);
+
+            for (int i = 0, offset = 0; i < count; i++, offset += width) {
+                int j = 0;
+                while (j < width && raw[offset + j] == target[j])
+                    j++;
+                if (j == width)
+                    set.set(start + i);
+            }
+        }
+    }
+
+    /**
+     * Marks in {@code set} the rows {@code from..to-1} holding an int value flagged in
+     * {@code match}, values past its end never match.
+     */
+    public void mark(int from, int to, boolean[] match, ByteBitSet set) throws IOException {
+        int[] run = new int[Math.max(1, Math.min(to - from, 4096))];
+
+        for (int start = from; start < to; start += run.length) {
+            int count = Math.min(run.length, to - start);
+            getInts(start, count, run);
+
+            for (int i = 0; i < count; i++) {
+                int x = run[i];
+                if (x < match.length && match[x])
+                    set.set(start + i);
+            }
+        }
+    }
+
     public boolean match(byte[] rawData, byte[] toCompare, int index) {
         int offset = index * width;
         boolean match = true;
@@ -42,16 +95,33 @@ public abstract class FixedWidthDataAdapter<T> extends DataAdapter<T> {
         return data.getRawBytes(fromRow, count);
     }
 
+    public void getRawBytes(int fromRow, int count, byte[] dst) throws IOException {
+        data.getRawBytes(fromRow, count, dst);
+    }
+
     @Override
     public int size() {
         return data.size();
     }
 
+    @Override
+    public void truncate(int size) throws IOException {
+        data.truncate(size);
+    }
+
     @Override
     public Region[] regions() {
         return new Region[] {data};
     }
 
+    /**
+     * Advises the storage of rows {@code fromRow..toRow-1} once, e.g. {@link Advice#WILL_NEED}
+     * before they are scanned, see {@link FixedRegion#advise(int, int, Advice)}. Does nothing
+     * unless the adapter knows where its rows are stored, as for plain int rows.
+     */
+    public void advise(int fromRow, int toRow, Advice advice) throws IOException {
+    }
+
 
     public void print() throws IOException {
         for (int i = 0; i < data.size(); i++) {
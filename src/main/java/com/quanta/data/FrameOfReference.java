@@ -0,0 +1,424 @@
+package com.quanta.data;
+
+import com.quanta.blob.FixedRegion;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Frame-of-reference encoding of appended int and long values, for keys, timestamps and other
+ * columns whose neighbouring values are close.
+ * <p>
+ * The region holds longs: {@link #MAGIC}, then groups of up to {@value #GROUP_ROWS} rows, each
+ * made of three header longs, {@code [first row << 32 | rows << 8 | bits]}, the base and the
+ * stride, followed by the rows. Row {@code k} of a group keeps the difference between its value
+ * and {@code base + k * stride}, zigzag encoded in {@code bits} bits, {@code 64 / bits} of them per
+ * long and never across two. A row is read in constant time, sequential keys take 0 bits and
+ * timestamps a few bits per row.
+ * </p>
+ * <p>
+ * A group starts at the first value it holds, with the stride the previous group followed and
+ * as many bits as its rows needed. A value whose difference does not fit closes the group early,
+ * so committed rows are never rewritten. Groups are read back in order on first use; longs
+ * written after the last complete header, by a write cut short, are dropped by the next add.
+ * </p>
+ */
+final class FrameOfReference {
+
+    /** First long of an encoded region. */
+    static final long MAGIC = 0x5146_4F52_0000_0001L;
+
+    /** Most rows per group. */
+    static final int GROUP_ROWS = 1024;
+
+    // header longs per group
+    private static final int HEAD = 3;
+
+    private static final int UNKNOWN = 0;
+    private static final int RAW     = 1;
+    private static final int ENCODED = 2;
+
+    private final FixedRegion data;
+
+    // 32 when values are ints: differences wrap at 32 bits and never take more
+    private final int shift;
+
+    // head, base, stride and position of each group, null until first used
+    private volatile long[] frames;
+    private int groups;
+
+    // group of the last row looked up, rows are mostly read in order
+    private int hint;
+
+    // bits the rows of the last group needed
+    private int widest;
+
+    private int format;
+
+    FrameOfReference(FixedRegion data, int valueBits) {
+        this.data  = data;
+        this.shift = Long.SIZE - valueBits;
+    }
+
+    /**
+     * False for files written raw, before the adapter encoded its rows. Empty files are encoded.
+     */
+    boolean active() throws IOException {
+        int f = format;
+        if (f == UNKNOWN) {
+            if (data.width() != Long.BYTES)
+                f = RAW;
+            else if (data.size() == 0)
+                return true;
+            else
+                f = data.getLong(0) == MAGIC ? ENCODED : RAW;
+            format = f;
+        }
+        return f == ENCODED;
+    }
+
+    private static int first(long head) {
+        return (int) (head >>> 32);
+    }
+
+    private static int rows(long head) {
+        return (int) (head >>> 8) & 0xFF_FFFF;
+    }
+
+    private static int bits(long head) {
+        return (int) head & 0xFF;
+    }
+
+    private static long head(int first, int rows, int bits) {
+        return (long) first << 32 | (long) rows << 8 | bits;
+    }
+
+    /** Longs holding {@code rows} rows of {@code bits} bits. */
+    private static int words(int rows, int bits) {
+        if (bits == 0)
+            return 0;
+        int per = 64 / bits;
+        return (rows + per - 1) / per;
+    }
+
+    /** Bits of {@code z}, rounded up to the widest width holding as many per long. */
+    private static int width(long z) {
+        int need = 64 - Long.numberOfLeadingZeros(z);
+        return need == 0 ? 0 : 64 / (64 / need);
+    }
+
+    private static long zigzag(long r) {
+        return (r << 1) ^ (r >> 63);
+    }
+
+    private static long unzigzag(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    private long[] frames() throws IOException {
+        long[] f = frames;
+        if (f == null) {
+            synchronized (this) {
+                if (frames == null)
+                    load();
+                f = frames;
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Reads the group headers. A header not continuing the rows before it was never completed,
+     * rows a header counts past the stored longs were written after the last commit.
+     */
+    private void load() throws IOException {
+        int words = data.size();
+        long[] f = new long[4 * 16];
+        int n = 0, row = 0;
+
+        for (int pos = 1; pos + HEAD <= words; n++) {
+            long head = data.getLong(pos);
+            int bits = bits(head);
+            if (first(head) != row || bits > 64)
+                break;
+
+            int rows = rows(head);
+            if (bits > 0)
+                rows = Math.min(rows, (words - pos - HEAD) * (64 / bits));
+
+            if (4 * n == f.length)
+                f = Arrays.copyOf(f, f.length * 2);
+            f[4 * n]     = head(row, rows, bits);
+            f[4 * n + 1] = data.getLong(pos + 1);
+            f[4 * n + 2] = data.getLong(pos + 2);
+            f[4 * n + 3] = pos;
+
+            row += rows;
+            pos += HEAD + words(rows, bits);
+        }
+
+        groups = n;
+        frames = f;
+        widest = n == 0 ? 0 : bits(f[4 * (n - 1)]);
+    }
+
+    /**
+     * Picks up the rows a writer process committed, after the region was refreshed.
+     */
+    void refresh() throws IOException {
+        if (frames != null) {
+            synchronized (this) {
+                load();
+            }
+        }
+    }
+
+    /** Group holding {@code row}: the last one starting at or before it. */
+    private int group(long[] f, int row) {
+        // groups is read after frames, so it never counts entries the array lacks
+        int n = Math.min(groups, f.length / 4);
+        int g = hint;
+
+        if (g < n && first(f[4 * g]) <= row && row - first(f[4 * g]) < rows(f[4 * g]))
+            return g;
+
+        // no group holds more rows, so the group is never before this one and mostly this one
+        int lo = Math.max(0, Math.min(n - 1, row / GROUP_ROWS)), hi = n - 1;
+        if (row - first(f[4 * lo]) < rows(f[4 * lo])) {
+            hint = lo;
+            return lo;
+        }
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (first(f[4 * mid]) <= row)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        hint = lo;
+        return lo;
+    }
+
+    int size() {
+        try {
+            long[] f = frames();
+            int n = Math.min(groups, f.length / 4);
+            return n == 0 ? 0 : first(f[4 * (n - 1)]) + rows(f[4 * (n - 1)]);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Position right after the last group. */
+    private int end(long[] f) {
+        int g = groups - 1;
+        return g < 0 ? 1 : (int) f[4 * g + 3] + HEAD + words(rows(f[4 * g]), bits(f[4 * g]));
+    }
+
+    /** Difference of {@code v} with {@code base + k * stride}, wrapped at the value width. */
+    private long residual(long v, long base, long stride, int k) {
+        long r = v - (base + k * stride);
+        return (r << shift) >> shift;
+    }
+
+    int add(long v) throws IOException {
+        if (data.size() == 0)
+            data.addLong(MAGIC);
+
+        long[] f = frames();
+        int g = groups - 1;
+
+        if (data.size() != end(f))
+            data.truncate(end(f));
+
+        if (g < 0) {
+            start(f, 0, v, 0, 0);
+            return 0;
+        }
+
+        long head   = f[4 * g];
+        long base   = f[4 * g + 1];
+        long stride = f[4 * g + 2];
+        int pos  = (int) f[4 * g + 3];
+        int k    = rows(head);
+        int bits = bits(head);
+        int row  = first(head) + k;
+
+        // the first group has no stride to follow, it takes the one of its first two rows
+        if (g == 0 && k == 1 && stride == 0) {
+            stride = residual(v, base, 0, 0);
+            f[2] = stride;
+            data.replace(data.rp(pos + 2), stride);
+        }
+
+        long z = zigzag(residual(v, base, stride, k));
+
+        if (k < GROUP_ROWS && (bits == 64 || z >>> bits == 0)) {
+            if (bits > 0) {
+                int per = 64 / bits;
+                long shifted = z << (k % per * bits);
+
+                if (k % per == 0) {
+                    data.addLong(shifted);
+                } else {
+                    int w = pos + HEAD + k / per;
+                    data.replace(data.rp(w), data.getLong(w) | shifted);
+                }
+            }
+
+            widest = Math.max(widest, width(z));
+            head += 1 << 8;
+            f[4 * g] = head;
+            data.replace(data.rp(pos), head);
+            return row;
+        }
+
+        // a value that did not fit after a few rows widens the next group; after more it is
+        // taken as a jump, and the next group starts at it with the width these rows needed
+        int next = k < GROUP_ROWS / 16 ? Math.max(widest, width(z)) : widest;
+
+        // the trend of this group when it moves values further than they scatter around it
+        long slope = k < 2 ? stride : residual(get(f, g, k - 1), base, 0, 0) / (k - 1);
+        if (width(zigzag(slope * GROUP_ROWS)) <= widest)
+            slope = 0;
+
+        start(f, row, v, slope, next);
+        return row;
+    }
+
+    /**
+     * Appends a group holding {@code v} as row {@code row}.
+     */
+    private void start(long[] f, int row, long v, long stride, int bits) throws IOException {
+        int g = groups;
+        int pos = data.size();
+        long head = head(row, 1, bits);
+
+        data.addLong(head);
+        data.addLong(v);
+        data.addLong(stride);
+        if (bits > 0)
+            data.addLong(0L);
+
+        if (4 * g == f.length)
+            f = Arrays.copyOf(f, f.length * 2);
+        f[4 * g]     = head;
+        f[4 * g + 1] = v;
+        f[4 * g + 2] = stride;
+        f[4 * g + 3] = pos;
+
+        widest = 0;
+        groups = g + 1;
+        frames = f;
+    }
+
+    long get(int index) throws IOException {
+        long[] f = frames();
+        int g = group(f, index);
+        int k = index - first(f[4 * g]);
+
+        if (index < 0 || k >= rows(f[4 * g]))
+            throw new ArrayIndexOutOfBoundsException("size: " + size() + ", index: " + index);
+
+        return get(f, g, k);
+    }
+
+    /** Row {@code k} of group {@code g}. */
+    private long get(long[] f, int g, int k) throws IOException {
+        long head = f[4 * g];
+        long pred = f[4 * g + 1] + k * f[4 * g + 2];
+        int bits  = bits(head);
+
+        if (bits == 0)
+            return pred;
+
+        int per   = 64 / bits;
+        long word = data.getLong((int) f[4 * g + 3] + HEAD + k / per);
+        long z    = bits == 64 ? word : (word >>> (k % per * bits)) & ((1L << bits) - 1);
+
+        return pred + unzigzag(z);
+    }
+
+    /**
+     * Reads {@code count} rows starting from {@code fromRow} into {@code dst} from {@code offset},
+     * a group at a time.
+     */
+    void get(int fromRow, int count, long[] dst, int offset) throws IOException {
+        if (fromRow < 0 || count < 0 || fromRow + count > size())
+            throw new ArrayIndexOutOfBoundsException("Requested rows from " + fromRow + " count " + count + ", size " + size());
+
+        long[] f = frames();
+        long[] words = null;
+
+        for (int done = 0; done < count; ) {
+            int row = fromRow + done;
+            int g = group(f, row);
+            long head   = f[4 * g];
+            long stride = f[4 * g + 2];
+            int bits = bits(head);
+            int k = row - first(head);
+            int n = Math.min(count - done, rows(head) - k);
+            long pred = f[4 * g + 1] + k * stride;
+            int o = offset + done, end = o + n;
+
+            if (bits == 0) {
+                for (; o < end; o++, pred += stride)
+                    dst[o] = pred;
+            } else {
+                int per   = 64 / bits;
+                long mask = bits == 64 ? -1L : (1L << bits) - 1;
+                int w0 = k / per;
+                int length = (k + n - 1) / per - w0 + 1;
+
+                if (words == null || words.length < length)
+                    words = new long[Math.max(length, 64)];
+                data.getLongs((int) f[4 * g + 3] + HEAD + w0, length, words);
+
+                for (int i = 0, s = k % per; o < end; i++, s = 0) {
+                    long word = words[i];
+                    for (int stop = Math.min(per, s + end - o); s < stop; s++, pred += stride) {
+                        long z = (word >>> (s * bits)) & mask;
+                        dst[o++] = pred + ((z >>> 1) ^ -(z & 1));
+                    }
+                }
+            }
+            done += n;
+        }
+    }
+
+    void truncate(int size) throws IOException {
+        if (size >= size())
+            return;
+
+        long[] f = frames();
+        int g = group(f, size);
+        long head = f[4 * g];
+        int pos  = (int) f[4 * g + 3];
+        int bits = bits(head);
+        int k    = size - first(head);
+
+        if (k == 0) {
+            data.truncate(pos);
+            groups = g;
+        } else {
+            int words = pos + HEAD + words(k, bits);
+            data.truncate(words);
+
+            // rows past the end are cleared, later adds OR theirs into the last long
+            int per = bits == 0 ? 1 : 64 / bits;
+            if (k % per != 0) {
+                data.replace(data.rp(words - 1), data.getLong(words - 1) & ((1L << (k % per * bits)) - 1));
+            }
+
+            head = head(first(head), k, bits);
+            data.replace(data.rp(pos), head);
+            f[4 * g] = head;
+            groups = g + 1;
+        }
+
+        widest = bits;
+        frames = f;
+    }
+}
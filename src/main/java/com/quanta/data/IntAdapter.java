@@ -1,11 +1,35 @@
 package com.quanta.data;
 
+import com.quanta.blob.Advice;
+import com.quanta.util.ByteBitSet;
+
 import java.io.IOException;
 import java.sql.Types;
 
 public class IntAdapter extends FixedWidthDataAdapter<Integer> {
+
+    // null when rows are always stored raw
+    private final FrameOfReference frames;
+
     public IntAdapter() {
+        this(false);
+    }
+
+    /**
+     * @param encoded true to store the rows of new files encoded, a few bits per row when
+     *                neighbouring values are close, see {@link FrameOfReference}; encoded rows
+     *                are only appended. Files stored raw are still read raw.
+     */
+    public IntAdapter(boolean encoded) {
         super(Integer.BYTES, false);
+
+        if (encoded)
+            data.width(Long.BYTES);
+        this.frames = encoded ? new FrameOfReference(data, Integer.SIZE) : null;
+    }
+
+    private boolean encoded() throws IOException {
+        return frames != null && frames.active();
     }
 
     @Override
@@ -15,22 +39,90 @@ public class IntAdapter extends FixedWidthDataAdapter<Integer> {
 
     @Override
     public void insert(int index, Integer value) throws IOException {
+        if (encoded())
+            throw new UnsupportedOperationException("Encoded rows are only appended");
         data.insert(index, value);
     }
 
     @Override
     public int add(Integer value) throws IOException {
-        return data.addInt(value);
+        return encoded() ? frames.add(value) : data.addInt(value);
     }
 
     @Override
     public Integer get(int index) throws IOException {
-        return data.getInt(index);
+        return getInt(index);
     }
 
     @Override
     public int getInt(int index) throws IOException {
-        return data.getInt(index);
+        return encoded() ? (int) frames.get(index) : data.getInt(index);
+    }
+
+    public void getInts(int fromRow, int count, int[] dst) throws IOException {
+        if (!encoded()) {
+            data.getInts(fromRow, count, dst);
+            return;
+        }
+
+        long[] run = new long[Math.min(count, FrameOfReference.GROUP_ROWS)];
+        for (int done = 0; done < count; done += run.length) {
+            int n = Math.min(run.length, count - done);
+            frames.get(fromRow + done, n, run, 0);
+            for (int i = 0; i < n; i++) {
+                dst[done + i] = (int) run[i];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        try {
+            return encoded() ? frames.size() : data.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        if (encoded())
+            frames.truncate(size);
+        else
+            data.truncate(size);
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        if (frames != null)
+            frames.refresh();
+    }
+
+    @Override
+    public void advise(int fromRow, int toRow, Advice advice) throws IOException {
+        // encoded rows are stored by frame, not one per slot
+        if (!encoded())
+            data.advise(fromRow, toRow, advice);
+    }
+
+    /**
+     * Marks the rows {@code from..to-1} holding {@code value}, comparing the ints read by
+     * {@link #getInts(int, int, int[])}: there is no {@link #toBytes(Object)} to compare with.
+     */
+    @Override
+    public void mark(int from, int to, Integer value, ByteBitSet set) throws IOException {
+        int v = value;
+        int[] run = new int[Math.max(1, Math.min(to - from, 4096))];
+
+        for (int start = from; start < to; start += run.length) {
+            int count = Math.min(run.length, to - start);
+            getInts(start, count, run);
+
+            for (int i = 0; i < count; i++) {
+                if (run[i] == v)
+                    set.set(start + i);
+            }
+        }
     }
 
     @Override
@@ -4,8 +4,26 @@ import java.io.IOException;
 import java.sql.Types;
 
 public class LongAdapter extends FixedWidthDataAdapter<Long> {
+
+    // null when rows are always stored raw
+    private final FrameOfReference frames;
+
     public LongAdapter() {
+        this(false);
+    }
+
+    /**
+     * @param encoded true to store the rows of new files encoded, see
+     *                {@link IntAdapter#IntAdapter(boolean)}
+     */
+    public LongAdapter(boolean encoded) {
         super(Long.BYTES, false);
+
+        this.frames = encoded ? new FrameOfReference(data, Long.SIZE) : null;
+    }
+
+    private boolean encoded() throws IOException {
+        return frames != null && frames.active();
     }
 
     @Override
@@ -15,17 +33,49 @@ public class LongAdapter extends FixedWidthDataAdapter<Long> {
 
     @Override
     public void insert(int index, Long value) throws IOException {
+        if (encoded())
+            throw new UnsupportedOperationException("Encoded rows are only appended");
         data.insert(index, value);
     }
 
     @Override
     public int add(Long value) throws IOException {
-        return data.addLong(value);
+        return encoded() ? frames.add(value) : data.addLong(value);
     }
 
     @Override
     public Long get(int index) throws IOException {
-        return data.getLong(index);
+        return encoded() ? frames.get(index) : data.getLong(index);
+    }
+
+    public void getLongs(int fromRow, int count, long[] dst) throws IOException {
+        if (encoded())
+            frames.get(fromRow, count, dst, 0);
+        else
+            data.getLongs(fromRow, count, dst);
+    }
+
+    @Override
+    public int size() {
+        try {
+            return encoded() ? frames.size() : data.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        if (encoded())
+            frames.truncate(size);
+        else
+            data.truncate(size);
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        if (frames != null)
+            frames.refresh();
     }
 
     @Override
@@ -0,0 +1,415 @@
+package com.quanta.data;
+
+import com.quanta.blob.Advice;
+import com.quanta.util.ByteBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Value ids of an indexed column packed in as few bits as the largest id needs.
+ * <p>
+ * Rows are stored in groups of {@value #GROUP} longs. The first long of a group is its header,
+ * {@code [first row << 32 | rows << 8 | bits]}, each of the others holds {@code 64 / bits} ids
+ * from the low bits up, never across two longs. The width only grows: an id that does not fit
+ * closes the group and the next one starts at the width it needs, so 5 distinct values take
+ * 3 bits per row and 300 take 9. Widths are rounded up to the widest one holding as many ids
+ * per long, which leaves at most a dozen groups closed early.
+ * </p>
+ * <p>
+ * Scans work a long at a time: {@link #getInts(int, int, int[])} shifts the ids out and
+ * {@link #mark(int, int, Integer, ByteBitSet)} compares every id of a long with the target at
+ * once, through a zero test of {@code long ^ target} that does not carry across ids.
+ * </p>
+ * <p>
+ * Files written before the rows were packed keep one or two bytes per row, see
+ * {@link com.quanta.blob.FixedRegion#width(int)}, and are read as by {@link SmallIntAdapter}.
+ * </p>
+ */
+public class PackedIntAdapter extends SmallIntAdapter {
+
+    /** Most distinct ids packed; more take 3 bytes per row, denser than 21 or 32 bits. */
+    public static final int MAX_UNIQUE = 65_534;
+
+    /** Longs per group, header included. */
+    static final int GROUP = 512;
+
+    private static final int WORD = Long.BYTES;
+
+    // header of each group, null until first used; entries past 'groups' are unused
+    private volatile long[] heads;
+    private int groups;
+
+    // group of the last row looked up, rows are mostly read in order
+    private int hint;
+
+    public PackedIntAdapter(int maxUnique) {
+        super(maxUnique < 256 ? 1 : 2);
+
+        if (maxUnique > MAX_UNIQUE)
+            throw new IllegalArgumentException("At most " + MAX_UNIQUE + " distinct values: " + maxUnique);
+
+        data.width(WORD);
+    }
+
+    /** False for files written with one or two bytes per row. */
+    private boolean packed() {
+        return data.width() == WORD;
+    }
+
+    private static int first(long head) {
+        return (int) (head >>> 32);
+    }
+
+    private static int rows(long head) {
+        return (int) (head >>> 8) & 0xFF_FFFF;
+    }
+
+    private static int bits(long head) {
+        return (int) head & 0xFF;
+    }
+
+    private static long head(int first, int rows, int bits) {
+        return (long) first << 32 | (long) rows << 8 | bits;
+    }
+
+    private static int capacity(int bits) {
+        return (GROUP - 1) * (64 / bits);
+    }
+
+    private long[] heads() throws IOException {
+        long[] h = heads;
+        if (h == null) {
+            synchronized (this) {
+                if (heads == null)
+                    load();
+                h = heads;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Reads the group headers. Rows a header counts past the stored longs were written after the
+     * last commit and are dropped with them.
+     */
+    private void load() throws IOException {
+        int words = data.size();
+        int count = (words + GROUP - 1) / GROUP;
+        long[] h = new long[Math.max(16, count)];
+
+        for (int g = 0; g < count; g++) {
+            long head = data.getLong(g * GROUP);
+            int bits = bits(head);
+            int stored = (Math.min(words, (g + 1) * GROUP) - g * GROUP - 1) * (64 / bits);
+            h[g] = rows(head) > stored ? head(first(head), stored, bits) : head;
+        }
+
+        groups = count;
+        heads = h;
+    }
+
+    /**
+     * Picks up the rows a writer process committed, after the region was refreshed.
+     */
+    @Override
+    public void refresh() throws IOException {
+        if (packed() && heads != null) {
+            synchronized (this) {
+                load();
+            }
+        }
+    }
+
+    /** Group holding {@code row}: the last one starting at or before it. */
+    private int group(long[] h, int row) {
+        // groups is read after heads, so it never counts entries the array lacks
+        int n = Math.min(groups, h.length);
+        int g = hint;
+
+        if (g < n && first(h[g]) <= row && row - first(h[g]) < rows(h[g]))
+            return g;
+
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (first(h[mid]) <= row)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        hint = lo;
+        return lo;
+    }
+
+    @Override
+    public int size() {
+        if (!packed())
+            return super.size();
+
+        try {
+            long[] h = heads();
+            int n = Math.min(groups, h.length);
+            return n == 0 ? 0 : first(h[n - 1]) + rows(h[n - 1]);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void insert(int index, Integer value) throws IOException {
+        if (!packed()) {
+            super.insert(index, value);
+            return;
+        }
+        throw new UnsupportedOperationException("Packed rows are only appended");
+    }
+
+    @Override
+    public int add(Integer value) throws IOException {
+        if (!packed())
+            return super.add(value);
+
+        int v = value;
+        if (v < 0)
+            throw new IllegalArgumentException("Negative value id: " + v);
+
+        long[] h = heads();
+        int g = groups - 1;
+        long head = g < 0 ? 0 : h[g];
+
+        if (g < 0 || rows(head) == capacity(bits(head)) || (bits(head) < 32 && v >>> bits(head) != 0)) {
+            head = start(v);
+            g = groups - 1;
+            h = heads;
+        }
+
+        int bits = bits(head);
+        int per  = 64 / bits;
+        int k    = rows(head);
+        long shifted = (long) v << (k % per * bits);
+
+        if (k % per == 0) {
+            data.addLong(shifted);
+        } else {
+            long pos = data.rp(g * GROUP + 1 + k / per);
+            data.replace(pos, data.longAt(pos) | shifted);
+        }
+
+        head += 1 << 8;
+        h[g] = head;
+        data.replace(data.rp(g * GROUP), head);
+
+        return first(head) + k;
+    }
+
+    /**
+     * Starts a group wide enough for {@code v} and for every id stored before it.
+     */
+    private long start(int v) throws IOException {
+        long[] h = heads;
+        int g = groups;
+        long last = g == 0 ? head(0, 0, 1) : h[g - 1];
+
+        int need = Math.max(bits(last), 32 - Integer.numberOfLeadingZeros(v));
+        int bits = 64 / (64 / need);
+        long head = head(first(last) + rows(last), 0, bits);
+
+        // a group closed early keeps its unused longs, groups start at fixed positions
+        while (data.size() < g * GROUP)
+            data.addLong(0L);
+        data.addLong(head);
+
+        if (g == h.length)
+            h = Arrays.copyOf(h, g * 2);
+        h[g] = head;
+
+        groups = g + 1;
+        heads = h;
+        return head;
+    }
+
+    @Override
+    public Integer get(int index) throws IOException {
+        return getInt(index);
+    }
+
+    @Override
+    public int getInt(int index) throws IOException {
+        if (!packed())
+            return super.getInt(index);
+
+        long[] h = heads();
+        int g = group(h, index);
+        long head = h[g];
+        int k = index - first(head);
+
+        if (index < 0 || k >= rows(head))
+            throw new ArrayIndexOutOfBoundsException("size: " + size() + ", index: " + index);
+
+        int bits = bits(head);
+        int per  = 64 / bits;
+        long word = data.getLong(g * GROUP + 1 + k / per);
+
+        return (int) ((word >>> (k % per * bits)) & ((1L << bits) - 1));
+    }
+
+    /**
+     * Advises the longs of the groups holding rows {@code fromRow..toRow-1}.
+     */
+    @Override
+    public void advise(int fromRow, int toRow, Advice advice) throws IOException {
+        if (!packed()) {
+            super.advise(fromRow, toRow, advice);
+            return;
+        }
+
+        if (fromRow >= toRow)
+            return;
+
+        long[] h = heads();
+        int first = group(h, fromRow);
+        int last  = group(h, toRow - 1);
+        data.advise(first * GROUP, Math.min(data.size(), (last + 1) * GROUP), advice);
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        if (!packed()) {
+            super.truncate(size);
+            return;
+        }
+
+        if (size >= size())
+            return;
+
+        long[] h = heads();
+        int g = group(h, size);
+        long head = h[g];
+        int bits = bits(head);
+        int per  = 64 / bits;
+        int k    = size - first(head);
+        int words = g * GROUP + 1 + (k + per - 1) / per;
+
+        data.truncate(words);
+
+        // ids past the end are cleared, later adds OR theirs into the last long
+        if (k % per != 0) {
+            long pos = data.rp(words - 1);
+            data.replace(pos, data.longAt(pos) & ((1L << (k % per * bits)) - 1));
+        }
+
+        head = head(first(head), k, bits);
+        data.replace(data.rp(g * GROUP), head);
+        h[g] = head;
+
+        groups = g + 1;
+        heads = h;
+    }
+
+    @Override
+    public void getInts(int fromRow, int count, int[] dst) throws IOException {
+        if (!packed()) {
+            super.getInts(fromRow, count, dst);
+            return;
+        }
+
+        checkRange(fromRow, count);
+
+        long[] h = heads();
+        long[] words = null;
+
+        for (int done = 0; done < count; ) {
+            int row = fromRow + done;
+            int g = group(h, row);
+            long head = h[g];
+            int bits = bits(head);
+            int per  = 64 / bits;
+            long mask = (1L << bits) - 1;
+            int k = row - first(head);
+            int n = Math.min(count - done, rows(head) - k);
+
+            int w0 = k / per;
+            int length = (k + n - 1) / per - w0 + 1;
+            words = read(g * GROUP + 1 + w0, length, words);
+
+            int o = done, end = done + n;
+            for (int i = 0, s = k % per; o < end; i++, s = 0) {
+                long word = words[i] >>> (s * bits);
+                for (; s < per && o < end; s++) {
+                    dst[o++] = (int) (word & mask);
+                    word >>>= bits;
+                }
+            }
+            done = end;
+        }
+    }
+
+    @Override
+    public void mark(int from, int to, Integer value, ByteBitSet set) throws IOException {
+        if (!packed()) {
+            super.mark(from, to, value, set);
+            return;
+        }
+
+        checkRange(from, to - from);
+
+        long[] h = heads();
+        long[] words = null;
+        int v = value;
+
+        for (int row = from; row < to; ) {
+            int g = group(h, row);
+            long head = h[g];
+            int bits = bits(head);
+            int per  = 64 / bits;
+            int k = row - first(head);
+            int n = Math.min(to - row, rows(head) - k);
+
+            if (bits == 32 || v >>> bits == 0) {
+                // lowest bit of every id in a long, the target in every id, and the masks of the
+                // zero test: an id of x is 0 when the top bit of ((x & low) + low) | x is clear
+                long ones = 0;
+                for (int f = 0; f < per; f++)
+                    ones |= 1L << (f * bits);
+                long target = ones * v;
+                long low  = ones * ((1L << (bits - 1)) - 1);
+                long high = ones << (bits - 1);
+
+                int w0 = k / per;
+                int last = (k + n - 1) / per - w0;
+                words = read(g * GROUP + 1 + w0, last + 1, words);
+
+                int base = first(head) + w0 * per;
+                for (int i = 0; i <= last; i++, base += per) {
+                    long x = words[i] ^ target;
+                    long z = ~(((x & low) + low) | x) & high;
+
+                    if (i == 0)
+                        z &= -1L << (k % per * bits);
+                    if (i == last && (k + n - 1) % per != per - 1)
+                        z &= (1L << (((k + n - 1) % per + 1) * bits)) - 1;
+
+                    while (z != 0) {
+                        set.set(base + Long.numberOfTrailingZeros(z) / bits);
+                        z &= z - 1;
+                    }
+                }
+            }
+            row += n;
+        }
+    }
+
+    private long[] read(int from, int count, long[] buffer) throws IOException {
+        if (buffer == null || buffer.length < count)
+            buffer = new long[Math.max(count, 64)];
+        data.getLongs(from, count, buffer);
+        return buffer;
+    }
+
+    private void checkRange(int fromRow, int count) {
+        if (fromRow < 0 || count < 0 || fromRow + count > size())
+            throw new ArrayIndexOutOfBoundsException("Requested rows from " + fromRow + " count " + count + ", size " + size());
+    }
+}
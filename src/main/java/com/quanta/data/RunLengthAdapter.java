@@ -0,0 +1,267 @@
+package com.quanta.data;
+
+import com.quanta.blob.Advice;
+import com.quanta.blob.FixedRegion;
+import com.quanta.blob.Region;
+import com.quanta.util.ByteBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Values stored as runs of equal consecutive rows, for data that arrives sorted or clustered by
+ * the column, such as a year or a month.
+ * <p>
+ * Run {@code i} keeps its value at index {@code i} of the wrapped adapter and the row after its
+ * last one in the run region, so the run ends are the run directory: a row is found by binary
+ * search over them, and a filter turns each matching run into a range of set bits without
+ * reading the rows. Appending a value equal to the last one only moves the end of the last run.
+ * </p>
+ * <p>
+ * The runs only pay off when they are long: a column whose value changes on most rows takes more
+ * space than the plain adapter.
+ * </p>
+ */
+public class RunLengthAdapter<T> extends FixedWidthDataAdapter<T> {
+
+    private final FixedWidthDataAdapter<T> runs;
+
+    // value of the last run as added, null when it has to be read back
+    private T last;
+
+    // run of the last row looked up, rows are mostly read in order
+    private int hint;
+
+    public RunLengthAdapter(FixedWidthDataAdapter<T> runs) {
+        super(runs.width, runs.isString);
+
+        this.runs = runs;
+        this.data = new FixedRegion(Integer.BYTES);
+    }
+
+    @Override
+    public Region[] regions() {
+        Region[] inner = runs.regions();
+        Region[] all = Arrays.copyOf(new Region[] {data}, inner.length + 1);
+        System.arraycopy(inner, 0, all, 1, inner.length);
+        return all;
+    }
+
+    @Override
+    public void relocate(Region[] targets) throws IOException {
+        runs.relocate(Arrays.copyOfRange(targets, 1, targets.length));
+    }
+
+    @Override
+    public int getDataType() {
+        return runs.getDataType();
+    }
+
+    /** Number of runs, both regions hold it unless a crash came between their appends. */
+    private int count() {
+        return Math.min(data.size(), runs.size());
+    }
+
+    private int end(int run) throws IOException {
+        return data.getInt(run);
+    }
+
+    @Override
+    public int size() {
+        try {
+            int n = count();
+            return n == 0 ? 0 : end(n - 1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Run holding {@code row}: the first one ending after it. */
+    private int run(int row) throws IOException {
+        int n = count();
+        int h = hint;
+
+        if (h < n && end(h) > row && (h == 0 || end(h - 1) <= row))
+            return h;
+
+        int lo = 0, hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (end(mid) > row)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+
+        hint = lo;
+        return lo;
+    }
+
+    /**
+     * Advises the runs holding rows {@code fromRow..toRow-1}, their ends and their values.
+     */
+    @Override
+    public void advise(int fromRow, int toRow, Advice advice) throws IOException {
+        if (fromRow >= toRow)
+            return;
+
+        int first = run(fromRow);
+        int last  = run(toRow - 1) + 1;
+        data.advise(first, last, advice);
+        runs.advise(first, last, advice);
+    }
+
+    private void checkRange(int fromRow, int count) {
+        if (fromRow < 0 || count < 0 || fromRow + count > size())
+            throw new ArrayIndexOutOfBoundsException("Requested rows from " + fromRow + " count " + count + ", size " + size());
+    }
+
+    @Override
+    public int add(T value) throws IOException {
+        int n = count();
+        int row = size();
+
+        // a run whose value or end was lost in a crash is dropped before appending
+        if (data.size() != n || runs.size() != n) {
+            data.truncate(n);
+            runs.truncate(n);
+        }
+
+        if (n > 0) {
+            if (last == null)
+                last = runs.get(n - 1);
+
+            if (runs.compare(last, value) == 0) {
+                data.replace(data.rp(n - 1), row + 1);
+                return row;
+            }
+        }
+
+        runs.add(value);
+        data.addInt(row + 1);
+        last = value;
+        return row;
+    }
+
+    @Override
+    public void insert(int index, T value) {
+        throw new UnsupportedOperationException("Runs are only appended");
+    }
+
+    @Override
+    public T get(int index) throws IOException {
+        checkRange(index, 1);
+        return runs.get(run(index));
+    }
+
+    @Override
+    public int getInt(int index) throws IOException {
+        checkRange(index, 1);
+        return runs.getInt(run(index));
+    }
+
+    @Override
+    public void getInts(int fromRow, int count, int[] dst) throws IOException {
+        checkRange(fromRow, count);
+
+        for (int done = 0, r = count == 0 ? 0 : run(fromRow); done < count; r++) {
+            int n = Math.min(count - done, end(r) - (fromRow + done));
+            Arrays.fill(dst, done, done + n, runs.getInt(r));
+            done += n;
+        }
+    }
+
+    @Override
+    public void mark(int from, int to, T value, ByteBitSet set) throws IOException {
+        checkRange(from, to - from);
+
+        Object key = runs.key(value);
+        for (int row = from, r = from < to ? run(from) : 0; row < to; r++) {
+            int end = Math.min(to, end(r));
+            if (runs.compareAt(r, key) == 0)
+                set.set(row, end);
+            row = end;
+        }
+    }
+
+    @Override
+    public void mark(int from, int to, boolean[] match, ByteBitSet set) throws IOException {
+        checkRange(from, to - from);
+
+        for (int row = from, r = from < to ? run(from) : 0; row < to; r++) {
+            int end = Math.min(to, end(r));
+            int x = runs.getInt(r);
+            if (x < match.length && match[x])
+                set.set(row, end);
+            row = end;
+        }
+    }
+
+    @Override
+    public void getRawBytes(int fromRow, int count, byte[] dst) throws IOException {
+        checkRange(fromRow, count);
+
+        for (int done = 0, r = count == 0 ? 0 : run(fromRow); done < count; r++) {
+            int n = Math.min(count - done, end(r) - (fromRow + done));
+            byte[] v = runs.getRawBytes(r, 1);
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(v, 0, dst, (done + i) * width, width);
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public byte[] getRawBytes(int fromRow, int count) throws IOException {
+        byte[] result = new byte[count * width];
+        getRawBytes(fromRow, count, result);
+        return result;
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        if (size >= size())
+            return;
+
+        int n = size == 0 ? 0 : run(size - 1) + 1;
+
+        data.truncate(n);
+        runs.truncate(n);
+        if (n > 0)
+            data.replace(data.rp(n - 1), size);
+
+        last = null;
+        hint = 0;
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        runs.refresh();
+        last = null;
+    }
+
+    @Override
+    public byte[] toBytes(T value) {
+        return runs.toBytes(value);
+    }
+
+    @Override
+    public int hash(T value) {
+        return runs.hash(value);
+    }
+
+    @Override
+    public int compare(T v1, T v2) {
+        return runs.compare(v1, v2);
+    }
+
+    @Override
+    public String toString(T v) {
+        return runs.toString(v);
+    }
+
+    @Override
+    public T parse(Object o) {
+        return runs.parse(o);
+    }
+}
@@ -1,5 +1,7 @@
 package com.quanta.data;
 
+import com.quanta.blob.Advice;
+
 import java.io.IOException;
 import java.sql.Types;
 import java.util.HashMap;
@@ -56,7 +58,7 @@ public class SmallIntAdapter extends FixedWidthDataAdapter<Integer> {
     }
     @Override
     public int getInt(int index) throws IOException {
-        return helper.toInt(data.getBytes(index));
+        return data.getUnsigned(index);
 
 //        if (cache.containsKey(index))
 //            return cache.get(index);
@@ -69,6 +71,11 @@ public class SmallIntAdapter extends FixedWidthDataAdapter<Integer> {
         return helper.toBytes(value);
     }
 
+    @Override
+    public void advise(int fromRow, int toRow, Advice advice) throws IOException {
+        data.advise(fromRow, toRow, advice);
+    }
+
     @Override
     public boolean match(byte[] rawData, byte[] toCompare, int index) {
         return helper.match(rawData, toCompare, index * width);
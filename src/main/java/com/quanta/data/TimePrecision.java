@@ -0,0 +1,34 @@
+package com.quanta.data;
+
+import java.time.LocalDate;
+
+/**
+ * Enum selecting how finely an {@link EpochAdapter} stores its values, and so the bytes per row.
+ * <p>
+ * Values are stored as a count of units since an origin, unsigned in a fixed width except for
+ * {@link #MILLIS}. Values outside the range of a precision are rejected, parts finer than its
+ * unit are dropped.
+ * </p>
+ */
+public enum TimePrecision {
+
+    /** Days since 1900-01-01 in 2 bytes, up to 2079-06-06. */
+    DAYS(Short.BYTES, LocalDate.of(1900, 1, 1).toEpochDay()),
+
+    /** Seconds since 1970-01-01T00:00 in 4 bytes, up to 2106-02-07T06:28:15. */
+    SECONDS(Integer.BYTES, 0),
+
+    /** Milliseconds since 1970-01-01T00:00 in 8 bytes, before and after it. */
+    MILLIS(Long.BYTES, 0);
+
+    /** Bytes per row. */
+    public final int width;
+
+    /** Epoch value, in the unit of the precision, stored as 0. */
+    final long origin;
+
+    TimePrecision(int width, long origin) {
+        this.width  = width;
+        this.origin = origin;
+    }
+}
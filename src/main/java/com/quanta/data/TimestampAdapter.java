@@ -6,12 +6,34 @@ import java.sql.Types;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
+/**
+ * Timestamps stored as epoch millis. See {@link DateAdapter} and {@link DateTimeAdapter} for
+ * java.time values stored in 2 or 4 bytes a row.
+ */
 public class TimestampAdapter extends FixedWidthDataAdapter<Timestamp> {
-    private SimpleDateFormat sdf;
+    // a SimpleDateFormat is not thread-safe, each thread parsing or formatting gets its own
+    private final ThreadLocal<SimpleDateFormat> sdf;
+
+    // null when rows are always stored raw
+    private final FrameOfReference frames;
 
     public TimestampAdapter(String format) {
+        this(format, false);
+    }
+
+    /**
+     * @param encoded true to store the epoch millis of new files encoded, see
+     *                {@link IntAdapter#IntAdapter(boolean)}
+     */
+    public TimestampAdapter(String format, boolean encoded) {
         super(Long.BYTES, true);
-        sdf = new SimpleDateFormat(format);
+        sdf = ThreadLocal.withInitial(() -> new SimpleDateFormat(format));
+
+        this.frames = encoded ? new FrameOfReference(data, Long.SIZE) : null;
+    }
+
+    private boolean encoded() throws IOException {
+        return frames != null && frames.active();
     }
 
     @Override
@@ -21,17 +43,52 @@ public class TimestampAdapter extends FixedWidthDataAdapter<Timestamp> {
 
     @Override
     public void insert(int index, Timestamp value) throws IOException {
+        if (encoded())
+            throw new UnsupportedOperationException("Encoded rows are only appended");
         data.insert(index, value.getTime());
     }
 
     @Override
     public int add(Timestamp value) throws IOException {
-        return data.addLong(value.getTime());
+        return encoded() ? frames.add(value.getTime()) : data.addLong(value.getTime());
     }
 
     @Override
     public Timestamp get(int index) throws IOException {
-        return new Timestamp(data.getLong(index));
+        return new Timestamp(encoded() ? frames.get(index) : data.getLong(index));
+    }
+
+    /**
+     * Reads the epoch millis of {@code count} rows starting from {@code fromRow} into {@code dst}.
+     */
+    public void getLongs(int fromRow, int count, long[] dst) throws IOException {
+        if (encoded())
+            frames.get(fromRow, count, dst, 0);
+        else
+            data.getLongs(fromRow, count, dst);
+    }
+
+    @Override
+    public int size() {
+        try {
+            return encoded() ? frames.size() : data.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void truncate(int size) throws IOException {
+        if (encoded())
+            frames.truncate(size);
+        else
+            data.truncate(size);
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        if (frames != null)
+            frames.refresh();
     }
 
     @Override
@@ -46,7 +103,7 @@ public class TimestampAdapter extends FixedWidthDataAdapter<Timestamp> {
 
     @Override
     public String toString(Timestamp v) {
-        return sdf.format(v);
+        return sdf.get().format(v);
     }
 
     @Override
@@ -55,7 +112,7 @@ public class TimestampAdapter extends FixedWidthDataAdapter<Timestamp> {
             return (Timestamp) o;
         } else if (o instanceof String) {
             try {
-                return new Timestamp(sdf.parse((String) o).getTime());
+                return new Timestamp(sdf.get().parse((String) o).getTime());
             } catch (ParseException e) {
                 throw new IllegalArgumentException(e);
             }
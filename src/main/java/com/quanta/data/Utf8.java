@@ -0,0 +1,41 @@
+package com.quanta.data;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The UTF-8 encoding string adapters store values in, and the order of their encoded bytes.
+ * <p>
+ * Comparing UTF-8 bytes as unsigned bytes orders strings by code point, which is the order of
+ * {@link String#compareTo(String)} except for characters outside the Basic Multilingual Plane:
+ * their surrogates sort below U+E000 to U+FFFF in a String but above them as code points.
+ * {@link #compare(String, String)} uses the code point order, so that values compared decoded
+ * and compared as stored bytes sort alike.
+ * </p>
+ */
+final class Utf8 {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private Utf8() {
+    }
+
+    static byte[] encode(String value) {
+        return value == null ? EMPTY : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int compare(String v1, String v2) {
+        int n = Math.min(v1.length(), v2.length());
+
+        for (int i = 0; i < n; i++) {
+            char c1 = v1.charAt(i);
+            char c2 = v2.charAt(i);
+            if (c1 != c2) {
+                boolean s1 = Character.isSurrogate(c1);
+                if (s1 != Character.isSurrogate(c2))
+                    return s1 ? 1 : -1;
+                return c1 - c2;
+            }
+        }
+        return v1.length() - v2.length();
+    }
+}
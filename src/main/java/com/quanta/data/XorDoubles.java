@@ -0,0 +1,477 @@
+package com.quanta.data;
+
+import com.quanta.blob.FixedRegion;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * XOR encoding of appended doubles, for metrics whose neighbouring values share their sign,
+ * exponent and leading mantissa bits.
+ * <p>
+ * The region holds longs: {@link #MAGIC}, then blocks of up to {@value #BLOCK_ROWS} rows, each a
+ * header long {@code [first row << 32 | rows << 20 | bits]} followed by {@code bits} bits of
+ * values, from the low bit of each long up. The first value of a block is stored whole, each
+ * other one as its XOR with the value before: {@code 0} when equal, {@code 10} and the
+ * meaningful bits when they fall within the window of the last value that set one, otherwise
+ * {@code 11}, the leading zeros in 5 bits, the length in 6 and the meaningful bits.
+ * </p>
+ * <p>
+ * Blocks are decoded whole: {@link #get(int)} keeps the last one it decoded, so rows read in
+ * order decode each block once. Values are only appended and committed longs are never
+ * rewritten, the bits of a value are ORed into the last long of the block. Blocks are read
+ * back in order on first use, longs written after the last complete value by a write cut short
+ * are dropped by the next add.
+ * </p>
+ */
+final class XorDoubles {
+
+    /** First long of an encoded region. */
+    static final long MAGIC = 0x5158_4F52_0000_0001L;
+
+    /** Most rows per block. */
+    static final int BLOCK_ROWS = 128;
+
+    private static final int UNKNOWN = 0;
+    private static final int RAW     = 1;
+    private static final int ENCODED = 2;
+
+    private final FixedRegion data;
+
+    // header and position of each block, null until first used
+    private volatile long[] blocks;
+    private int count;
+
+    // block of the last row looked up, rows are mostly read in order
+    private int hint;
+
+    private int format;
+
+    // state of the writer in the last block, rebuilt from it when not open
+    private boolean open;
+    private long prev;
+    private int lead, trail;
+    private long tail;
+
+    // last block decoded by get()
+    private volatile Decoded decoded;
+
+    private record Decoded(int block, int rows, long[] values) {
+    }
+
+    XorDoubles(FixedRegion data) {
+        this.data = data;
+    }
+
+    /**
+     * False for files written raw, before the adapter encoded its rows. Empty files are encoded.
+     */
+    boolean active() throws IOException {
+        int f = format;
+        if (f == UNKNOWN) {
+            if (data.size() == 0)
+                return true;
+            f = data.getLong(0) == MAGIC ? ENCODED : RAW;
+            format = f;
+        }
+        return f == ENCODED;
+    }
+
+    private static int first(long head) {
+        return (int) (head >>> 32);
+    }
+
+    private static int rows(long head) {
+        return (int) (head >>> 20) & 0xFFF;
+    }
+
+    private static int bits(long head) {
+        return (int) head & 0xF_FFFF;
+    }
+
+    private static long head(int first, int rows, int bits) {
+        return (long) first << 32 | (long) rows << 20 | bits;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private long[] blocks() throws IOException {
+        long[] b = blocks;
+        if (b == null) {
+            synchronized (this) {
+                if (blocks == null)
+                    load();
+                b = blocks;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Reads the block headers. A header not continuing the rows before it was never completed,
+     * values a header counts past the stored longs were written after the last commit.
+     */
+    private void load() throws IOException {
+        int words = data.size();
+        long[] b = new long[2 * 16];
+        int n = 0, row = 0;
+
+        for (int pos = 1; pos + 2 <= words; n++) {
+            long head = data.getLong(pos);
+            int rows = rows(head);
+            int bits = bits(head);
+            if (first(head) != row || rows == 0 || rows > BLOCK_ROWS || bits < 64)
+                break;
+
+            int stored = words - pos - 1;
+            if (words(bits) > stored) {
+                // keep the values that were stored whole
+                Reader r = new Reader(read(pos, stored, null, 3));
+                int k = 1;
+                bits = 64;
+                for (; k < rows; k++) {
+                    r.next();
+                    if (r.at > stored * 64)
+                        break;
+                    bits = r.at;
+                }
+                rows = k;
+            }
+
+            if (2 * n == b.length)
+                b = Arrays.copyOf(b, b.length * 2);
+            b[2 * n]     = head(row, rows, bits);
+            b[2 * n + 1] = pos;
+
+            row += rows;
+            pos += 1 + words(bits);
+        }
+
+        count   = n;
+        blocks  = b;
+        open    = false;
+        decoded = null;
+    }
+
+    /**
+     * Picks up the rows a writer process committed, after the region was refreshed.
+     */
+    void refresh() throws IOException {
+        if (blocks != null) {
+            synchronized (this) {
+                load();
+            }
+        }
+    }
+
+    /** Block holding {@code row}: the last one starting at or before it. */
+    private int block(long[] b, int row) {
+        // count is read after blocks, so it never counts entries the array lacks
+        int n = Math.min(count, b.length / 2);
+        int g = hint;
+
+        if (g < n && first(b[2 * g]) <= row && row - first(b[2 * g]) < rows(b[2 * g]))
+            return g;
+
+        // no block holds more rows, so the block is never before this one and mostly this one
+        int lo = Math.max(0, Math.min(n - 1, row / BLOCK_ROWS)), hi = n - 1;
+        if (row - first(b[2 * lo]) < rows(b[2 * lo])) {
+            hint = lo;
+            return lo;
+        }
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (first(b[2 * mid]) <= row)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        hint = lo;
+        return lo;
+    }
+
+    int size() {
+        try {
+            long[] b = blocks();
+            int n = Math.min(count, b.length / 2);
+            return n == 0 ? 0 : first(b[2 * (n - 1)]) + rows(b[2 * (n - 1)]);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads {@code words} longs of the block at {@code pos} past its header, with {@code pad}
+     * zero longs after them so a value cut short reads as zeros.
+     */
+    private long[] read(int pos, int words, long[] buffer, int pad) throws IOException {
+        if (buffer == null || buffer.length < words + pad)
+            buffer = new long[Math.max(words + pad, 64)];
+        data.getLongs(pos + 1, words, buffer);
+        Arrays.fill(buffer, words, words + pad, 0L);
+        return buffer;
+    }
+
+    int add(double value) throws IOException {
+        if (data.size() == 0)
+            data.addLong(MAGIC);
+
+        long[] b = blocks();
+        if (!open)
+            resume(b);
+
+        long v = Double.doubleToRawLongBits(value);
+        int g = count - 1;
+
+        if (g < 0 || rows(b[2 * g]) == BLOCK_ROWS) {
+            int row = g < 0 ? 0 : first(b[2 * g]) + rows(b[2 * g]);
+            int pos = data.size();
+            long head = head(row, 1, 64);
+
+            data.addLong(head);
+            data.addLong(v);
+
+            if (2 * (g + 1) == b.length)
+                b = Arrays.copyOf(b, b.length * 2);
+            b[2 * (g + 1)]     = head;
+            b[2 * (g + 1) + 1] = pos;
+
+            prev  = v;
+            lead  = -1;
+            tail  = v;
+            count = g + 2;
+            blocks = b;
+            return row;
+        }
+
+        long head = b[2 * g];
+        int pos  = (int) b[2 * g + 1];
+        int bits = bits(head);
+        long xor = v ^ prev;
+
+        if (xor == 0) {
+            write(pos, bits, 0, 1);
+            bits += 1;
+        } else {
+            int l = Math.min(31, Long.numberOfLeadingZeros(xor));
+            int t = Long.numberOfTrailingZeros(xor);
+
+            if (lead >= 0 && l >= lead && t >= trail) {
+                int length = 64 - lead - trail;
+                write(pos, bits, 0b01, 2);
+                write(pos, bits + 2, xor >>> trail, length);
+                bits += 2 + length;
+            } else {
+                int length = 64 - l - t;
+                write(pos, bits, 0b11 | l << 2 | (length & 63) << 7, 13);
+                write(pos, bits + 13, xor >>> t, length);
+                bits += 13 + length;
+                lead  = l;
+                trail = t;
+            }
+        }
+
+        prev = v;
+        head = head(first(head), rows(head) + 1, bits);
+        b[2 * g] = head;
+        data.replace(data.rp(pos), head);
+
+        return first(head) + rows(head) - 1;
+    }
+
+    /**
+     * Writes the low {@code n} bits of {@code value} at bit {@code at} of the block at
+     * {@code pos}, the end of its values.
+     */
+    private void write(int pos, int at, long value, int n) throws IOException {
+        int off = at & 63;
+
+        if (off == 0) {
+            tail = value;
+            data.addLong(value);
+            return;
+        }
+
+        tail |= value << off;
+        data.replace(data.rp(pos + 1 + (at >>> 6)), tail);
+
+        if (off + n > 64) {
+            tail = value >>> (64 - off);
+            data.addLong(tail);
+        }
+    }
+
+    /**
+     * Rebuilds the writer state from the last block, dropping longs and bits past its values.
+     */
+    private void resume(long[] b) throws IOException {
+        int g = count - 1;
+        int end = g < 0 ? 1 : (int) b[2 * g + 1] + 1 + words(bits(b[2 * g]));
+
+        if (data.size() > end)
+            data.truncate(end);
+
+        if (g >= 0)
+            restart(b, g, rows(b[2 * g]));
+        open = true;
+    }
+
+    /**
+     * Cuts block {@code g} to {@code k} rows and continues writing after them.
+     */
+    private void restart(long[] b, int g, int k) throws IOException {
+        long head = b[2 * g];
+        int pos = (int) b[2 * g + 1];
+
+        Reader r = new Reader(read(pos, words(bits(head)), null, 1));
+        for (int i = 1; i < k; i++)
+            r.next();
+
+        int bits = r.at;
+        int last = pos + words(bits);
+        data.truncate(last + 1);
+
+        // bits of values past the end are cleared, later values are ORed in
+        long word = data.getLong(last);
+        tail = (bits & 63) == 0 ? word : word & ((1L << (bits & 63)) - 1);
+        if (tail != word)
+            data.replace(data.rp(last), tail);
+
+        head = head(first(head), k, bits);
+        if (head != b[2 * g]) {
+            data.replace(data.rp(pos), head);
+            b[2 * g] = head;
+        }
+
+        prev  = r.value;
+        lead  = r.lead;
+        trail = r.trail;
+    }
+
+    double get(int index) throws IOException {
+        long[] b = blocks();
+        int g = block(b, index);
+        long head = b[2 * g];
+        int k = index - first(head);
+
+        if (index < 0 || k >= rows(head))
+            throw new ArrayIndexOutOfBoundsException("size: " + size() + ", index: " + index);
+
+        Decoded d = decoded;
+        if (d == null || d.block() != g || k >= d.rows()) {
+            long[] values = new long[rows(head)];
+            decode(b, g, values, 0, rows(head), null);
+            d = new Decoded(g, values.length, values);
+            decoded = d;
+        }
+
+        return Double.longBitsToDouble(d.values()[k]);
+    }
+
+    /**
+     * Decodes the first {@code rows} values of block {@code g} into {@code dst} from
+     * {@code offset}.
+     *
+     * @return the buffer used for the block, to pass to the next call
+     */
+    private long[] decode(long[] b, int g, long[] dst, int offset, int rows, long[] buffer) throws IOException {
+        Reader r = new Reader(read((int) b[2 * g + 1], words(bits(b[2 * g])), buffer, 1));
+
+        dst[offset] = r.value;
+        for (int i = 1; i < rows; i++)
+            dst[offset + i] = r.next();
+
+        return r.w;
+    }
+
+    /**
+     * Reads {@code count} rows starting from {@code fromRow} into {@code dst}, a block at a time.
+     */
+    void get(int fromRow, int count, double[] dst) throws IOException {
+        if (fromRow < 0 || count < 0 || fromRow + count > size())
+            throw new ArrayIndexOutOfBoundsException("Requested rows from " + fromRow + " count " + count + ", size " + size());
+
+        long[] b = blocks();
+        long[] values = new long[BLOCK_ROWS];
+        long[] buffer = null;
+
+        for (int done = 0; done < count; ) {
+            int row = fromRow + done;
+            int g = block(b, row);
+            int k = row - first(b[2 * g]);
+            int n = Math.min(count - done, rows(b[2 * g]) - k);
+
+            buffer = decode(b, g, values, 0, k + n, buffer);
+            for (int i = 0; i < n; i++)
+                dst[done + i] = Double.longBitsToDouble(values[k + i]);
+            done += n;
+        }
+    }
+
+    void truncate(int size) throws IOException {
+        if (size >= size())
+            return;
+
+        long[] b = blocks();
+        int g = block(b, size);
+        int k = size - first(b[2 * g]);
+
+        if (k == 0) {
+            data.truncate((int) b[2 * g + 1]);
+            count = g;
+            if (g > 0)
+                restart(b, g - 1, rows(b[2 * (g - 1)]));
+        } else {
+            restart(b, g, k);
+            count = g + 1;
+        }
+
+        open    = true;
+        blocks  = b;
+        decoded = null;
+    }
+
+    /**
+     * Walks the values of one block, from its first one.
+     */
+    private static final class Reader {
+
+        final long[] w;
+        long value;
+        int at = 64;
+        int lead = -1, trail;
+
+        Reader(long[] w) {
+            this.w = w;
+            this.value = w[0];
+        }
+
+        private long bits(int n) {
+            int i = at >>> 6, off = at & 63;
+            long x = w[i] >>> off;
+            if (off + n > 64)
+                x |= w[i + 1] << (64 - off);
+            at += n;
+            return n == 64 ? x : x & ((1L << n) - 1);
+        }
+
+        long next() {
+            if (bits(1) == 0)
+                return value;
+
+            if (bits(1) != 0) {
+                int h = (int) bits(11);
+                int length = h >>> 5 == 0 ? 64 : h >>> 5;
+                lead  = h & 31;
+                trail = 64 - lead - length;
+            }
+
+            value ^= bits(64 - lead - trail) << trail;
+            return value;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import com.quanta.util.Tuple;
 import com.quanta.util.Utils;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class NYCTaxiData {
@@ -43,8 +45,8 @@ public class NYCTaxiData {
         startTime = System.currentTimeMillis();
         q.forEach(row -> {
             stats.totalTrips++;
-            stats.totalFare += (Double) row.get("fare_amount");
-            stats.totalTip += (Double) row.get("tip_amount");
+            stats.totalFare = stats.totalFare.add((BigDecimal) row.get("fare_amount"));
+            stats.totalTip = stats.totalTip.add((BigDecimal) row.get("tip_amount"));
             stats.totalDistance += ((Integer) row.get("trip_distance")) / 100.0;
             stats.totalPassengers += (Integer) row.get("passenger_count");
         });
@@ -73,9 +75,9 @@ public class NYCTaxiData {
                 .addIntColumn("pickup_hour", IndexCardinality.TINY)
                 .addIntColumn("trip_distance", IndexCardinality.MEDIUM)
                 .addIntMetric("passenger_count")
-                .addMetric("fare_amount")
-                .addMetric("tip_amount")
-                .addMetric("total_amount");
+                .addDecimalMetric("fare_amount", 8, 2)
+                .addDecimalMetric("tip_amount", 8, 2)
+                .addDecimalMetric("total_amount", 8, 2);
 
         return qb.getQuanta();
     }
@@ -144,8 +146,8 @@ public class NYCTaxiData {
      */
     static class TaxiStats {
         int totalTrips = 0;
-        double totalFare = 0.0;
-        double totalTip = 0.0;
+        BigDecimal totalFare = BigDecimal.ZERO;
+        BigDecimal totalTip = BigDecimal.ZERO;
         double totalDistance = 0.0;
         int totalPassengers = 0;
 
@@ -157,8 +159,9 @@ public class NYCTaxiData {
             System.out.println("  Total Distance: " + totalDistance + " miles");
             System.out.println("  Total Passengers: " + totalPassengers);
             if (totalTrips > 0) {
-                System.out.println("  - Average Fare per Trip: $" + (totalFare / totalTrips));
-                System.out.println("  - Average Tip per Trip: $" + (totalTip / totalTrips));
+                BigDecimal trips = BigDecimal.valueOf(totalTrips);
+                System.out.println("  - Average Fare per Trip: $" + totalFare.divide(trips, 2, RoundingMode.HALF_EVEN));
+                System.out.println("  - Average Tip per Trip: $" + totalTip.divide(trips, 2, RoundingMode.HALF_EVEN));
                 System.out.println("  - Average Distance per Trip: " + (totalDistance / totalTrips) + " miles");
                 System.out.println("  - Average Passengers per Trip: " + ((double) totalPassengers / totalTrips));
             }
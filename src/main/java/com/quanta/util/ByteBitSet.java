@@ -22,6 +22,16 @@ public class ByteBitSet {
         data = Arrays.copyOf(data, (sizeInBits + 63) / 64);
     }
 
+    /**
+     * Resizes to {@code sizeInBits} and clears the bits past it in the last word.
+     */
+    public void limit(int sizeInBits) {
+        if (data.length != (sizeInBits + 63) / 64)
+            resize(sizeInBits);
+        if (sizeInBits % 64 != 0)
+            data[data.length - 1] &= -1L >>> (64 - sizeInBits % 64);
+    }
+
     public int cardinality() {
         int sum = 0;
         for(long l : data)
@@ -44,6 +54,28 @@ public class ByteBitSet {
         data[i / 64] &= ~(1L << (i % 64));
     }
 
+    /**
+     * Sets the bits {@code from..to-1}, a word at a time.
+     */
+    public void set(int from, int to) {
+        if (from >= to)
+            return;
+
+        int a = from >>> 6;
+        int b = (to - 1) >>> 6;
+        long first = -1L << from;
+        long last  = -1L >>> -to;
+
+        if (a == b) {
+            data[a] |= first & last;
+            return;
+        }
+
+        data[a] |= first;
+        Arrays.fill(data, a + 1, b, -1L);
+        data[b] |= last;
+    }
+
     public void set(int i, boolean b) {
         if(b) set(i); else unset(i);
     }
@@ -75,13 +107,18 @@ public class ByteBitSet {
         data[pos] ^= word;
     }
 
+    public void or(int pos, long word) {
+        data[pos] |= word;
+    }
+
 
 
     public void and(ByteBitSet another) {
         long[] o = another.data;
 
+        // words missing from a shorter set are 0
         for (int i = data.length - 1; i > -1 ; i--) {
-            data[i] &= o[i];
+            data[i] = i < o.length ? data[i] & o[i] : 0;
         }
     }
     public void xor(ByteBitSet another) {
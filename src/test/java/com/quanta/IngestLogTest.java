@@ -0,0 +1,164 @@
+package com.quanta;
+
+import com.quanta.util.Tuple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IngestLogTest {
+
+    private static final List<String> COLUMNS = List.of("id", "big", "fare", "flag", "name", "note", "at", "day", "time");
+
+    @TempDir
+    Path dir;
+
+    private static Tuple row(int i) {
+        Timestamp at = new Timestamp(1_700_000_000_000L + i * 1000L);
+        at.setNanos(i * 1000);
+        return new Tuple()
+                .set("id", i)
+                .set("big", (long) i << 33)
+                .set("fare", i * 0.25)
+                .set("flag", i % 3 == 0)
+                .set("name", "row-" + i + "-\u00e9\u4e2d")
+                .set("note", null)
+                .set("at", at)
+                .set("day", LocalDate.of(2024, 1, 1).plusDays(i))
+                .set("time", LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(i).plusNanos(i));
+    }
+
+    private static void append(IngestLog log, int from, int to) throws IOException {
+        for (int i = from; i < to; i++)
+            log.append(i, COLUMNS, row(i));
+    }
+
+    // row numbers replayed, after checking each row
+    private static List<Long> replay(IngestLog log) throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        log.replay(COLUMNS, (row, index) -> {
+            Tuple expected = row((int) index);
+            for (String c : COLUMNS)
+                assertEquals((Object) expected.get(c), row.get(c), c + " of row " + index);
+            indexes.add(index);
+        });
+        return indexes;
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> list = new ArrayList<>();
+        for (long i = from; i < to; i++)
+            list.add(i);
+        return list;
+    }
+
+    @Test
+    void replaysEveryLoggedRow() throws IOException {
+        String file = dir.resolve("log").toString();
+
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            Files.deleteIfExists(dir.resolve("log"));
+
+            IngestLog log = new IngestLog(file, policy, 0, 10);
+            append(log, 0, 105);
+            log.close();
+
+            log = new IngestLog(file, policy, 0, 10);
+            assertEquals(0, log.base());
+            assertEquals(range(0, 105), replay(log), policy.name());
+
+            // appends continue after the replayed rows
+            append(log, 105, 120);
+            log.close();
+
+            log = new IngestLog(file, policy, 0, 10);
+            assertEquals(range(0, 120), replay(log), policy.name());
+            log.close();
+        }
+    }
+
+    @Test
+    void checkpointEmptiesTheLog() throws IOException {
+        String file = dir.resolve("log").toString();
+
+        IngestLog log = new IngestLog(file, SyncPolicy.GROUP, 0, 16);
+        append(log, 0, 50);
+        log.checkpoint(50);
+        assertEquals(50, log.base());
+        append(log, 50, 60);
+        log.close();
+
+        log = new IngestLog(file, SyncPolicy.GROUP, 0, 16);
+        assertEquals(50, log.base());
+        assertEquals(range(50, 60), replay(log));
+        log.close();
+    }
+
+    @Test
+    void dropsATornOrCorruptTail() throws IOException {
+        String file = dir.resolve("log").toString();
+
+        IngestLog log = new IngestLog(file, SyncPolicy.ALWAYS, 0, 1);
+        append(log, 0, 30);
+        log.close();
+        long intact = Files.size(dir.resolve("log"));
+
+        // half of a record, as left by a write cut short
+        log = new IngestLog(file, SyncPolicy.ALWAYS, 0, 1);
+        append(log, 30, 31);
+        log.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 20);
+        }
+
+        log = new IngestLog(file, SyncPolicy.ALWAYS, 0, 1);
+        assertEquals(range(0, 30), replay(log));
+        assertEquals(intact, Files.size(dir.resolve("log")));
+        append(log, 30, 40);
+        log.close();
+
+        // a record whose bytes do not match its checksum ends the log
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long record = (raf.length() - intact) / 10;
+            raf.seek(intact + 5 * record + 20);
+            raf.write(raf.read() ^ 0xFF);
+        }
+
+        log = new IngestLog(file, SyncPolicy.ALWAYS, 0, 1);
+        assertEquals(range(0, 35), replay(log));
+        append(log, 35, 40);
+        log.close();
+
+        log = new IngestLog(file, SyncPolicy.ALWAYS, 0, 1);
+        assertEquals(range(0, 40), replay(log));
+        log.close();
+    }
+
+    @Test
+    void rejectsRowsAndLogsOfAnotherSchema() throws IOException {
+        String file = dir.resolve("log").toString();
+
+        IngestLog log = new IngestLog(file, SyncPolicy.OS, 0, 100);
+        assertThrows(IllegalArgumentException.class, () -> log.append(0, COLUMNS, new Tuple().set("id", 1)));
+        append(log, 0, 5);
+        log.close();
+
+        IngestLog reopened = new IngestLog(file, SyncPolicy.OS, 0, 100);
+        assertThrows(IOException.class, () -> reopened.replay(List.of("id"), (row, index) -> { }));
+        reopened.close();
+
+        Files.write(dir.resolve("other"), new byte[64]);
+        assertThrows(IOException.class, () -> new IngestLog(dir.resolve("other").toString(), SyncPolicy.OS, 0, 100));
+    }
+}
@@ -0,0 +1,175 @@
+package com.quanta;
+
+import com.quanta.column.Column;
+import com.quanta.util.Tuple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A crash is a dataset that is never closed: the same files are opened again while the first
+ * instance still maps them, as the process restarted after it died would.
+ */
+class QuantaRecoveryTest {
+
+    private static final String[] LOCS = {"Manhattan", "Brooklyn", "Queens", "Bronx", "Staten Island"};
+
+    @TempDir
+    Path dir;
+
+    private Quanta open(boolean clean, int checkpoint, boolean log) throws IOException {
+        QuantaBuilder qb = new QuantaBuilder("T", dir.toString(), clean);
+        if (checkpoint > 0)
+            qb.checkpoint(checkpoint);
+        if (log)
+            qb.ingestLog(SyncPolicy.ALWAYS, 0, 1);
+        return qb.addIntPrimaryKey("id")
+                .addDictionaryColumn("loc", 20)
+                .addIntColumn("hour", IndexCardinality.TINY)
+                .addMetric("fare")
+                .addIntMetric("clicks")
+                .getQuanta();
+    }
+
+    private static Tuple row(int i) {
+        return new Tuple().set("id", i).set("loc", LOCS[i % 5]).set("hour", i % 24).set("fare", i * 0.5).set("clicks", i % 7);
+    }
+
+    private static void add(Quanta q, int from, int to) {
+        for (int i = from; i < to; i++)
+            q.add(row(i));
+    }
+
+    private static int count(Query query) {
+        int n = 0;
+        for (Tuple ignored : query)
+            n++;
+        return n;
+    }
+
+    private static void check(Quanta q, int size) throws IOException {
+        assertEquals(size, q.size());
+        for (Column<?> c : q.columns())
+            assertEquals(size, c.size(), c.name);
+
+        for (int i = 0; i < size; i += 37) {
+            Tuple t = q.get(i);
+            assertEquals(i, (int) t.get("id"));
+            assertEquals(LOCS[i % 5], t.get("loc"));
+            assertEquals(i % 24, (int) t.get("hour"));
+            assertEquals(i * 0.5, (double) t.get("fare"));
+            assertEquals(i % 7, (int) t.get("clicks"));
+        }
+
+        // the indexes cover every row and no other
+        int queens = 0, hour = 0;
+        for (int i = 0; i < size; i++) {
+            if (i % 5 == 2)
+                queens++;
+            if (i % 24 == 5)
+                hour++;
+        }
+        assertEquals(queens, count(q.newQuery().and("loc", "Queens")));
+        assertEquals(hour, count(q.newQuery().and("hour", 5)));
+        assertEquals(1, count(q.newQuery().and("id", size - 1)));
+        assertEquals(0, count(q.newQuery().and("id", size)));
+        assertTrue(q.verify(2).isEmpty());
+    }
+
+    @Test
+    void replaysTheIngestLog() throws IOException {
+        Quanta crashed = open(true, 1000, true);
+        add(crashed, 0, 2500);
+        crashed.rebuild();
+        add(crashed, 2500, 3750);
+
+        // the columns reopen at the last checkpoint, the log holds every row after it
+        Quanta q = open(false, 1000, true);
+        check(q, 3750);
+        add(q, 3750, 4000);
+        q.rebuild();
+        check(q, 4000);
+        q.close();
+
+        q = open(false, 1000, true);
+        check(q, 4000);
+        q.close();
+    }
+
+    @Test
+    void dropsALoggedRowTornByTheCrash() throws IOException {
+        Quanta crashed = open(true, 1000, true);
+        add(crashed, 0, 1500);
+
+        try (RandomAccessFile raf = new RandomAccessFile(dir.resolve(Quanta.LOG_FILE).toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        Quanta q = open(false, 1000, true);
+        check(q, 1499);
+        add(q, 1499, 1600);
+        q.close();
+
+        q = open(false, 1000, true);
+        check(q, 1600);
+        q.close();
+    }
+
+    @Test
+    void trimsColumnsToTheLastCheckpoint() throws IOException {
+        Quanta crashed = open(true, 1000, false);
+        add(crashed, 0, 2600);
+
+        // encoded columns may keep rows whose longs the checkpoint committed, every column holds them
+        Quanta q = open(false, 1000, false);
+        int size = q.size();
+        assertTrue(size >= 2000 && size < 2600, "size " + size);
+        check(q, size);
+        add(q, size, 3000);
+        q.rebuild();
+        check(q, 3000);
+        q.close();
+    }
+
+    @Test
+    void trimsARowOnlySomeColumnsHold() throws IOException {
+        Quanta crashed = open(true, 0, false);
+        add(crashed, 0, 700);
+        crashed.rebuild();
+
+        // the row reaches the columns before the one it lacks, then fails
+        assertThrows(RuntimeException.class, () -> crashed.add(new Tuple().set("id", 700).set("loc", "Queens")));
+        assertEquals(701, crashed.columns()[0].size());
+        assertEquals(700, crashed.size());
+
+        Quanta q = open(false, 0, false);
+        check(q, 700);
+        add(q, 700, 800);
+        q.close();
+
+        q = open(false, 0, false);
+        check(q, 800);
+        q.close();
+    }
+
+    @Test
+    void closedDatasetsNeedNoRecovery() throws IOException {
+        Quanta q = open(true, 1000, true);
+        add(q, 0, 1234);
+        q.close();
+
+        q = open(false, 1000, true);
+        for (Column<?> c : q.columns())
+            assertFalse(c.needsRecovery(), c.name);
+        check(q, 1234);
+        q.close();
+    }
+}
@@ -0,0 +1,137 @@
+package com.quanta.blob;
+
+import com.quanta.Quanta;
+import com.quanta.QuantaBuilder;
+import com.quanta.Query;
+import com.quanta.column.Column;
+import com.quanta.util.Tuple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadOnlyRefreshTest {
+
+    @TempDir
+    Path dir;
+
+    // 20 KB each, so that 250 of them fill the first 4 MB dictionary block and it is compressed
+    private static String name(int i) {
+        StringBuilder b = new StringBuilder("name-" + i + "-");
+        while (b.length() < 20_000)
+            b.append((char) ('a' + (b.length() * 7 + i) % 3));
+        return b.toString();
+    }
+
+    // 250 names, then 5 only added once the reader is open
+    private static int nameOf(int row) {
+        return row < 3000 ? row % 250 : 250 + row % 5;
+    }
+
+    private static Tuple row(int i) {
+        return new Tuple().set("id", i).set("name", name(nameOf(i))).set("fare", i * 0.5).set("clicks", i % 7);
+    }
+
+    private Quanta writer(boolean clean) throws IOException {
+        return schema(new QuantaBuilder("T", dir.toString(), clean).checkpoint(500).extentRows(64).compression());
+    }
+
+    private Quanta reader() throws IOException {
+        return schema(new QuantaBuilder("T", dir.toString()).readOnly());
+    }
+
+    private static Quanta schema(QuantaBuilder qb) throws IOException {
+        return qb.addIntPrimaryKey("id")
+                .addDictionaryColumn("name", 20_100)
+                .addMetric("fare")
+                .addIntMetric("clicks")
+                .getQuanta();
+    }
+
+    private static void add(Quanta q, int from, int to) {
+        for (int i = from; i < to; i++)
+            q.add(row(i));
+    }
+
+    private static int count(Query query) {
+        int n = 0;
+        for (Tuple ignored : query)
+            n++;
+        return n;
+    }
+
+    // blocks of the regions of 'column' in warm-up tier 'tier' that compaction packed
+    private static int packed(Quanta q, String column, int tier) {
+        int n = 0;
+        for (Column<?> c : q.columns()) {
+            if (!c.name.equals(column))
+                continue;
+            for (Region r : c.warmRegions(tier)) {
+                for (int b = 0; r.packed != null && b < r.packed.length; b++) {
+                    if (r.packed[b] != 0)
+                        n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static void check(Quanta q, int size) throws IOException {
+        assertEquals(size, q.size());
+        for (int i = 0; i < size; i += i < 20 || i > size - 20 ? 1 : 7) {
+            Tuple t = q.get(i);
+            assertEquals(i, (int) t.get("id"));
+            assertEquals(name(nameOf(i)), t.get("name"), "name of row " + i);
+            assertEquals(i * 0.5, (double) t.get("fare"));
+            assertEquals(i % 7, (int) t.get("clicks"));
+        }
+    }
+
+    @Test
+    void refreshesOverCompactedCompressedFiles() throws IOException {
+        Quanta w = writer(true);
+        add(w, 0, 3000);
+        w.rebuild();
+        w.compact();
+        w.close();
+
+        w = writer(false);
+        Quanta r = reader();
+        assertTrue(r.isReadOnly());
+        assertTrue(packed(r, "name", 1) > 0, "dictionary strings not packed");
+        assertTrue(packed(r, "fare", 2) > 0, "metric extents not packed");
+        check(r, 3000);
+        assertEquals(12, count(r.newQuery().and("name", name(7))));
+        assertFalse(r.refresh());
+
+        // new names go to the raw blocks after the compressed ones
+        add(w, 3000, 3600);
+        w.commit();
+        assertTrue(r.refresh());
+        check(r, 3600);
+
+        add(w, 3600, 4000);
+        w.rebuild();
+        assertTrue(r.refresh());
+        check(r, 4000);
+        assertEquals(200, count(r.newQuery().and("name", name(252))));
+        assertEquals(12, count(r.newQuery().and("name", name(7))));
+        assertEquals(1, count(r.newQuery().and("id", 3999)));
+
+        assertThrows(UnsupportedOperationException.class, () -> r.add(row(4000)));
+        w.close();
+        r.close();
+
+        // a reader opened after the writer sees the same rows
+        Quanta later = reader();
+        check(later, 4000);
+        assertEquals(200, count(later.newQuery().and("name", name(254))));
+        later.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.quanta.column;
+
+import com.quanta.blob.Blob;
+import com.quanta.blob.BlobFactory;
+import com.quanta.blob.MemoryBlob;
+import com.quanta.data.Dictionary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueHashTest {
+
+    @TempDir
+    Path dir;
+
+    private Dictionary values;
+    private Blob valuesBlob;
+
+    private static String value(int i) {
+        return "value-" + i * 7919;
+    }
+
+    private ValueHash<String> open() throws IOException {
+        values = new Dictionary(32);
+        valuesBlob = new MemoryBlob(dir.resolve("values").toString(), values.regions());
+        return new ValueHash<>(dir.resolve("hash").toString(), values, new BlobFactory());
+    }
+
+    private void close(ValueHash<String> hash) throws IOException {
+        hash.close();
+        valuesBlob.close();
+    }
+
+    private static void add(ValueHash<String> hash, Dictionary values, int from, int to) throws IOException {
+        for (int i = from; i < to; i++)
+            hash.add(value(i), values.add(value(i)));
+    }
+
+    private static void check(ValueHash<String> hash, int size) throws IOException {
+        assertTrue(hash.current());
+        for (int i = 0; i < size; i++)
+            assertEquals(i, hash.find(value(i)), value(i));
+        for (int i = size; i < size + 100; i++)
+            assertEquals(-1, hash.find(value(i)), value(i));
+    }
+
+    @Test
+    void findsEveryIdAcrossRehashesAndReopens() throws IOException {
+        ValueHash<String> hash = open();
+        hash.sync();
+        add(hash, values, 0, 3000);
+        check(hash, 3000);
+        close(hash);
+
+        hash = open();
+        hash.sync();
+        check(hash, 3000);
+        add(hash, values, 3000, 5000);
+        check(hash, 5000);
+        assertFalse(hash.uncertain());
+        close(hash);
+    }
+
+    @Test
+    void rebuildsAfterTheValuesWereTruncated() throws IOException {
+        ValueHash<String> hash = open();
+        hash.sync();
+        add(hash, values, 0, 4000);
+        close(hash);
+
+        hash = open();
+        values.truncate(2500);
+        assertFalse(hash.current());
+        hash.sync();
+        check(hash, 2500);
+
+        add(hash, values, 2500, 3000);
+        check(hash, 3000);
+        close(hash);
+    }
+
+    @Test
+    void catchesUpWithIdsAddedWithoutIt() throws IOException {
+        ValueHash<String> hash = open();
+        hash.sync();
+        add(hash, values, 0, 1000);
+
+        // ids the table missed, as after a crash between the values and the table
+        for (int i = 1000; i < 1200; i++)
+            values.add(value(i));
+        assertFalse(hash.current());
+
+        add(hash, values, 1200, 1201);
+        check(hash, 1201);
+        close(hash);
+    }
+
+    @Test
+    void rebuildsATableNotClosedCleanly() throws IOException {
+        ValueHash<String> crashed = open();
+        crashed.sync();
+        add(crashed, values, 0, 2000);
+        valuesBlob.close();
+
+        // the first table is never closed, its file is reopened as after a crash
+        ValueHash<String> hash = open();
+        hash.sync();
+        check(hash, 2000);
+        add(hash, values, 2000, 2100);
+        check(hash, 2100);
+        close(hash);
+    }
+}
@@ -0,0 +1,176 @@
+package com.quanta.data;
+
+import com.quanta.blob.Blob;
+import com.quanta.blob.MemoryBlob;
+import com.quanta.util.ByteBitSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BooleanAdapterTest {
+
+    @TempDir
+    Path dir;
+
+    private static boolean[] values(int n) {
+        Random r = new Random(6);
+        boolean[] v = new boolean[n];
+        for (int i = 0; i < n; i++)
+            v[i] = i < n / 2 ? r.nextInt(10) == 0 : r.nextBoolean();
+        return v;
+    }
+
+    private static void check(BooleanAdapter a, boolean[] v, int size) throws IOException {
+        assertEquals(size, a.size());
+        for (int i = 0; i < size; i++)
+            assertEquals(v[i], a.get(i), "row " + i);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> a.get(size));
+
+        // limits within a long and past the rows
+        for (int limit : new int[] {size, size - 1, size / 2 + 13, size + 100}) {
+            for (boolean value : new boolean[] {true, false}) {
+                ByteBitSet set = new ByteBitSet(size + 100);
+                a.mark(value, limit, set);
+                for (int i = 0; i < size + 100; i++)
+                    assertEquals(i < Math.min(limit, size) && v[i] == value, set.get(i), "mark " + value + " row " + i);
+            }
+        }
+    }
+
+    @Test
+    void roundTripsAndReopens() throws IOException {
+        String file = dir.resolve("bits").toString();
+        boolean[] v = values(10000);
+
+        BooleanAdapter a = new BooleanAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int i = 0; i < 4000; i++)
+            assertEquals(i, a.add(v[i]));
+        check(a, v, 4000);
+        blob.close();
+
+        BooleanAdapter reopened = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, reopened.regions());
+        check(reopened, v, 4000);
+        for (int i = 4000; i < v.length; i++)
+            reopened.add(v[i]);
+        check(reopened, v, v.length);
+
+        // the count, then a bit per row
+        assertEquals(1 + (v.length + 63) / 64, reopened.data.size());
+        assertEquals(v.length, reopened.data.getLong(0));
+        assertThrows(UnsupportedOperationException.class, () -> reopened.insert(0, true));
+        blob.close();
+
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        blob.close();
+    }
+
+    @Test
+    void readsFilesWrittenAByteARow() throws IOException {
+        String file = dir.resolve("bytes").toString();
+        boolean[] v = values(1000);
+
+        BooleanAdapter a = new BooleanAdapter();
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (boolean x : v)
+            a.add(x);
+        blob.close();
+
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        a.insert(0, true);
+        assertEquals(v.length + 1, a.size());
+        blob.close();
+    }
+
+    @Test
+    void truncatesWithinALong() throws IOException {
+        String file = dir.resolve("truncate").toString();
+        boolean[] v = values(5000);
+
+        BooleanAdapter a = new BooleanAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (boolean x : v)
+            a.add(x);
+
+        // the bits past the cut are cleared, later rows are ORed in
+        a.truncate(2011);
+        check(a, v, 2011);
+
+        boolean[] w = v.clone();
+        for (int i = 2011; i < w.length; i++)
+            w[i] = !v[i];
+        for (int i = 2011; i < w.length; i++)
+            a.add(w[i]);
+        check(a, w, w.length);
+        blob.close();
+
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, w, w.length);
+        a.truncate(0);
+        assertEquals(0, a.size());
+        a.add(true);
+        assertTrue(a.get(0));
+        blob.close();
+    }
+
+    @Test
+    void dropsATornTail() throws IOException {
+        String file = dir.resolve("torn").toString();
+        boolean[] v = new boolean[5000];
+        // all set, so that a stale bit would show
+        Arrays.fill(v, true);
+
+        BooleanAdapter a = new BooleanAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (boolean x : v)
+            a.add(x);
+        blob.close();
+
+        // a write cut short: the count holds rows whose long was never committed
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        a.data.truncate(a.data.size() - 1);
+        blob.close();
+
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, 4992);
+        blob.close();
+
+        // and bits ORed in past a count that was not written
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        a.data.replace(a.data.rp(0), 4950L);
+        blob.close();
+
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, 4950);
+        boolean[] w = v.clone();
+        for (int i = 4950; i < w.length; i++)
+            w[i] = false;
+        for (int i = 4950; i < w.length; i++)
+            a.add(w[i]);
+        check(a, w, w.length);
+        blob.close();
+
+        a = new BooleanAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, w, w.length);
+        blob.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.quanta.data;
+
+import com.quanta.blob.Blob;
+import com.quanta.blob.MemoryBlob;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameOfReferenceTest {
+
+    @TempDir
+    Path dir;
+
+    // sequential keys, then timestamps with jitter, then a jump and random values
+    private static long[] values(int n) {
+        Random r = new Random(1);
+        long[] v = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (i < n / 4)
+                v[i] = 1000 + i;
+            else if (i < n / 2)
+                v[i] = 1_700_000_000_000L + i * 1000L + r.nextInt(50);
+            else if (i < 3 * n / 4)
+                v[i] = i % 7 == 0 ? Long.MIN_VALUE : Long.MAX_VALUE - r.nextInt(1000);
+            else
+                v[i] = r.nextLong();
+        }
+        return v;
+    }
+
+    private static void check(LongAdapter a, long[] v, int size) throws IOException {
+        assertEquals(size, a.size());
+        for (int i = 0; i < size; i++)
+            assertEquals(v[i], (long) a.get(i), "row " + i);
+
+        // runs crossing group boundaries
+        for (int from = 0; from < size; from += 1500) {
+            int count = Math.min(2100, size - from);
+            long[] dst = new long[count];
+            a.getLongs(from, count, dst);
+            for (int i = 0; i < count; i++)
+                assertEquals(v[from + i], dst[i], "run row " + (from + i));
+        }
+    }
+
+    @Test
+    void roundTripsAndReopens() throws IOException {
+        String file = dir.resolve("long").toString();
+        long[] v = values(6000);
+
+        LongAdapter a = new LongAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int i = 0; i < 4000; i++)
+            assertEquals(i, a.add(v[i]));
+        check(a, v, 4000);
+        blob.close();
+
+        a = new LongAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, 4000);
+        for (int i = 4000; i < v.length; i++)
+            a.add(v[i]);
+        check(a, v, v.length);
+        blob.close();
+
+        a = new LongAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        assertEquals(FrameOfReference.MAGIC, a.data.getLong(0));
+        blob.close();
+    }
+
+    @Test
+    void intsWrapAtTheirWidth() throws IOException {
+        String file = dir.resolve("int").toString();
+        int[] v = new int[5000];
+        Random r = new Random(2);
+        for (int i = 0; i < v.length; i++)
+            v[i] = i % 3 == 0 ? Integer.MIN_VALUE + i : i % 3 == 1 ? Integer.MAX_VALUE - i : r.nextInt();
+
+        IntAdapter a = new IntAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int x : v)
+            a.add(x);
+        blob.close();
+
+        IntAdapter reopened = new IntAdapter(true);
+        blob = new MemoryBlob(file, reopened.regions());
+        assertEquals(v.length, reopened.size());
+        int[] dst = new int[v.length];
+        reopened.getInts(0, v.length, dst);
+        assertArrayEquals(v, dst);
+        for (int i = 0; i < v.length; i += 13)
+            assertEquals(v[i], reopened.getInt(i));
+        assertThrows(UnsupportedOperationException.class, () -> reopened.insert(0, 1));
+        blob.close();
+    }
+
+    @Test
+    void truncatesWithinAGroup() throws IOException {
+        String file = dir.resolve("truncate").toString();
+        long[] v = values(5000);
+
+        LongAdapter a = new LongAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (long x : v)
+            a.add(x);
+
+        a.truncate(2500);
+        check(a, v, 2500);
+
+        // rows added after the cut replace the dropped ones
+        long[] w = v.clone();
+        for (int i = 2500; i < w.length; i++)
+            w[i] = -i;
+        for (int i = 2500; i < w.length; i++)
+            a.add(w[i]);
+        check(a, w, w.length);
+        blob.close();
+
+        a = new LongAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, w, w.length);
+        a.truncate(0);
+        assertEquals(0, a.size());
+        a.add(7L);
+        assertEquals(7L, (long) a.get(0));
+        blob.close();
+    }
+
+    @Test
+    void dropsATornTail() throws IOException {
+        String file = dir.resolve("torn").toString();
+        long[] v = values(5000);
+
+        LongAdapter a = new LongAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (long x : v)
+            a.add(x);
+        blob.close();
+
+        // a write cut short: the group header counts rows whose longs were never committed
+        a = new LongAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        a.data.truncate(a.data.size() - 3);
+        blob.close();
+
+        a = new LongAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        int kept = a.size();
+        assertTrue(kept < v.length && kept > v.length - 3 * 64, "kept " + kept);
+        check(a, v, kept);
+
+        for (int i = kept; i < v.length; i++)
+            a.add(v[i]);
+        check(a, v, v.length);
+        blob.close();
+
+        a = new LongAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        blob.close();
+    }
+}
@@ -0,0 +1,168 @@
+package com.quanta.data;
+
+import com.quanta.blob.Blob;
+import com.quanta.blob.MemoryBlob;
+import com.quanta.util.ByteBitSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedIntAdapterTest {
+
+    @TempDir
+    Path dir;
+
+    // 5 distinct ids, then 300, then up to the most packed, so the width grows twice
+    private static int[] ids(int n) {
+        Random r = new Random(4);
+        int[] v = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (i < n / 3)
+                v[i] = r.nextInt(5);
+            else if (i < 2 * n / 3)
+                v[i] = r.nextInt(300);
+            else
+                v[i] = r.nextInt(PackedIntAdapter.MAX_UNIQUE);
+        }
+        return v;
+    }
+
+    private static void check(PackedIntAdapter a, int[] v, int size) throws IOException {
+        assertEquals(size, a.size());
+        for (int i = 0; i < size; i++)
+            assertEquals(v[i], a.getInt(i), "row " + i);
+
+        for (int from = 0; from < size; from += 9000) {
+            int count = Math.min(12345, size - from);
+            int[] dst = new int[count];
+            a.getInts(from, count, dst);
+            for (int i = 0; i < count; i++)
+                assertEquals(v[from + i], dst[i], "run row " + (from + i));
+        }
+
+        // within a group of each width, from and to off long boundaries
+        for (int target : new int[] {0, 3, 299, v[size - 1]}) {
+            int from = 7, to = size - 5;
+            ByteBitSet set = new ByteBitSet(size);
+            a.mark(from, to, target, set);
+            for (int i = 0; i < size; i++)
+                assertEquals(i >= from && i < to && v[i] == target, set.get(i), "mark " + target + " row " + i);
+        }
+    }
+
+    @Test
+    void roundTripsAndReopens() throws IOException {
+        String file = dir.resolve("packed").toString();
+        int[] v = ids(60000);
+
+        PackedIntAdapter a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int i = 0; i < 30000; i++)
+            assertEquals(i, a.add(v[i]));
+        check(a, v, 30000);
+        blob.close();
+
+        PackedIntAdapter reopened = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        blob = new MemoryBlob(file, reopened.regions());
+        check(reopened, v, 30000);
+        for (int i = 30000; i < v.length; i++)
+            reopened.add(v[i]);
+        check(reopened, v, v.length);
+        assertThrows(IllegalArgumentException.class, () -> reopened.add(-1));
+        assertThrows(UnsupportedOperationException.class, () -> reopened.insert(0, 1));
+        blob.close();
+
+        a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        blob.close();
+
+        assertThrows(IllegalArgumentException.class, () -> new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE + 1));
+    }
+
+    @Test
+    void fewIdsTakeFewBits() throws IOException {
+        String file = dir.resolve("few").toString();
+
+        PackedIntAdapter a = new PackedIntAdapter(10);
+        Blob blob = new MemoryBlob(file, a.regions());
+        // the widest id first, so that no group is closed early
+        for (int i = 0; i < (PackedIntAdapter.GROUP - 1) * 21; i++)
+            a.add((i + 4) % 5);
+
+        // 3 bits, 21 ids per long: one full group
+        assertEquals(PackedIntAdapter.GROUP, a.data.size());
+        a.add(0);
+        assertEquals(PackedIntAdapter.GROUP + 2, a.data.size());
+        blob.close();
+    }
+
+    @Test
+    void truncatesWithinALong() throws IOException {
+        String file = dir.resolve("truncate").toString();
+        int[] v = ids(30000);
+
+        PackedIntAdapter a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int x : v)
+            a.add(x);
+
+        // back into the 9 bit groups: later ids are ORed into the cut long
+        a.truncate(15001);
+        check(a, v, 15001);
+
+        int[] w = v.clone();
+        for (int i = 15001; i < w.length; i++)
+            w[i] = i % 2;
+        for (int i = 15001; i < w.length; i++)
+            a.add(w[i]);
+        check(a, w, w.length);
+        blob.close();
+
+        a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, w, w.length);
+        blob.close();
+    }
+
+    @Test
+    void dropsATornTail() throws IOException {
+        String file = dir.resolve("torn").toString();
+        int[] v = ids(30000);
+
+        PackedIntAdapter a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int x : v)
+            a.add(x);
+        blob.close();
+
+        // a write cut short: the group header counts ids whose longs were never committed
+        a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        blob = new MemoryBlob(file, a.regions());
+        a.data.truncate(a.data.size() - 2);
+        blob.close();
+
+        a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        blob = new MemoryBlob(file, a.regions());
+        int kept = a.size();
+        assertTrue(kept < v.length && kept >= v.length - 3 * 4, "kept " + kept);
+        check(a, v, kept);
+
+        for (int i = kept; i < v.length; i++)
+            a.add(v[i]);
+        check(a, v, v.length);
+        blob.close();
+
+        a = new PackedIntAdapter(PackedIntAdapter.MAX_UNIQUE);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        blob.close();
+    }
+}
@@ -0,0 +1,177 @@
+package com.quanta.data;
+
+import com.quanta.blob.Blob;
+import com.quanta.blob.MemoryBlob;
+import com.quanta.util.ByteBitSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RunLengthAdapterTest {
+
+    @TempDir
+    Path dir;
+
+    // runs of 1 to 200 rows over 40 values, a value may follow itself after a cut
+    private static int[] values(int n) {
+        Random r = new Random(5);
+        int[] v = new int[n];
+        for (int i = 0; i < n; ) {
+            int value = r.nextInt(40);
+            for (int end = Math.min(n, i + 1 + r.nextInt(200)); i < end; i++)
+                v[i] = value;
+        }
+        return v;
+    }
+
+    private static void check(RunLengthAdapter<Integer> a, int[] v, int size) throws IOException {
+        assertEquals(size, a.size());
+        for (int i = 0; i < size; i++)
+            assertEquals(v[i], a.getInt(i), "row " + i);
+        for (int i = size - 1; i >= 0; i -= 97)
+            assertEquals(v[i], (int) a.get(i), "row " + i);
+
+        for (int from = 0; from < size; from += 3000) {
+            int count = Math.min(4321, size - from);
+            int[] dst = new int[count];
+            a.getInts(from, count, dst);
+            for (int i = 0; i < count; i++)
+                assertEquals(v[from + i], dst[i], "run row " + (from + i));
+        }
+
+        int from = 3, to = size - 2;
+        ByteBitSet byValue = new ByteBitSet(size);
+        a.mark(from, to, 7, byValue);
+        boolean[] match = new boolean[40];
+        match[7] = match[39] = true;
+        ByteBitSet byMatch = new ByteBitSet(size);
+        a.mark(from, to, match, byMatch);
+        for (int i = 0; i < size; i++) {
+            boolean in = i >= from && i < to;
+            assertEquals(in && v[i] == 7, byValue.get(i), "mark row " + i);
+            assertEquals(in && (v[i] == 7 || v[i] == 39), byMatch.get(i), "match row " + i);
+        }
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> a.getInt(size));
+    }
+
+    private record Opened(RunLengthAdapter<Integer> adapter, IntAdapter runs, Blob blob) {
+    }
+
+    private static Opened open(String file) throws IOException {
+        IntAdapter runs = new IntAdapter();
+        RunLengthAdapter<Integer> a = new RunLengthAdapter<>(runs);
+        return new Opened(a, runs, new MemoryBlob(file, a.regions()));
+    }
+
+    @Test
+    void roundTripsAndReopens() throws IOException {
+        String file = dir.resolve("rle").toString();
+        int[] v = values(50000);
+
+        Opened o = open(file);
+        for (int i = 0; i < 20000; i++)
+            assertEquals(i, o.adapter().add(v[i]));
+        check(o.adapter(), v, 20000);
+        o.blob().close();
+
+        o = open(file);
+        check(o.adapter(), v, 20000);
+        for (int i = 20000; i < v.length; i++)
+            o.adapter().add(v[i]);
+        check(o.adapter(), v, v.length);
+        o.blob().close();
+
+        o = open(file);
+        check(o.adapter(), v, v.length);
+        int runs = 1;
+        for (int i = 1; i < v.length; i++)
+            if (v[i] != v[i - 1])
+                runs++;
+        assertEquals(runs, o.runs().size());
+        o.blob().close();
+    }
+
+    @Test
+    void truncatesWithinARun() throws IOException {
+        String file = dir.resolve("truncate").toString();
+        int[] v = values(20000);
+
+        Opened o = open(file);
+        for (int x : v)
+            o.adapter().add(x);
+
+        // the cut run keeps its value and continues with the next equal row
+        int cut = 12345;
+        while (v[cut] != v[cut - 1])
+            cut++;
+        o.adapter().truncate(cut);
+        check(o.adapter(), v, cut);
+
+        int[] w = v.clone();
+        for (int i = cut; i < w.length; i++)
+            w[i] = i < cut + 10 ? v[cut - 1] : i / 1000;
+        for (int i = cut; i < w.length; i++)
+            o.adapter().add(w[i]);
+        check(o.adapter(), w, w.length);
+        o.blob().close();
+
+        o = open(file);
+        check(o.adapter(), w, w.length);
+        o.adapter().truncate(0);
+        assertEquals(0, o.adapter().size());
+        o.adapter().add(3);
+        assertEquals(3, o.adapter().getInt(0));
+        o.blob().close();
+    }
+
+    @Test
+    void dropsARunTornBetweenItsRegions() throws IOException {
+        String file = dir.resolve("torn").toString();
+        int[] v = values(20000);
+
+        Opened o = open(file);
+        for (int x : v)
+            o.adapter().add(x);
+        int runs = o.runs().size();
+        int lastRun = v.length - 1;
+        while (v[lastRun - 1] == v[v.length - 1])
+            lastRun--;
+        o.blob().close();
+
+        // a write cut short: the value of the last run was lost, its end was not
+        o = open(file);
+        o.runs().truncate(runs - 1);
+        o.blob().close();
+
+        o = open(file);
+        check(o.adapter(), v, lastRun);
+        for (int i = lastRun; i < v.length; i++)
+            o.adapter().add(v[i]);
+        check(o.adapter(), v, v.length);
+        assertEquals(runs, o.runs().size());
+        o.blob().close();
+
+        // and the other way round: the end of the last run was lost
+        o = open(file);
+        o.adapter().data.truncate(runs - 1);
+        o.blob().close();
+
+        o = open(file);
+        check(o.adapter(), v, lastRun);
+        for (int i = lastRun; i < v.length; i++)
+            o.adapter().add(v[i]);
+        check(o.adapter(), v, v.length);
+        o.blob().close();
+
+        o = open(file);
+        check(o.adapter(), v, v.length);
+        o.blob().close();
+    }
+}
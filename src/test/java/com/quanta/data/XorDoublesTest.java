@@ -0,0 +1,166 @@
+package com.quanta.data;
+
+import com.quanta.blob.Blob;
+import com.quanta.blob.MemoryBlob;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XorDoublesTest {
+
+    @TempDir
+    Path dir;
+
+    // repeated prices, then slowly moving readings, special values and random bits
+    private static double[] values(int n) {
+        Random r = new Random(3);
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (i < n / 4)
+                v[i] = (i / 10) % 5 * 2.5;
+            else if (i < n / 2)
+                v[i] = 20.0 + Math.sin(i / 100.0) + r.nextInt(10) / 100.0;
+            else if (i < 3 * n / 4)
+                v[i] = switch (i % 6) {
+                    case 0 -> Double.NaN;
+                    case 1 -> -0.0;
+                    case 2 -> Double.POSITIVE_INFINITY;
+                    case 3 -> Double.MIN_VALUE;
+                    case 4 -> -Double.MAX_VALUE;
+                    default -> i;
+                };
+            else
+                v[i] = Double.longBitsToDouble(r.nextLong());
+        }
+        return v;
+    }
+
+    private static void check(DoubleAdapter a, double[] v, int size) throws IOException {
+        assertEquals(size, a.size());
+        for (int i = 0; i < size; i++)
+            assertEquals(Double.doubleToRawLongBits(v[i]), Double.doubleToRawLongBits(a.getDouble(i)), "row " + i);
+
+        // runs starting and ending within blocks
+        for (int from = 0; from < size; from += 777) {
+            int count = Math.min(1000, size - from);
+            double[] dst = new double[count];
+            a.getDoubles(from, count, dst);
+            for (int i = 0; i < count; i++)
+                assertEquals(Double.doubleToRawLongBits(v[from + i]), Double.doubleToRawLongBits(dst[i]), "run row " + (from + i));
+        }
+    }
+
+    @Test
+    void roundTripsAndReopens() throws IOException {
+        String file = dir.resolve("double").toString();
+        double[] v = values(4000);
+
+        DoubleAdapter a = new DoubleAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int i = 0; i < 2500; i++)
+            assertEquals(i, a.add(v[i]));
+        check(a, v, 2500);
+        blob.close();
+
+        DoubleAdapter reopened = new DoubleAdapter(true);
+        blob = new MemoryBlob(file, reopened.regions());
+        check(reopened, v, 2500);
+        for (int i = 2500; i < v.length; i++)
+            reopened.add(v[i]);
+        check(reopened, v, v.length);
+        assertEquals(XorDoubles.MAGIC, reopened.data.getLong(0));
+        assertThrows(UnsupportedOperationException.class, () -> reopened.insert(0, 1.0));
+        blob.close();
+
+        a = new DoubleAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        blob.close();
+    }
+
+    @Test
+    void repeatedValuesTakeABitEach() throws IOException {
+        String file = dir.resolve("repeated").toString();
+
+        DoubleAdapter a = new DoubleAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (int i = 0; i < 12800; i++)
+            a.add(9.99);
+
+        // a header, the first value and 127 bits per block of 128 rows
+        assertEquals(1 + 100 * 4, a.data.size());
+        blob.close();
+    }
+
+    @Test
+    void truncatesWithinABlock() throws IOException {
+        String file = dir.resolve("truncate").toString();
+        double[] v = values(3000);
+
+        DoubleAdapter a = new DoubleAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (double x : v)
+            a.add(x);
+
+        a.truncate(1234);
+        check(a, v, 1234);
+
+        double[] w = v.clone();
+        for (int i = 1234; i < w.length; i++)
+            w[i] = i * 0.25;
+        for (int i = 1234; i < w.length; i++)
+            a.add(w[i]);
+        check(a, w, w.length);
+        blob.close();
+
+        a = new DoubleAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, w, w.length);
+        a.truncate(0);
+        assertEquals(0, a.size());
+        a.add(1.5);
+        check(a, new double[] {1.5}, 1);
+        blob.close();
+    }
+
+    @Test
+    void dropsATornTail() throws IOException {
+        String file = dir.resolve("torn").toString();
+        double[] v = values(3000);
+
+        DoubleAdapter a = new DoubleAdapter(true);
+        Blob blob = new MemoryBlob(file, a.regions());
+        for (double x : v)
+            a.add(x);
+        blob.close();
+
+        // a write cut short: the block header counts values whose longs were never committed
+        a = new DoubleAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        a.data.truncate(a.data.size() - 5);
+        blob.close();
+
+        a = new DoubleAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        int kept = a.size();
+        assertTrue(kept < v.length && kept > v.length - XorDoubles.BLOCK_ROWS, "kept " + kept);
+        check(a, v, kept);
+
+        for (int i = kept; i < v.length; i++)
+            a.add(v[i]);
+        check(a, v, v.length);
+        blob.close();
+
+        a = new DoubleAdapter(true);
+        blob = new MemoryBlob(file, a.regions());
+        check(a, v, v.length);
+        blob.close();
+    }
+}